@@ -1,5 +1,15 @@
 package hk.edu.polyu.comp.comp2021.tms;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.util.*;
+import hk.edu.polyu.comp.comp2021.tms.model.Metrics;
 import hk.edu.polyu.comp.comp2021.tms.model.TMS;
 
 /**
@@ -24,147 +34,331 @@ import hk.edu.polyu.comp.comp2021.tms.model.TMS;
  * - Search
  * - Store
  * - Load
+ * - Stats
  * - undo
  * - redo
  */
 public class Application {
+    private static final int BATCH_BUFFER_SIZE = 1 << 16;
+    private static final Set<String> OPTIONS = Set.of("--journal", "--batch", "--serve", "--metrics");
+
     /**
      * @param args The main method for the Application class.
      *             It starts the Task Management System (TMS) with the command line for user to interact.
      *             The system will keep running until the input "Quit" is found.
+     *             With "--journal directory", every change is journaled in the directory and the tasks and criteria
+     *             journaled there before are recovered on start.
+     *             With "--batch file", the commands are read from the file instead, or from the standard input
+     *             if the file is "-", without a prompt, and the system stops at "Quit" or at the end of the input.
+     *             With "--serve port", the system is served to local clients on the TCP port by a TMSServer
+     *             until it is stopped.
+     *             With "--metrics port", metrics are collected from the start and served over HTTP at
+     *             http://localhost:port/metrics by a MetricsEndpoint.
+     *             If an option is given without its value, or with another option in its place, the system is not
+     *             started.
      */
     public static void main(String[] args){
         TMS tms = new TMS();
+        String journal = null;
+        String batch = null;
+        String port = null;
+        String metricsPort = null;
+        int i = 0;
+        while(i < args.length) {
+            if(!OPTIONS.contains(args[i])) {
+                System.out.println(args[i] + " is not an option.");
+                // its value is skipped too, unless the next argument is an option itself
+                i += i + 1 < args.length && !args[i + 1].startsWith("--") ? 2 : 1;
+                continue;
+            }
+            if(i + 1 == args.length || args[i + 1].startsWith("--")) {
+                System.out.println(args[i] + " needs a value.");
+                return;
+            }
+            switch (args[i]) {
+                case "--journal" -> journal = args[i + 1];
+                case "--batch" -> batch = args[i + 1];
+                case "--serve" -> port = args[i + 1];
+                case "--metrics" -> metricsPort = args[i + 1];
+            }
+            i += 2;
+        }
+        if(journal != null) {
+            tms.openJournal(journal);
+        }
+        MetricsEndpoint endpoint = metricsPort == null ? null : serveMetrics(tms, metricsPort);
+        try {
+            if(port != null) {
+                serve(tms, port);
+            }
+            else if(batch != null) {
+                runBatch(tms, batch);
+            }
+            else {
+                runInteractive(tms);
+            }
+        } finally {
+            if(endpoint != null) {
+                endpoint.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the commands typed by the user after a prompt until the input "Quit" is found.
+     *
+     * @param tms The task management system the commands are run on.
+     */
+    private static void runInteractive(TMS tms) {
         // Initialize and run the system
+        Scanner inputObject = new Scanner(System.in);
         while(true) {
-            Scanner inputObject = new Scanner(System.in);
             System.out.print("TaskManagementSystem@COMP2021 ~ % ");
             String input = inputObject.nextLine();
             if(input.equals("Quit")) {
+                tms.closeJournal();
                 System.out.println("Thank you for using the TMS. See you again!");
                 break;
             }
-            String[] inputSliced = input.split(" ");
-            switch (inputSliced[0]) {
-                case "CreatePrimitiveTask" -> {
-                    if(inputSliced.length != 5) {
-                        System.out.println("Invalid command. The command should be in \"CreatePrimitiveTask name description duration prerequisites\" format.");
-                        continue;
-                    }
-                    tms.createPrimitiveTask(inputSliced[1], inputSliced[2], inputSliced[3], inputSliced[4], false, false);
-                }
-                case "CreateCompositeTask" -> {
-                    if(inputSliced.length != 4) {
-                        System.out.println("Invalid command. The command should be in \"CreateCompositeTask name0 description name1,name2,...,namek\" format.");
-                        continue;
-                    }
-                    tms.createCompositeTask(inputSliced[1], inputSliced[2], inputSliced[3], false, false);
-                }
-                case "DeleteTask" -> {
-                    if(inputSliced.length != 2) {
-                        System.out.println("Invalid command. The command should be in \"DeleteTask name\" format.");
-                        continue;
-                    }
-                    tms.deleteTask(inputSliced[1], false,false);
-                }
-                case "ChangeTask" -> {
-                    if(inputSliced.length != 4) {
-                        System.out.println("Invalid command. The command should be in \"ChangeTask name property newValue\" format.");
-                        continue;
-                    }
-                    tms.changeTask(inputSliced[1], inputSliced[2], inputSliced[3], false, false);
-                }
-                case "PrintTask" -> {
-                    if(inputSliced.length != 2) {
-                        System.out.println("Invalid command. The command should be in \"PrintTask name\" format.");
-                        continue;
-                    }
-                    tms.printTask(inputSliced[1]);
-                }
-                case "PrintAllTasks" -> {
-                    if(inputSliced.length != 1) {
-                        System.out.println("Invalid command. The command should be in \"PrintAllTasks\" format.");
-                        continue;
-                    }
-                    tms.printAllTasks();
-                }
-                case "ReportDuration" -> {
-                    if(inputSliced.length != 2) {
-                        System.out.println("Invalid command. The command should be in \"ReportDuration name\" format.");
-                        continue;
-                    }
-                    tms.reportDuration(inputSliced[1]);
-                }
-                case "ReportEarliestFinishTime" -> {
-                    if(inputSliced.length != 2) {
-                        System.out.println("Invalid command. The command should be in \"ReportEarliestFinishTime name\" format.");
-                        continue;
-                    }
-                    tms.reportEarliestFinishTime(inputSliced[1]);
-                }
-                case "DefineBasicCriterion" -> {
-                    if(inputSliced.length != 5) {
-                        System.out.println("Invalid command. The command should be in \"DefineBasicCriterion name1 property op value\" format.");
-                        continue;
-                    }
-                    tms.defineBasicCriterion(inputSliced[1], inputSliced[2], inputSliced[3], inputSliced[4], false, false);
-                }
-                case "DefineNegatedCriterion" -> {
-                    if(inputSliced.length != 3) {
-                        System.out.println("Invalid command. The command should be in \"DefineNegatedCriterion name1 name2\" format.");
-                        continue;
-                    }
-                    tms.defineNegatedCriterion(inputSliced[1],inputSliced[2], false, false);
-                }
-                case "DefineBinaryCriterion" -> {
-                    if(inputSliced.length != 5) {
-                        System.out.println("Invalid command. The command should be in \"DefineBinaryCriterion name1 name2 logicOp name3\" format.");
-                        continue;
-                    }
-                    tms.defineBinaryCriterion(inputSliced[1],inputSliced[2], inputSliced[3], inputSliced[4], false, false);
-                }
-                case "PrintAllCriteria" -> {
-                    if(inputSliced.length != 1) {
-                        System.out.println("Invalid command. The command should be in \"PrintAllCriteria\" format.");
-                        continue;
-                    }
-                    tms.printAllCriteria();
-                }
-                case "Search" -> {
-                    if(inputSliced.length != 2) {
-                        System.out.println("Invalid command. The command should be in \"Search name\" format.");
-                        continue;
-                    }
-                    tms.search(inputSliced[1]);
-                }
-                case "Store" -> {
-                    if(inputSliced.length != 2) {
-                        System.out.println("Invalid command. The command should be in \"Store path\" format.");
-                        continue;
-                    }
-                    tms.store(inputSliced[1]);
-                }
-                case "Load" -> {
-                    if(inputSliced.length != 2) {
-                        System.out.println("Invalid command. The command should be in \"Load path\" format.");
-                        continue;
-                    }
-                    tms.load(inputSliced[1]);
-                }
-                default -> {
-                    if(inputSliced[0].equals("undo")) {
-                        tms.undo();
-                    }
-                    else if(inputSliced[0].equals("redo")) {
-                        tms.redo();
-                    }
-                    else {
-                        System.out.println("command not found.");
-                    }
-                }
+            execute(tms, input);
+        }
+    }
+
+    /**
+     * Runs the commands of a script without a prompt.
+     * The commands are read through one buffered reader and their output is written to the standard output
+     * in large blocks rather than line by line. When the script ends, the number of commands and the rate
+     * they were run at are reported on the standard error, so the standard output holds only the output of the commands.
+     *
+     * @param tms  The task management system the commands are run on.
+     * @param path The script file, or "-" for the standard input.
+     */
+    private static void runBatch(TMS tms, String path) {
+        PrintStream console = System.out;
+        PrintStream output = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), BATCH_BUFFER_SIZE), false);
+        long commands = 0;
+        long start = System.nanoTime();
+        System.setOut(output);
+        try (BufferedReader reader = path.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in), BATCH_BUFFER_SIZE)
+                : new BufferedReader(new FileReader(path), BATCH_BUFFER_SIZE)) {
+            String input;
+            while((input = reader.readLine()) != null && !input.equals("Quit")) {
+                execute(tms, input);
+                commands++;
             }
+        } catch (FileNotFoundException e) {
+            System.out.println(path + " does not exist.");
+        } catch (IOException e) {
+            System.out.println("the commands could not be read: " + e.getMessage());
+        } finally {
+            tms.closeJournal();
+            output.flush();
+            System.setOut(console);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d command(s) executed in %.3f s (%.0f commands/s).%n", commands, seconds, commands / Math.max(seconds, 1e-9));
+    }
 
+    /**
+     * Serves the task management system on a local TCP port until the process is stopped.
+     * The journal, if any, is closed when the process shuts down.
+     *
+     * @param tms  The task management system to be served.
+     * @param port The TCP port.
+     */
+    private static void serve(TMS tms, String port) {
+        TMSServer server;
+        try {
+            server = new TMSServer(tms, Integer.parseInt(port));
+        } catch (NumberFormatException e) {
+            System.out.println(port + " is not a port.");
+            return;
+        } catch (IOException e) {
+            System.out.println("port " + port + " could not be opened: " + e.getMessage());
+            return;
         }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        System.out.println("Serving the TMS on localhost:" + server.getPort() + ".");
+        server.run();
     }
-}
 
+    /**
+     * Enables the metrics of the task management system and serves them on a local HTTP port.
+     *
+     * @param tms  The task management system whose metrics are served.
+     * @param port The TCP port.
+     * @return The endpoint, or null if it could not be started.
+     */
+    private static MetricsEndpoint serveMetrics(TMS tms, String port) {
+        tms.setMetricsEnabled(true);
+        try {
+            MetricsEndpoint endpoint = new MetricsEndpoint(tms, Integer.parseInt(port));
+            System.out.println("Serving the metrics on http://localhost:" + endpoint.getPort() + "/metrics.");
+            return endpoint;
+        } catch (NumberFormatException e) {
+            System.out.println(port + " is not a port.");
+        } catch (IOException e) {
+            System.out.println("port " + port + " could not be opened: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Runs one command on the task management system.
+     * The first word of the input names the command and the other words are its arguments.
+     * If the command is not known or has the wrong number of arguments, a message is printed instead.
+     * If metrics are enabled, the time the command took is recorded under its name.
+     *
+     * @param tms   The task management system the command is run on.
+     * @param input The command line.
+     */
+    public static void execute(TMS tms, String input) {
+        String[] inputSliced = input.split(" ");
+        Metrics metrics = tms.getMetrics();
+        if(metrics == null) {
+            dispatch(tms, inputSliced);
+            return;
+        }
+        long start = System.nanoTime();
+        if(dispatch(tms, inputSliced)) {
+            metrics.record(inputSliced[0], System.nanoTime() - start);
+        }
+    }
+
+    // runs a command and returns whether its name was known
+    private static boolean dispatch(TMS tms, String[] inputSliced) {
+        switch (inputSliced[0]) {
+            case "CreatePrimitiveTask" -> {
+                if(inputSliced.length != 5) {
+                    System.out.println("Invalid command. The command should be in \"CreatePrimitiveTask name description duration prerequisites\" format.");
+                    return true;
+                }
+                tms.createPrimitiveTask(inputSliced[1], inputSliced[2], inputSliced[3], inputSliced[4], false, false);
+            }
+            case "CreateCompositeTask" -> {
+                if(inputSliced.length != 4) {
+                    System.out.println("Invalid command. The command should be in \"CreateCompositeTask name0 description name1,name2,...,namek\" format.");
+                    return true;
+                }
+                tms.createCompositeTask(inputSliced[1], inputSliced[2], inputSliced[3], false, false);
+            }
+            case "DeleteTask" -> {
+                if(inputSliced.length != 2) {
+                    System.out.println("Invalid command. The command should be in \"DeleteTask name\" format.");
+                    return true;
+                }
+                tms.deleteTask(inputSliced[1], false,false);
+            }
+            case "ChangeTask" -> {
+                if(inputSliced.length != 4) {
+                    System.out.println("Invalid command. The command should be in \"ChangeTask name property newValue\" format.");
+                    return true;
+                }
+                tms.changeTask(inputSliced[1], inputSliced[2], inputSliced[3], false, false);
+            }
+            case "PrintTask" -> {
+                if(inputSliced.length != 2) {
+                    System.out.println("Invalid command. The command should be in \"PrintTask name\" format.");
+                    return true;
+                }
+                tms.printTask(inputSliced[1]);
+            }
+            case "PrintAllTasks" -> {
+                if(inputSliced.length != 1) {
+                    System.out.println("Invalid command. The command should be in \"PrintAllTasks\" format.");
+                    return true;
+                }
+                tms.printAllTasks();
+            }
+            case "ReportDuration" -> {
+                if(inputSliced.length != 2) {
+                    System.out.println("Invalid command. The command should be in \"ReportDuration name\" format.");
+                    return true;
+                }
+                tms.reportDuration(inputSliced[1]);
+            }
+            case "ReportEarliestFinishTime" -> {
+                if(inputSliced.length != 2) {
+                    System.out.println("Invalid command. The command should be in \"ReportEarliestFinishTime name\" format.");
+                    return true;
+                }
+                tms.reportEarliestFinishTime(inputSliced[1]);
+            }
+            case "DefineBasicCriterion" -> {
+                if(inputSliced.length != 5) {
+                    System.out.println("Invalid command. The command should be in \"DefineBasicCriterion name1 property op value\" format.");
+                    return true;
+                }
+                tms.defineBasicCriterion(inputSliced[1], inputSliced[2], inputSliced[3], inputSliced[4], false, false);
+            }
+            case "DefineNegatedCriterion" -> {
+                if(inputSliced.length != 3) {
+                    System.out.println("Invalid command. The command should be in \"DefineNegatedCriterion name1 name2\" format.");
+                    return true;
+                }
+                tms.defineNegatedCriterion(inputSliced[1],inputSliced[2], false, false);
+            }
+            case "DefineBinaryCriterion" -> {
+                if(inputSliced.length != 5) {
+                    System.out.println("Invalid command. The command should be in \"DefineBinaryCriterion name1 name2 logicOp name3\" format.");
+                    return true;
+                }
+                tms.defineBinaryCriterion(inputSliced[1],inputSliced[2], inputSliced[3], inputSliced[4], false, false);
+            }
+            case "PrintAllCriteria" -> {
+                if(inputSliced.length != 1) {
+                    System.out.println("Invalid command. The command should be in \"PrintAllCriteria\" format.");
+                    return true;
+                }
+                tms.printAllCriteria();
+            }
+            case "Search" -> {
+                if(inputSliced.length != 2) {
+                    System.out.println("Invalid command. The command should be in \"Search name\" format.");
+                    return true;
+                }
+                tms.search(inputSliced[1]);
+            }
+            case "Store" -> {
+                if(inputSliced.length != 2) {
+                    System.out.println("Invalid command. The command should be in \"Store path\" format.");
+                    return true;
+                }
+                tms.store(inputSliced[1]);
+            }
+            case "Load" -> {
+                if(inputSliced.length != 2) {
+                    System.out.println("Invalid command. The command should be in \"Load path\" format.");
+                    return true;
+                }
+                tms.load(inputSliced[1]);
+            }
+            case "Stats" -> {
+                if(inputSliced.length == 1) {
+                    tms.printStats();
+                }
+                else if(inputSliced.length == 2 && (inputSliced[1].equals("on") || inputSliced[1].equals("off"))) {
+                    tms.setMetricsEnabled(inputSliced[1].equals("on"));
+                    System.out.println("Metrics are " + (tms.isMetricsEnabled() ? "enabled." : "disabled."));
+                }
+                else {
+                    System.out.println("Invalid command. The command should be in \"Stats\" or \"Stats on|off\" format.");
+                }
+            }
+            default -> {
+                if(inputSliced[0].equals("undo")) {
+                    tms.undo();
+                }
+                else if(inputSliced[0].equals("redo")) {
+                    tms.redo();
+                }
+                else {
+                    System.out.println("command not found.");
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,89 @@
+package hk.edu.polyu.comp.comp2021.tms;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+/**
+ * The ConsoleBuffer class collects output for a JTextArea from any thread and renders it on the Swing event dispatch thread.
+ * <p>
+ * Text is appended to a pending buffer, and a timer moves everything pending into the text area at most once per frame,
+ * so a long listing costs one document insert per frame instead of one per line or per byte.
+ * The text area holds at most a fixed number of characters: when it grows beyond that, the oldest whole lines are removed.
+ * Pending text that would be removed right away is dropped before it is inserted, so memory stays bounded
+ * however fast output is produced.
+ */
+class ConsoleBuffer {
+    static final int FRAME_MILLIS = 33;
+    static final int MAX_CHARS = 1 << 19;
+
+    private final JTextArea textArea;
+    private final Timer timer;
+    private final StringBuilder pending = new StringBuilder();
+    private boolean scheduled = false;
+
+    /**
+     * Constructs a new ConsoleBuffer that renders into the given JTextArea.
+     *
+     * @param textArea The JTextArea to which the output is rendered.
+     */
+    ConsoleBuffer(JTextArea textArea) {
+        this.textArea = textArea;
+        this.timer = new Timer(FRAME_MILLIS, e -> render());
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Appends text to be rendered with the next frame. May be called from any thread.
+     *
+     * @param text The text to be appended.
+     */
+    void append(CharSequence text) {
+        boolean start;
+        synchronized (pending) {
+            pending.append(text);
+            if(pending.length() > 2 * MAX_CHARS) {
+                pending.delete(0, lineStart(pending, pending.length() - MAX_CHARS));
+            }
+            start = !scheduled;
+            scheduled = true;
+        }
+        if(start) {
+            SwingUtilities.invokeLater(timer::restart);
+        }
+    }
+
+    // runs on the event dispatch thread once per frame that has pending output
+    private void render() {
+        String text;
+        synchronized (pending) {
+            text = pending.substring(lineStart(pending, pending.length() - MAX_CHARS));
+            pending.setLength(0);
+            scheduled = false;
+        }
+        Document document = textArea.getDocument();
+        try {
+            document.insertString(document.getLength(), text, null);
+            int excess = document.getLength() - MAX_CHARS;
+            if(excess > 0) {
+                // remove whole lines, up to the end of the line the excess ends in
+                int end = textArea.getLineEndOffset(textArea.getLineOfOffset(excess));
+                document.remove(0, Math.min(end, document.getLength()));
+            }
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+        textArea.setCaretPosition(document.getLength());
+    }
+
+    // the start of the first whole line at or after an offset
+    private static int lineStart(StringBuilder text, int offset) {
+        if(offset <= 0) {
+            return 0;
+        }
+        int newline = text.indexOf("\n", offset - 1);
+        return newline < 0 ? offset : newline + 1;
+    }
+}
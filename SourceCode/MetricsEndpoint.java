@@ -0,0 +1,71 @@
+package hk.edu.polyu.comp.comp2021.tms;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import hk.edu.polyu.comp.comp2021.tms.model.Metrics;
+import hk.edu.polyu.comp.comp2021.tms.model.TMS;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The MetricsEndpoint class serves the metrics of a Task Management System (TMS) over HTTP on a local port.
+ * <p>
+ * "GET /metrics" answers with the Prometheus text exposition of Metrics.expose, so the TMS can be scraped
+ * or simply inspected with a browser or curl while it runs. Requests are handled on one background thread,
+ * which only reads the histograms, the counters and the constant-time gauges of the TMS and never a task.
+ * If metrics are disabled when a request comes, the answer is empty.
+ */
+public class MetricsEndpoint {
+    private final HttpServer server;
+
+    /**
+     * Constructs a new MetricsEndpoint listening on a port of the loopback address and starts serving.
+     *
+     * @param tms  The TMS whose metrics are served.
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException If the port cannot be opened.
+     */
+    public MetricsEndpoint(TMS tms, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> respond(tms, exchange));
+        server.start();
+    }
+
+    /**
+     * Returns the port the endpoint listens on.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops serving, letting the request being answered finish first.
+     */
+    public void close() {
+        server.stop(1);
+    }
+
+    private static void respond(TMS tms, HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if(!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Metrics metrics = tms.getMetrics();
+            byte[] body = (metrics == null ? "" : metrics.expose(tms.getGauges())).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+            if(body.length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        }
+    }
+}
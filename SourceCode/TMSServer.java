@@ -0,0 +1,179 @@
+package hk.edu.polyu.comp.comp2021.tms;
+
+import hk.edu.polyu.comp.comp2021.tms.model.ConcurrentTMS;
+import hk.edu.polyu.comp.comp2021.tms.model.TMS;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * The TMSServer class serves one Task Management System (TMS) to any number of clients on a local TCP port.
+ * <p>
+ * The protocol is line based. A client sends one command per line, with the same syntax as the command line
+ * of Application, and the server answers each command with its output followed by a line holding a single ".".
+ * An output line that starts with "." is sent with one more "." in front, so the end of a response is never ambiguous.
+ * A client may send many commands without waiting for their responses: the responses come back in order,
+ * and they are flushed to the socket only when no further command has arrived, so a pipelined burst costs few writes.
+ * "Quit" closes the connection.
+ * <p>
+ * Each connection is served by its own thread, and the commands run on a ConcurrentTMS, so queries of
+ * different clients run in parallel and changes run one at a time. The output a command prints is
+ * collected for the client that sent it, whichever way the TMS prints it.
+ */
+public class TMSServer {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // the commands that only read the tasks and criteria, which run under the read lock
+    private static final Set<String> QUERY_COMMANDS = Set.of("PrintTask", "PrintAllTasks", "ReportDuration",
+            "ReportEarliestFinishTime", "PrintAllCriteria", "Search", "Store");
+
+    private final ConcurrentTMS tms;
+    private final ServerSocket serverSocket;
+    private final PrintStream console = System.out;
+    // the stream into which each connection thread builds its response
+    private final ThreadLocal<PrintStream> responses = new ThreadLocal<>();
+    private int connections = 0;
+
+    /**
+     * Constructs a new TMSServer listening on a port of the loopback address.
+     * From then on, the output of the TMS goes to the clients instead of the console.
+     *
+     * @param tms  The TMS to be served. It must not be used directly afterwards.
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException If the port cannot be opened.
+     */
+    public TMSServer(TMS tms, int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        tms.setOutputSink(lines -> {
+            byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+            response().write(bytes, 0, bytes.length);
+        });
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                response().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                response().write(b, off, len);
+            }
+        }, false, StandardCharsets.UTF_8));
+        this.tms = new ConcurrentTMS(tms);
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed, serving each one on a new thread.
+     */
+    public void run() {
+        while(!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread thread = new Thread(() -> serve(socket), "tms-client-" + ++connections);
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if(!serverSocket.isClosed()) {
+                    console.println("A connection could not be accepted: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the journal of the TMS, if any.
+     * Commands that are running are completed first.
+     */
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            console.println("The server could not be closed: " + e.getMessage());
+        }
+        tms.write(TMS::closeJournal);
+    }
+
+    // the response of the current connection thread, or the console for every other thread
+    private PrintStream response() {
+        PrintStream response = responses.get();
+        return response != null ? response : console;
+    }
+
+    // runs one command line with Application.execute, under the read lock if it only reads and the write lock otherwise
+    private void execute(String input) {
+        int end = input.indexOf(' ');
+        String command = end < 0 ? input : input.substring(0, end);
+        if(QUERY_COMMANDS.contains(command)) {
+            tms.read(shared -> {
+                Application.execute(shared, input);
+                return null;
+            });
+        }
+        else {
+            tms.write(shared -> Application.execute(shared, input));
+        }
+    }
+
+    private void serve(Socket socket) {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        responses.set(new PrintStream(response, false, StandardCharsets.UTF_8));
+        try (socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            String input;
+            while((input = reader.readLine()) != null && !input.equals("Quit")) {
+                execute(input);
+                System.out.flush();
+                writeResponse(writer, response.toString(StandardCharsets.UTF_8));
+                response.reset();
+                if(!reader.ready()) {
+                    writer.flush();
+                }
+            }
+        } catch (IOException e) {
+            // the client went away; its connection is simply dropped
+        } finally {
+            responses.remove();
+        }
+    }
+
+    // writes the lines of an output, each starting with "." doubled, and the "." line that ends the response
+    private static void writeResponse(Writer writer, String output) throws IOException {
+        int start = 0;
+        while(start < output.length()) {
+            int end = output.indexOf('\n', start);
+            if(end < 0) {
+                end = output.length();
+            }
+            int lineEnd = end > start && output.charAt(end - 1) == '\r' ? end - 1 : end;
+            if(output.charAt(start) == '.') {
+                writer.write('.');
+            }
+            writer.write(output, start, lineEnd - start);
+            writer.write('\n');
+            start = end + 1;
+        }
+        writer.write(".\n");
+    }
+}
@@ -1,13 +1,23 @@
 package hk.edu.polyu.comp.comp2021.tms;
 
+import hk.edu.polyu.comp.comp2021.tms.model.Metrics;
+import hk.edu.polyu.comp.comp2021.tms.model.OutputSink;
 import hk.edu.polyu.comp.comp2021.tms.model.TMS;
 
 import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -15,17 +25,32 @@ import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 
 /**
  * This class provides a graphical user interface (GUI) for the Task Management System (TMS).
+ * <p>
+ * Commands run on a single worker thread, one at a time in the order they were entered, so the GUI stays responsive
+ * while a long command runs. A progress bar is shown while commands are pending, and they can be cancelled.
  */
 public class TasklyGUI extends JFrame{
     private TMS tms;
     private JFrame frame;
     private JTextArea outputArea;
+    private ConsoleBuffer console;
+    private JProgressBar progressBar;
+    private JButton cancelButton;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "taskly-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // the commands submitted and not finished yet, oldest first; only used on the event dispatch thread
+    private final ArrayDeque<Future<?>> pendingCommands = new ArrayDeque<>();
 
     /**
      * Constructs a new GUI for the given TMS.
@@ -123,16 +148,26 @@ public class TasklyGUI extends JFrame{
             @Override
             public void actionPerformed(ActionEvent e) {
                 String input = jt.getText();
-                processinput(input);
+                submit(input);
                 jt.setText("");
             }
         };
         jb.addActionListener(actionListener);
         jt.addActionListener(actionListener);
 
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+        cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> cancel());
+        cancelButton.setVisible(false);
+
         jp.add(jl);
         jp.add(jt);
         jp.add(jb);
+        jp.add(progressBar);
+        jp.add(cancelButton);
         frame.add(jp);
         frame.setJMenuBar(menuBar);
         frame.setSize(400, 200);
@@ -142,58 +177,137 @@ public class TasklyGUI extends JFrame{
         JScrollPane scrollPane = new JScrollPane(outputArea);
         frame.getContentPane().add(scrollPane, BorderLayout.SOUTH);
 
-        PrintStream out = new PrintStream(new CustomOutputStream(outputArea));
+        console = new ConsoleBuffer(outputArea);
+        PrintStream out = new PrintStream(new CustomOutputStream(), true);
         System.setOut(out);
+        tms.setOutputSink(new TextAreaSink());
         frame.setVisible(true);
     }
 
     /**
-     * A customOutputStream that redirects output to a JTextArea.
+     * An OutputSink that hands each block of output of the TMS to the output area of this GUI.
+     */
+    public class TextAreaSink implements OutputSink {
+        @Override
+        public void write(CharSequence lines) {
+            console.append(lines);
+        }
+    }
+
+    /**
+     * A customOutputStream that redirects output to the output area of this GUI.
+     * Bytes are collected and decoded a line at a time, so the output area receives whole lines rather than single bytes.
      */
     public class CustomOutputStream extends OutputStream {
-        private JTextArea textArea;
-
-        /**
-         * Constructs a new CustomOutputStream that writes to the given JTextArea.
-         *
-         * @param textArea The JTextArea to which this CustomOutputStream will write.
-         */
-        public CustomOutputStream(JTextArea textArea) {
-            this.textArea = textArea;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            bytes.write(b);
+            if(b == '\n') {
+                flush();
+            }
         }
 
         @Override
-        public void write(int b) throws IOException {
-            textArea.append(String.valueOf((char)b));
-            textArea.setCaretPosition(textArea.getDocument().getLength());
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            bytes.write(b, off, len);
+            for(int i = off; i < off + len; i++) {
+                if(b[i] == '\n') {
+                    flush();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public synchronized void flush() {
+            if(bytes.size() > 0) {
+                console.append(bytes.toString());
+                bytes.reset();
+            }
         }
     }
 
+    /**
+     * Submits a command to the worker thread. Quit waits for the commands submitted before it and then exits.
+     * Must be called on the event dispatch thread.
+     *
+     * @param input The command entered by the user.
+     */
+    private void submit(String input) {
+        if(input.equals("Quit")) {
+            worker.execute(() -> System.exit(0));
+            return;
+        }
+        FutureTask<Void> command = new FutureTask<>(() -> processinput(input), null) {
+            @Override
+            protected void done() {
+                SwingUtilities.invokeLater(() -> finished(this));
+            }
+        };
+        pendingCommands.add(command);
+        updateProgress();
+        worker.execute(command);
+    }
+
+    /**
+     * Cancels every pending command. Commands that have not started are dropped, and the running command is interrupted:
+     * a listing stops at its next block of output, while a command that changes the TMS runs to its end,
+     * so the TMS is never left half changed.
+     */
+    private void cancel() {
+        for(Future<?> command : pendingCommands) {
+            command.cancel(true);
+        }
+    }
+
+    // runs on the event dispatch thread when a command has finished or was cancelled
+    private void finished(Future<?> command) {
+        pendingCommands.remove(command);
+        try {
+            command.get();
+        } catch (CancellationException e) {
+            console.append("command cancelled.\n");
+        } catch (ExecutionException e) {
+            console.append("command failed: " + e.getCause() + "\n");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        updateProgress();
+    }
+
+    private void updateProgress() {
+        boolean busy = !pendingCommands.isEmpty();
+        progressBar.setVisible(busy);
+        cancelButton.setVisible(busy);
+        if(busy) {
+            progressBar.setString(pendingCommands.size() == 1 ? "running" : "running, " + (pendingCommands.size() - 1) + " queued");
+        }
+        progressBar.getParent().revalidate();
+    }
+
     /**
      * Processes the user's input command and calls the appropriate method of the TMS.
+     * If metrics are enabled, the time the command took is recorded under its name.
+     * Runs on the worker thread.
      */
     private void processinput(String input) {
+        Metrics metrics = tms.getMetrics();
+        long start = metrics == null ? 0 : System.nanoTime();
         String[] inputSliced = input.split(" ");
 
-        if(input.equals("Quit")) {
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            System.exit(0);
-        }
         switch (inputSliced[0]) {
             case "CreatePrimitiveTask" -> {
                 if(inputSliced.length != 5) {
-                    outputArea.append("Invalid input. The input should be in \"CreateSimpleTask name description duration prerequisites\" format.\n");
+                    console.append("Invalid input. The input should be in \"CreateSimpleTask name description duration prerequisites\" format.\n");
                     break;
                 }
                 tms.createPrimitiveTask(inputSliced[1], inputSliced[2], inputSliced[3], inputSliced[4], false, false);
             }
             case "CreateCompositeTask" -> {
                 if(inputSliced.length != 4) {
-                    outputArea.append("Invalid command. The command should be in \"CreateCompositeTask name0 description name1,name2,...,namek\" format.\n");
+                    console.append("Invalid command. The command should be in \"CreateCompositeTask name0 description name1,name2,...,namek\" format.\n");
                     break;
                 }
                 tms.createCompositeTask(inputSliced[1], inputSliced[2], inputSliced[3], false, false);
@@ -201,7 +315,7 @@ public class TasklyGUI extends JFrame{
             }
             case "DeleteTask" -> {
                 if(inputSliced.length != 2) {
-                    outputArea.append("Invalid command. The command should be in \"DeleteTask name\" format.\n");
+                    console.append("Invalid command. The command should be in \"DeleteTask name\" format.\n");
                     break;
                 }
                 tms.deleteTask(inputSliced[1], false, false);
@@ -209,88 +323,100 @@ public class TasklyGUI extends JFrame{
             }
             case "ChangeTask" -> {
                 if(inputSliced.length != 4) {
-                    outputArea.append("Invalid command. The command should be in \"ChangeTask name property newValue\" format.\n");
+                    console.append("Invalid command. The command should be in \"ChangeTask name property newValue\" format.\n");
                     break;
                 }
                 tms.changeTask(inputSliced[1], inputSliced[2], inputSliced[3], false, false);
             }
             case "PrintTask" -> {
                 if(inputSliced.length != 2) {
-                    outputArea.append("Invalid input. The input should be in \"PrintTask name\" format.\n");
+                    console.append("Invalid input. The input should be in \"PrintTask name\" format.\n");
                     break;
                 }
                 tms.printTask(inputSliced[1]);
             }
             case "PrintAllTasks" -> {
                 if(inputSliced.length != 1) {
-                    outputArea.append("Invalid command. The command should be in \"PrintAllTasks\" format.\n");
+                    console.append("Invalid command. The command should be in \"PrintAllTasks\" format.\n");
                     break;
                 }
                 tms.printAllTasks();
             }
             case "ReportDuration" -> {
                 if(inputSliced.length != 2) {
-                    outputArea.append("Invalid command. The command should be in \"ReportDuration name\" format.\n");
+                    console.append("Invalid command. The command should be in \"ReportDuration name\" format.\n");
                     break;
                 }
                 tms.reportDuration(inputSliced[1]);
             }
             case "ReportEarliestFinishTime" -> {
                 if(inputSliced.length != 2) {
-                    outputArea.append("Invalid command. The command should be in \"ReportEarliestFinishTime name\" format.\n");
+                    console.append("Invalid command. The command should be in \"ReportEarliestFinishTime name\" format.\n");
                     break;
                 }
                 tms.reportEarliestFinishTime(inputSliced[1]);
             }
             case "DefineBasicCriterion" -> {
                 if(inputSliced.length != 5) {
-                    outputArea.append("Invalid command. The command should be in \"DefineBasicCriterion name1 property op value\" format.\n");
+                    console.append("Invalid command. The command should be in \"DefineBasicCriterion name1 property op value\" format.\n");
                     break;
                 }
                 tms.defineBasicCriterion(inputSliced[1], inputSliced[2], inputSliced[3], inputSliced[4], false, false);
             }
             case "DefineNegatedCriterion" -> {
                 if(inputSliced.length != 3) {
-                    outputArea.append("Invalid command. The command should be in \"DefineNegatedCriterion name1 name2\" format.\n");
+                    console.append("Invalid command. The command should be in \"DefineNegatedCriterion name1 name2\" format.\n");
                     break;
                 }
                 tms.defineNegatedCriterion(inputSliced[1],inputSliced[2], false, false);
             }
             case "DefineBinaryCriterion" -> {
                 if(inputSliced.length != 5) {
-                    outputArea.append("Invalid command. The command should be in \"DefineBinaryCriterion name1 name2 logicOp name3\" format.\n");
+                    console.append("Invalid command. The command should be in \"DefineBinaryCriterion name1 name2 logicOp name3\" format.\n");
                     break;
                 }
                 tms.defineBinaryCriterion(inputSliced[1],inputSliced[2], inputSliced[3], inputSliced[4], false, false);
             }
             case "PrintAllCriteria" -> {
                 if(inputSliced.length != 1) {
-                    outputArea.append("Invalid command. The command should be in \"PrintAllCriteria\" format.\n");
+                    console.append("Invalid command. The command should be in \"PrintAllCriteria\" format.\n");
                     break;
                 }
                 tms.printAllCriteria();
             }
             case "Search" -> {
                 if(inputSliced.length != 2) {
-                    outputArea.append("Invalid command. The command should be in \"Search name\" format.\n");
+                    console.append("Invalid command. The command should be in \"Search name\" format.\n");
                     break;
                 }
                 tms.search(inputSliced[1]);
             }
             case "Store" -> {
                 if(inputSliced.length != 2) {
-                    outputArea.append("Invalid command. The command should be in \"Store path\" format.\n");
+                    console.append("Invalid command. The command should be in \"Store path\" format.\n");
                     break;
                 }
                 tms.store(inputSliced[1]);
             }
             case "Load" -> {
                 if(inputSliced.length != 2) {
-                    outputArea.append("Invalid command. The command should be in \"Load path\" format.\n");
+                    console.append("Invalid command. The command should be in \"Load path\" format.\n");
                     break;
                 }
                 tms.load(inputSliced[1]);
             }
+            case "Stats" -> {
+                if(inputSliced.length == 1) {
+                    tms.printStats();
+                }
+                else if(inputSliced.length == 2 && (inputSliced[1].equals("on") || inputSliced[1].equals("off"))) {
+                    tms.setMetricsEnabled(inputSliced[1].equals("on"));
+                    console.append("Metrics are " + (tms.isMetricsEnabled() ? "enabled.\n" : "disabled.\n"));
+                }
+                else {
+                    console.append("Invalid command. The command should be in \"Stats\" or \"Stats on|off\" format.\n");
+                }
+            }
             default -> {
                 //undo redo
                 if(inputSliced[0].equals("undo")) {
@@ -300,12 +426,16 @@ public class TasklyGUI extends JFrame{
                     tms.redo();
                 }
                 else {
-                    outputArea.append("Invalid command.\n");
+                    console.append("Invalid command.\n");
+                    return;
                 }
             }
 
 
         }
+        if(metrics != null) {
+            metrics.record(inputSliced[0], System.nanoTime() - start);
+        }
     }
 
     /**
@@ -0,0 +1,965 @@
+package hk.edu.polyu.comp.comp2021.tms.bench;
+
+import hk.edu.polyu.comp.comp2021.tms.model.ConcurrentTMS;
+import hk.edu.polyu.comp.comp2021.tms.model.LatencyHistogram;
+import hk.edu.polyu.comp.comp2021.tms.model.TMS;
+import hk.edu.polyu.comp.comp2021.tms.model.TaskBatch;
+import hk.edu.polyu.comp.comp2021.tms.model.TaskVersion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A stand-alone benchmark for the hot paths of the Task Management System (TMS).
+ * Console output of the TMS is discarded while a scenario runs and only the timings are printed.
+ * <p>
+ * Usage: {@code TMSBenchmark [scenario]}, where scenario is one of:
+ * - dependencyIndex: cost of DeleteTask and ChangeTask name as the graph grows
+ * - finishTime: ReportEarliestFinishTime on a diamond-heavy graph, before and after a duration change
+ * - criticalPath: ReportDuration of a composite task holding every primitive task, up to a million tasks
+ * - criteria: Search with a deep tree of negated and binary criteria over bitsets
+ * - substring: Search with "name contains" and "description contains", with and without the trigram index
+ * - durationRange: Search with selective and broad duration criteria, and the cost of ChangeTask duration
+ * - snapshot: Store and Load throughput of the text format and the binary snapshot format
+ * - lazyLoad: Load of a binary snapshot read eagerly and mapped lazily, and the first queries after it
+ * - journal: cost per change of no persistence, of the journal, and of a full binary Store after every change
+ * - history: bytes allocated and time per mutation and per undo, which is dominated by the undo history
+ * - bulkImport: building a task graph with one create call per task and with one batch import
+ * - listing: PrintAllTasks written to a stream taking one byte at a time, as the GUI did, and to a block sink
+ * - concurrent: query throughput of a ConcurrentTMS as reader threads are added, while a writer keeps changing durations
+ * - versions: cost of publishing a TaskVersion after every change, memory of retained versions, and writes completed
+ *   during a long search over a version compared with a search under the read lock
+ * - parallelSearch: Search with criteria that test every task, split across 1, 4 and 16 threads
+ * - taskGraph: the first and a repeated earliest finish time of the top task of generated graphs of a million tasks,
+ *   and the heap the cached finish times hold
+ * - memory: heap per task of generated graphs of a million tasks, as built and as loaded from a text file,
+ *   and of tasks sharing a hundred descriptions with and without compact storage
+ * - gcPauses: latency and garbage collection under a mix of finish time queries and duration changes,
+ *   with the task graph on and off the Java heap
+ */
+public class TMSBenchmark {
+    private static final PrintStream CONSOLE = System.out;
+    private static final PrintStream SILENT = new PrintStream(OutputStream.nullOutputStream());
+
+    /**
+     * @param args The scenario to run, or none to run every scenario.
+     */
+    public static void main(String[] args) {
+        String scenario = args.length == 0 ? "all" : args[0];
+        if(scenario.equals("all") || scenario.equals("dependencyIndex")) {
+            dependencyIndex();
+        }
+        if(scenario.equals("all") || scenario.equals("finishTime")) {
+            finishTime();
+        }
+        if(scenario.equals("all") || scenario.equals("criticalPath")) {
+            criticalPath();
+        }
+        if(scenario.equals("all") || scenario.equals("criteria")) {
+            criteria();
+        }
+        if(scenario.equals("all") || scenario.equals("substring")) {
+            substring();
+        }
+        if(scenario.equals("all") || scenario.equals("durationRange")) {
+            durationRange();
+        }
+        if(scenario.equals("all") || scenario.equals("snapshot")) {
+            snapshot();
+        }
+        if(scenario.equals("all") || scenario.equals("lazyLoad")) {
+            lazyLoad();
+        }
+        if(scenario.equals("all") || scenario.equals("journal")) {
+            journal();
+        }
+        if(scenario.equals("all") || scenario.equals("history")) {
+            history();
+        }
+        if(scenario.equals("all") || scenario.equals("bulkImport")) {
+            bulkImport();
+        }
+        if(scenario.equals("all") || scenario.equals("listing")) {
+            listing();
+        }
+        if(scenario.equals("all") || scenario.equals("concurrent")) {
+            concurrent();
+        }
+        if(scenario.equals("all") || scenario.equals("versions")) {
+            versions();
+        }
+        if(scenario.equals("all") || scenario.equals("parallelSearch")) {
+            parallelSearch();
+        }
+        if(scenario.equals("all") || scenario.equals("taskGraph")) {
+            taskGraph();
+        }
+        if(scenario.equals("all") || scenario.equals("memory")) {
+            memory();
+        }
+        if(scenario.equals("all") || scenario.equals("gcPauses")) {
+            gcPauses();
+        }
+    }
+
+    /**
+     * Builds layered graphs of growing size and measures the average cost of renaming and deleting a task.
+     * With the reverse-dependency index the cost per operation should stay roughly flat.
+     */
+    private static void dependencyIndex() {
+        CONSOLE.println("scenario: dependencyIndex");
+        CONSOLE.printf("%10s %16s %16s%n", "tasks", "rename (us/op)", "delete (us/op)");
+        for(int size : new int[]{10_000, 50_000, 200_000}) {
+            TMS tms = new TMS();
+            silent(() -> buildLayeredGraph(tms, size));
+            int operations = 2_000;
+            long start = System.nanoTime();
+            silent(() -> {
+                for(int i = 0; i < operations; i++) {
+                    tms.changeTask(name(i), "name", "r" + Integer.toString(i, 36), false, false);
+                }
+            });
+            long rename = System.nanoTime() - start;
+            start = System.nanoTime();
+            silent(() -> {
+                for(int i = size - 1; i >= size - operations; i--) {
+                    tms.deleteTask(name(i), false, false);
+                }
+            });
+            long delete = System.nanoTime() - start;
+            CONSOLE.printf("%10d %16.2f %16.2f%n", size, rename / 1e3 / operations, delete / 1e3 / operations);
+        }
+    }
+
+    /**
+     * Builds a chain of diamonds, where every task of a layer depends on both tasks of the previous layer,
+     * so an unmemoized traversal visits 2^depth paths. Every task is then queried twice,
+     * a task near the top is changed, and every task is queried again.
+     */
+    private static void finishTime() {
+        CONSOLE.println("scenario: finishTime");
+        CONSOLE.printf("%10s %18s %18s %18s%n", "tasks", "cold (us/query)", "warm (us/query)", "after edit (us/q)");
+        for(int depth : new int[]{1_000, 10_000, 50_000}) {
+            TMS tms = new TMS();
+            silent(() -> buildDiamondChain(tms, depth));
+            int size = 2 * depth;
+            long cold = timeQueries(tms, size);
+            long warm = timeQueries(tms, size);
+            silent(() -> tms.changeTask(name(2), "duration", "5", false, false));
+            long edited = timeQueries(tms, size);
+            CONSOLE.printf("%10d %18.3f %18.3f %18.3f%n", size, cold / 1e3 / size, warm / 1e3 / size, edited / 1e3 / size);
+        }
+    }
+
+    /**
+     * Measures the critical path of a composite task that holds every primitive task of a layered graph.
+     * The time per task should stay flat as the graph grows.
+     */
+    private static void criticalPath() {
+        CONSOLE.println("scenario: criticalPath");
+        CONSOLE.printf("%10s %14s %14s %12s%n", "tasks", "total (ms)", "ns/task", "path length");
+        for(int size : new int[]{10_000, 100_000, 1_000_000}) {
+            TMS tms = new TMS();
+            silent(() -> {
+                buildLayeredGraph(tms, size);
+                StringBuilder subtask = new StringBuilder(name(0));
+                for(int i = 1; i < size; i++) {
+                    subtask.append(',').append(name(i));
+                }
+                tms.createCompositeTask("all", "everything", subtask.toString(), false, false);
+            });
+            tms.getCriticalPath("all");
+            long start = System.nanoTime();
+            int length = tms.getCriticalPath("all").getPath().length;
+            long elapsed = System.nanoTime() - start;
+            CONSOLE.printf("%10d %14.1f %14.1f %12d%n", size, elapsed / 1e6, (double) elapsed / size, length);
+        }
+    }
+
+    /**
+     * Defines a chain of criteria alternating negation, "&&" and "||" on top of IsPrimitive
+     * and searches the top one. The top criterion matches no task, so the time is spent evaluating, not printing.
+     */
+    private static void criteria() {
+        CONSOLE.println("scenario: criteria");
+        CONSOLE.printf("%10s %8s %16s%n", "tasks", "depth", "us/search");
+        for(int size : new int[]{10_000, 100_000, 500_000}) {
+            TMS tms = new TMS();
+            int depth = 31;
+            silent(() -> {
+                buildLayeredGraph(tms, size);
+                tms.defineNegatedCriterion("IsCompos", "IsPrimitive", false, false);
+                String previous = "IsPrimitive";
+                for(int k = 1; k <= depth; k++) {
+                    String current = "k" + k;
+                    switch (k % 3) {
+                        case 1 -> tms.defineBinaryCriterion(current, previous, "||", "IsCompos", false, false);
+                        case 2 -> tms.defineNegatedCriterion(current, previous, false, false);
+                        default -> tms.defineBinaryCriterion(current, previous, "&&", "IsPrimitive", false, false);
+                    }
+                    previous = current;
+                }
+                tms.defineNegatedCriterion("top", previous, false, false);
+            });
+            int searches = 200;
+            silent(() -> tms.search("top"));
+            long start = System.nanoTime();
+            silent(() -> {
+                for(int i = 0; i < searches; i++) {
+                    tms.search("top");
+                }
+            });
+            long elapsed = System.nanoTime() - start;
+            CONSOLE.printf("%10d %8d %16.2f%n", size + size / 10, depth + 1, elapsed / 1e3 / searches);
+        }
+    }
+
+    /**
+     * Compares selective substring searches answered by the trigram index with the same searches answered by a scan.
+     */
+    private static void substring() {
+        CONSOLE.println("scenario: substring");
+        CONSOLE.printf("%10s %12s %18s %18s%n", "tasks", "criterion", "scan (us/search)", "index (us/search)");
+        for(int size : new int[]{100_000, 500_000, 1_000_000}) {
+            TMS tms = new TMS();
+            silent(() -> {
+                buildLayeredGraph(tms, size);
+                tms.defineBasicCriterion("byName", "name", "contains", "t1a", false, false);
+                tms.defineBasicCriterion("byDesc", "description", "contains", "task-12345", false, false);
+            });
+            for(String criterion : new String[]{"byName", "byDesc"}) {
+                tms.setSubstringIndexEnabled(false);
+                long scan = timeSearches(tms, criterion, 20);
+                tms.setSubstringIndexEnabled(true);
+                long index = timeSearches(tms, criterion, 20);
+                CONSOLE.printf("%10d %12s %18.1f %18.1f%n", size + size / 10, criterion, scan / 1e3 / 20, index / 1e3 / 20);
+            }
+        }
+    }
+
+    /**
+     * Gives a hundred tasks a long duration and measures a search matching only those tasks
+     * and a search matching three in seven tasks. With the sorted duration index the selective
+     * search should stay roughly flat as the graph grows.
+     */
+    private static void durationRange() {
+        CONSOLE.println("scenario: durationRange");
+        CONSOLE.printf("%10s %18s %18s %18s%n", "tasks", "change (us/op)", "> 500 (us/search)", "> 4 (us/search)");
+        for(int size : new int[]{100_000, 500_000, 1_000_000}) {
+            TMS tms = new TMS();
+            silent(() -> {
+                buildLayeredGraph(tms, size);
+                tms.defineBasicCriterion("long", "duration", ">", "500", false, false);
+                tms.defineBasicCriterion("longer", "duration", ">", "4", false, false);
+            });
+            int changes = 100;
+            long start = System.nanoTime();
+            silent(() -> {
+                for(int i = 0; i < changes; i++) {
+                    tms.changeTask(name(i * (size / changes)), "duration", "1000", false, false);
+                }
+            });
+            long change = System.nanoTime() - start;
+            long selective = timeSearches(tms, "long", 20);
+            long broad = timeSearches(tms, "longer", 20);
+            CONSOLE.printf("%10d %18.2f %18.1f %18.1f%n", size, change / 1e3 / changes, selective / 1e3 / 20, broad / 1e3 / 20);
+        }
+    }
+
+    /**
+     * Stores and loads the same workspace in the text format and in the binary snapshot format
+     * and reports the file size, the elapsed time and the throughput in thousands of tasks per second.
+     * Load time includes rebuilding the dependency, id and duration indexes, which is the same for both formats.
+     */
+    private static void snapshot() {
+        CONSOLE.println("scenario: snapshot");
+        CONSOLE.printf("%10s %8s %10s %12s %12s %12s %12s%n", "tasks", "format", "size (MB)", "store (ms)", "store kt/s", "load (ms)", "load kt/s");
+        Path directory;
+        try {
+            directory = Files.createTempDirectory("tms-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for(int size : new int[]{100_000, 1_000_000}) {
+            TMS tms = new TMS();
+            silent(() -> buildLayeredGraph(tms, size));
+            for(String format : new String[]{"txt", "tmsb"}) {
+                Path file = directory.resolve("workspace." + format);
+                long start = System.nanoTime();
+                silent(() -> tms.store(file.toString()));
+                long store = System.nanoTime() - start;
+                TMS loaded = new TMS();
+                // the trigram indexes are rebuilt the same way for both formats and would dominate the load time
+                loaded.setSubstringIndexEnabled(false);
+                start = System.nanoTime();
+                silent(() -> loaded.load(file.toString()));
+                long load = System.nanoTime() - start;
+                double megabytes = file.toFile().length() / 1e6;
+                int tasks = size + size / 10;
+                CONSOLE.printf("%10d %8s %10.1f %12.1f %12.1f %12.1f %12.1f%n", tasks, format, megabytes,
+                        store / 1e6, tasks / 1e3 / (store / 1e9), load / 1e6, tasks / 1e3 / (load / 1e9));
+                file.toFile().delete();
+            }
+        }
+        directory.toFile().delete();
+    }
+
+    /**
+     * Stores a large workspace as a binary snapshot, then loads it eagerly and lazily and measures
+     * the load time, the heap in use after the load, and the time of a few PrintTask and ReportDuration
+     * commands that only touch a small part of the workspace.
+     */
+    private static void lazyLoad() {
+        CONSOLE.println("scenario: lazyLoad");
+        CONSOLE.printf("%10s %8s %12s %12s %16s%n", "tasks", "mode", "load (ms)", "heap (MB)", "100 queries (ms)");
+        Path file;
+        try {
+            file = Files.createTempFile("tms-bench", ".tmsb");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int size = 1_000_000;
+        silent(() -> {
+            TMS original = new TMS();
+            buildLayeredGraph(original, size);
+            original.store(file.toString());
+        });
+        for(boolean lazy : new boolean[]{false, true}) {
+            TMS tms = new TMS();
+            tms.setLazyLoadEnabled(lazy);
+            long start = System.nanoTime();
+            silent(() -> tms.load(file.toString()));
+            long load = System.nanoTime() - start;
+            double heap = usedHeap() / 1e6;
+            start = System.nanoTime();
+            silent(() -> {
+                for(int i = 0; i < 50; i++) {
+                    tms.printTask(name(i * (size / 50)));
+                    tms.reportDuration("c" + Integer.toString(i * (size / 500), 36));
+                }
+            });
+            long queries = System.nanoTime() - start;
+            CONSOLE.printf("%10d %8s %12.1f %12.1f %16.2f%n", size + size / 10, lazy ? "lazy" : "eager", load / 1e6, heap, queries / 1e6);
+        }
+        file.toFile().delete();
+    }
+
+    /**
+     * Applies the same stream of ChangeTask commands to a large workspace without persistence,
+     * with a journal, and with a full binary Store after every change, then measures recovery from the journal.
+     */
+    private static void journal() {
+        CONSOLE.println("scenario: journal");
+        CONSOLE.printf("%10s %14s %14s %14s %14s%n", "tasks", "none (us/op)", "journal (us/op)", "store (us/op)", "recover (ms)");
+        Path directory;
+        try {
+            directory = Files.createTempDirectory("tms-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Path journalDirectory = directory.resolve("journal");
+        Path snapshot = directory.resolve("workspace.tmsb");
+        int size = 100_000;
+        int changes = 20_000;
+        long[] elapsed = new long[3];
+        for(int mode = 0; mode < 3; mode++) {
+            TMS tms = new TMS();
+            silent(() -> buildLayeredGraph(tms, size));
+            if(mode == 1) {
+                silent(() -> tms.openJournal(journalDirectory.toString()));
+            }
+            int operations = mode == 2 ? changes / 100 : changes;
+            int storeEvery = mode == 2 ? 1 : 0;
+            long start = System.nanoTime();
+            silent(() -> {
+                for(int i = 0; i < operations; i++) {
+                    tms.changeTask(name(i), "duration", Integer.toString(2 + i % 5), false, false);
+                    if(storeEvery == 1) {
+                        tms.store(snapshot.toString());
+                    }
+                }
+                tms.closeJournal();
+            });
+            elapsed[mode] = (System.nanoTime() - start) / operations;
+        }
+        TMS recovered = new TMS();
+        long start = System.nanoTime();
+        silent(() -> recovered.openJournal(journalDirectory.toString()));
+        long recover = System.nanoTime() - start;
+        recovered.closeJournal();
+        CONSOLE.printf("%10d %14.2f %14.2f %14.2f %14.1f%n", size + size / 10, elapsed[0] / 1e3, elapsed[1] / 1e3, elapsed[2] / 1e3, recover / 1e6);
+        deleteRecursively(directory.toFile());
+    }
+
+    /**
+     * Applies a long stream of ChangeTask commands, then undoes half of them, and reports the bytes
+     * allocated by the benchmark thread and the time per command.
+     */
+    private static void history() {
+        CONSOLE.println("scenario: history");
+        CONSOLE.printf("%10s %16s %16s %16s %16s%n", "changes", "change (B/op)", "change (ns/op)", "undo (B/op)", "undo (ns/op)");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int size = 10_000;
+        for(int round = 0; round < 2; round++) {
+            int changes = 200_000;
+            TMS tms = new TMS();
+            // keep every change so each undo below has work to do
+            tms.setUndoHistoryLimit(changes);
+            silent(() -> buildLayeredGraph(tms, size));
+            long bytes = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            silent(() -> {
+                for(int i = 0; i < changes; i++) {
+                    if(i % 2 == 0) {
+                        tms.changeTask(name(i % size), "duration", Integer.toString(2 + i % 5), false, false);
+                    } else {
+                        tms.changeTask(name(i % size), "description", "changed-" + (i % 5), false, false);
+                    }
+                }
+            });
+            long change = System.nanoTime() - start;
+            long changeBytes = threads.getThreadAllocatedBytes(thread) - bytes;
+            int undos = changes / 2;
+            bytes = threads.getThreadAllocatedBytes(thread);
+            start = System.nanoTime();
+            silent(() -> {
+                for(int i = 0; i < undos; i++) {
+                    tms.undo();
+                }
+            });
+            long undo = System.nanoTime() - start;
+            long undoBytes = threads.getThreadAllocatedBytes(thread) - bytes;
+            // the first round warms up the JIT
+            if(round == 1) {
+                CONSOLE.printf("%10d %16d %16d %16d %16d%n", changes, changeBytes / changes, change / changes, undoBytes / undos, undo / undos);
+            }
+        }
+    }
+
+    /**
+     * Builds the same layered graph with a create call per task and with a single TaskBatch import,
+     * and reports the time per task of each.
+     */
+    private static void bulkImport() {
+        CONSOLE.println("scenario: bulkImport");
+        CONSOLE.printf("%10s %14s %14s %14s %14s%n", "tasks", "calls (ms)", "calls (ns/t)", "batch (ms)", "batch (ns/t)");
+        for(int size : new int[]{100_000, 200_000, 400_000, 800_000}) {
+            TMS perCall = new TMS();
+            long start = System.nanoTime();
+            silent(() -> buildLayeredGraph(perCall, size));
+            long calls = System.nanoTime() - start;
+            TMS imported = new TMS();
+            start = System.nanoTime();
+            TaskBatch batch = new TaskBatch();
+            // the composite tasks come first, so every subtask is a forward reference
+            for(int i = 0; i + 10 <= size; i += 10) {
+                String[] subtask = new String[10];
+                for(int j = 0; j < 10; j++) {
+                    subtask[j] = name(i + j);
+                }
+                batch.compositeTask("c" + Integer.toString(i / 10, 36), "block-" + i, subtask);
+            }
+            for(int i = 0; i < size; i++) {
+                if(i < 2) {
+                    batch.primitiveTask(name(i), "task-" + i, 1 + i % 7);
+                } else {
+                    batch.primitiveTask(name(i), "task-" + i, 1 + i % 7, name(i / 2), name(i - 1));
+                }
+            }
+            silent(() -> imported.importBatch(batch, false, false));
+            long bulk = System.nanoTime() - start;
+            int tasks = size + size / 10;
+            CONSOLE.printf("%10d %14d %14d %14d %14d%n", tasks, calls / 1_000_000, calls / tasks, bulk / 1_000_000, bulk / tasks);
+        }
+    }
+
+    /**
+     * Lists every task of a graph twice: through System.out set to a synchronized stream that receives one byte
+     * at a time and appends it as a char, like the text area stream of the GUI, and through an OutputSink that
+     * appends whole blocks. Both write into a StringBuilder, so only the delivery differs.
+     */
+    private static void listing() {
+        CONSOLE.println("scenario: listing");
+        CONSOLE.printf("%10s %12s %18s %18s%n", "tasks", "output (MB)", "per byte (ms)", "block sink (ms)");
+        for(int size : new int[]{100_000, 500_000}) {
+            TMS tms = new TMS();
+            silent(() -> buildLayeredGraph(tms, size));
+            StringBuilder bytes = new StringBuilder();
+            PrintStream perByte = new PrintStream(new OutputStream() {
+                @Override
+                public synchronized void write(int b) {
+                    bytes.append((char) b);
+                }
+            });
+            long start = System.nanoTime();
+            System.setOut(perByte);
+            try {
+                tms.printAllTasks();
+            } finally {
+                System.setOut(CONSOLE);
+            }
+            long byteTime = System.nanoTime() - start;
+            StringBuilder blocks = new StringBuilder();
+            tms.setOutputSink(blocks::append);
+            start = System.nanoTime();
+            tms.printAllTasks();
+            long blockTime = System.nanoTime() - start;
+            if(!blocks.toString().equals(bytes.toString())) {
+                throw new IllegalStateException("the sink and the stream received different output");
+            }
+            CONSOLE.printf("%10d %12.1f %18d %18d%n", size + size / 10, blocks.length() / 1e6, byteTime / 1_000_000, blockTime / 1_000_000);
+        }
+    }
+
+    /**
+     * Runs 1 to 16 reader threads against a ConcurrentTMS for a second each, while one writer thread changes
+     * the duration of a late task about every 100 microseconds. Readers alternate between getTask and
+     * getEarliestFinishTime of random tasks, after the finish times were computed once in creation order.
+     * The single-threaded rate without any lock is printed first for reference.
+     */
+    private static void concurrent() {
+        CONSOLE.println("scenario: concurrent (" + Runtime.getRuntime().availableProcessors() + " processor(s))");
+        int size = 200_000;
+        TMS plain = new TMS();
+        silent(() -> buildLayeredGraph(plain, size));
+        timeQueries(plain, size);
+        long reads = 0;
+        long start = System.nanoTime();
+        while(System.nanoTime() - start < 1_000_000_000L) {
+            reads += query(plain, ThreadLocalRandom.current().nextInt(size), reads);
+        }
+        CONSOLE.printf("%10s %16d%n", "no lock", reads);
+        CONSOLE.printf("%10s %16s %16s %16s%n", "readers", "reads/s", "reads/s/thread", "writes/s");
+        TMS shared = new TMS();
+        silent(() -> buildLayeredGraph(shared, size));
+        timeQueries(shared, size);
+        ConcurrentTMS tms = new ConcurrentTMS(shared);
+        System.setOut(SILENT);
+        try {
+            for(int readers : new int[]{1, 2, 4, 8, 16}) {
+                LongAdder readCount = new LongAdder();
+                LongAdder writeCount = new LongAdder();
+                AtomicBoolean running = new AtomicBoolean(true);
+                ArrayList<Thread> threads = new ArrayList<>();
+                for(int r = 0; r < readers; r++) {
+                    threads.add(new Thread(() -> {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        long count = 0;
+                        while(running.get()) {
+                            int i = random.nextInt(size);
+                            count += query(tms, i, count);
+                        }
+                        readCount.add(count);
+                    }));
+                }
+                threads.add(new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while(running.get()) {
+                        String task = name(size - 1 - random.nextInt(100));
+                        String duration = Integer.toString(1 + random.nextInt(7));
+                        tms.write(t -> t.changeTask(task, "duration", duration, false, false));
+                        writeCount.increment();
+                        LockSupport.parkNanos(100_000);
+                    }
+                }));
+                threads.forEach(Thread::start);
+                LockSupport.parkNanos(1_000_000_000L);
+                running.set(false);
+                for(Thread thread : threads) {
+                    thread.join();
+                }
+                CONSOLE.printf("%10d %16d %16d %16d%n", readers, readCount.sum(), readCount.sum() / readers, writeCount.sum());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            System.setOut(CONSOLE);
+        }
+    }
+
+    /**
+     * Changes durations of a graph of 200,000 tasks through a ConcurrentTMS, which publishes a version after every change,
+     * and through a plain TMS, keeping every 100th version to measure the memory they share.
+     * Then a writer runs while the main thread repeats a broad search, once over a version and once under the read lock.
+     */
+    private static void versions() {
+        CONSOLE.println("scenario: versions");
+        int size = 200_000;
+        int changes = 100_000;
+        TMS plain = new TMS();
+        silent(() -> buildLayeredGraph(plain, size));
+        TMS shared = new TMS();
+        silent(() -> buildLayeredGraph(shared, size));
+        ConcurrentTMS tms = new ConcurrentTMS(shared);
+        long start = System.nanoTime();
+        silent(() -> {
+            for(int i = 0; i < changes; i++) {
+                plain.changeTask(name(i % size), "duration", Integer.toString(1 + i % 5), false, false);
+            }
+        });
+        long plainTime = System.nanoTime() - start;
+        long before = usedHeap();
+        ArrayList<TaskVersion> kept = new ArrayList<>();
+        start = System.nanoTime();
+        silent(() -> {
+            for(int i = 0; i < changes; i++) {
+                String task = name(i % size);
+                String duration = Integer.toString(1 + i % 5);
+                tms.write(t -> t.changeTask(task, "duration", duration, false, false));
+                if(i % 100 == 0) {
+                    kept.add(tms.getVersion());
+                }
+            }
+        });
+        long publishTime = System.nanoTime() - start;
+        long retained = usedHeap() - before;
+        CONSOLE.printf("%-40s %12d%n", "change, plain TMS (ns)", plainTime / changes);
+        CONSOLE.printf("%-40s %12d%n", "change with publish (ns)", publishTime / changes);
+        CONSOLE.printf("%-40s %12d%n", "versions kept", kept.size());
+        CONSOLE.printf("%-40s %12d%n", "bytes per kept version", retained / kept.size());
+        shared.getVersion();
+        silent(() -> tms.write(t -> t.defineBasicCriterion("short", "duration", "<", "3", false, false)));
+        CONSOLE.printf("%-40s %12s %12s %12s%n", "search during writes", "searches", "ms/search", "writes");
+        for(boolean overVersion : new boolean[]{true, false}) {
+            AtomicBoolean running = new AtomicBoolean(true);
+            LongAdder writes = new LongAdder();
+            Thread writer = new Thread(() -> {
+                int i = 0;
+                while(running.get()) {
+                    // the durations the graph was built with, so the search stays as selective
+                    String task = name(i % size);
+                    String duration = Integer.toString(1 + i % size % 7);
+                    tms.write(t -> t.changeTask(task, "duration", duration, false, false));
+                    i++;
+                    writes.increment();
+                }
+            });
+            System.setOut(SILENT);
+            writer.start();
+            int searches = 0;
+            start = System.nanoTime();
+            long elapsed;
+            while((elapsed = System.nanoTime() - start) < 2_000_000_000L) {
+                if(overVersion) {
+                    tms.getVersion().searchTasks("short");
+                } else {
+                    tms.searchTasks("short");
+                }
+                searches++;
+            }
+            running.set(false);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            System.setOut(CONSOLE);
+            CONSOLE.printf("%-40s %12d %12.2f %12d%n", overVersion ? "over a version, no lock" : "under the read lock",
+                    searches, elapsed / 1e6 / searches, writes.sum());
+        }
+    }
+
+    // one read of task i, a lookup or an earliest finish time depending on the count so far; returns the number of reads
+    /**
+     * Searches with criteria that no index can answer, so that every primitive task is tested,
+     * with the scan split across 1, 4 and 16 threads. The speedup is relative to one thread and
+     * is bounded by the number of processors of the machine, which is printed first.
+     */
+    private static void parallelSearch() {
+        CONSOLE.println("scenario: parallelSearch (" + Runtime.getRuntime().availableProcessors() + " processor(s))");
+        CONSOLE.printf("%10s %16s %8s %14s %8s%n", "tasks", "criterion", "threads", "ms/search", "speedup");
+        for(int size : new int[]{100_000, 1_000_000}) {
+            TMS tms = new TMS();
+            tms.setSubstringIndexEnabled(false);
+            silent(() -> {
+                buildLayeredGraph(tms, size);
+                tms.defineBasicCriterion("byDesc", "description", "contains", "-12", false, false);
+                tms.defineBasicCriterion("byPrereq", "prerequisites", "contains", name(7) + "," + name(size / 3), false, false);
+            });
+            for(String criterion : new String[]{"byDesc", "byPrereq"}) {
+                int searches = size >= 1_000_000 ? 10 : 50;
+                // warm up the sequential scan, so that the first row is not charged for compilation
+                timeSearches(tms, criterion, searches);
+                long sequential = 0;
+                List<String> expected = null;
+                for(int threads : new int[]{1, 4, 16}) {
+                    tms.setSearchParallelism(threads);
+                    if(expected == null) {
+                        expected = tms.searchTasks(criterion);
+                    }
+                    else if(!expected.equals(tms.searchTasks(criterion))) {
+                        throw new IllegalStateException(criterion + " found different tasks on " + threads + " threads");
+                    }
+                    long elapsed = timeSearches(tms, criterion, searches);
+                    if(threads == 1) {
+                        sequential = elapsed;
+                    }
+                    CONSOLE.printf("%10d %16s %8d %14.2f %8.2f%n", size + size / 10, criterion, threads,
+                            elapsed / 1e6 / searches, (double) sequential / elapsed);
+                }
+            }
+            tms.setSearchParallelism(1);
+        }
+    }
+
+    /**
+     * Builds each shape of TaskGraphs with a million primitive tasks and asks for the earliest finish time
+     * of its top task, which depends on every task of the graph: once cold, which walks and caches the whole graph,
+     * and once more from the cache. The heap is measured around the cold query, so it is what the cached
+     * finish times and the graph by id hold. A chain is as deep as it is long, so a recursive walk needs a large stack.
+     */
+    private static void taskGraph() {
+        CONSOLE.println("scenario: taskGraph");
+        CONSOLE.printf("%14s %10s %12s %12s %14s%n", "shape", "tasks", "cold (ms)", "warm (ns)", "heap (MB)");
+        int size = 1_000_000;
+        for(String shape : TaskGraphs.SHAPES) {
+            TMS tms = new TMS();
+            TaskGraphs.Graph[] graph = new TaskGraphs.Graph[1];
+            silent(() -> graph[0] = TaskGraphs.build(shape, tms, size));
+            String top = graph[0].getTop();
+            long before = usedHeap();
+            long start = System.nanoTime();
+            double finishTime = tms.getEarliestFinishTime(top);
+            long cold = System.nanoTime() - start;
+            long after = usedHeap();
+            start = System.nanoTime();
+            int queries = 100_000;
+            for(int i = 0; i < queries; i++) {
+                if(tms.getEarliestFinishTime(top) != finishTime) {
+                    throw new IllegalStateException("the cached finish time of " + top + " differs");
+                }
+            }
+            long warm = System.nanoTime() - start;
+            CONSOLE.printf("%14s %10d %12.1f %12.1f %14.1f%n", shape, size, cold / 1e6, (double) warm / queries,
+                    (after - before) / 1e6);
+        }
+    }
+
+    /**
+     * Measures the heap a TMS holds per task, with every index it keeps, for each shape of TaskGraphs
+     * and for primitive tasks whose descriptions repeat, as when tasks are copied from templates.
+     * Each graph is measured as built by create calls and again after a Store and a Load of the text format.
+     */
+    private static void memory() {
+        CONSOLE.println("scenario: memory");
+        CONSOLE.printf("%18s %10s %16s %16s%n", "graph", "tasks", "built (B/task)", "loaded (B/task)");
+        Path file;
+        try {
+            file = Files.createTempFile("tms-bench", ".txt");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int size = 1_000_000;
+        for(String shape : TaskGraphs.SHAPES) {
+            memory(shape, size, file, false, tms -> TaskGraphs.build(shape, tms, size));
+        }
+        for(boolean compact : new boolean[]{false, true}) {
+            memory(compact ? "templated compact" : "templated", size, file, compact, tms -> {
+                for(int i = 0; i < size; i++) {
+                    tms.createPrimitiveTask(name(i), "template-" + i % 100, "1", ",", false, false);
+                }
+            });
+        }
+        file.toFile().delete();
+    }
+
+    private static void memory(String graph, int size, Path file, boolean compact, Consumer<TMS> build) {
+        long before = usedHeap();
+        TMS[] tms = {new TMS()};
+        tms[0].setCompactStorageEnabled(compact);
+        silent(() -> build.accept(tms[0]));
+        long built = usedHeap() - before;
+        silent(() -> tms[0].store(file.toString()));
+        tms[0] = new TMS();
+        tms[0].setCompactStorageEnabled(compact);
+        silent(() -> tms[0].load(file.toString()));
+        long loaded = usedHeap() - before;
+        CONSOLE.printf("%18s %10d %16d %16d%n", graph, size, built / size, loaded / size);
+    }
+
+    /**
+     * Builds a diamond graph of two million tasks and runs the same mixed load on it with the task graph
+     * on the heap and off it. One operation in twenty creates a task depending on a random task, one in twenty
+     * deletes the oldest task created that way, and the others query the earliest finish time of a random task.
+     * The load churns the heap without changing the finish times of the graph, so what differs between the modes
+     * is the work of the garbage collector and the cost of reading the graph. The latency of every operation is
+     * recorded, with the collections, the collection time and the heap and direct memory in use.
+     * A first round in each mode warms up the JIT and is not printed.
+     */
+    private static void gcPauses() {
+        CONSOLE.println("scenario: gcPauses");
+        CONSOLE.printf("%9s %10s %9s %9s %9s %10s %8s %10s %10s %10s%n", "graph", "ops/s", "p50(us)", "p99(us)",
+                "p999(us)", "max(us)", "GCs", "GC (ms)", "heap (MB)", "direct (MB)");
+        int size = 2_000_000;
+        TMS tms = new TMS();
+        silent(() -> TaskGraphs.diamond(tms, size));
+        for(int round = 0; round < 2; round++) {
+            for(boolean offHeap : new boolean[]{false, true}) {
+                tms.setOffHeapGraphEnabled(offHeap);
+                tms.getEarliestFinishTime(TaskGraphs.name(size - 1));
+                long heap = usedHeap();
+                long collections = 0;
+                long collectionTime = 0;
+                for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                    collections -= collector.getCollectionCount();
+                    collectionTime -= collector.getCollectionTime();
+                }
+                LatencyHistogram latencies = new LatencyHistogram();
+                long duration = 10_000_000_000L;
+                long start = System.nanoTime();
+                silent(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    ArrayDeque<String> created = new ArrayDeque<>();
+                    int next = 0;
+                    for(long now = start; now - start < duration; ) {
+                        String task = TaskGraphs.name(random.nextInt(size));
+                        int operation = random.nextInt(20);
+                        if(operation == 0) {
+                            String name = "x" + Integer.toString(next++, 36);
+                            tms.createPrimitiveTask(name, "churn", "1", task, false, false);
+                            created.add(name);
+                        }
+                        else if(operation == 1 && !created.isEmpty()) {
+                            tms.deleteTask(created.poll(), false, false);
+                        }
+                        else {
+                            tms.getEarliestFinishTime(task);
+                        }
+                        long end = System.nanoTime();
+                        latencies.record(end - now);
+                        now = end;
+                    }
+                });
+                for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                    collections += collector.getCollectionCount();
+                    collectionTime += collector.getCollectionTime();
+                }
+                long direct = 0;
+                for(BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+                    if(pool.getName().equals("direct")) {
+                        direct = pool.getMemoryUsed();
+                    }
+                }
+                if(round == 1) {
+                    CONSOLE.printf("%9s %10.0f %9.1f %9.1f %9.1f %10.1f %8d %10d %10.1f %10.1f%n", offHeap ? "off-heap" : "heap",
+                            latencies.getCount() / (duration / 1e9), latencies.getValueAtPercentile(50) / 1e3,
+                            latencies.getValueAtPercentile(99) / 1e3, latencies.getValueAtPercentile(99.9) / 1e3,
+                            latencies.getMax() / 1e3, collections, collectionTime, heap / 1e6, direct / 1e6);
+                }
+            }
+        }
+    }
+
+    private static int query(TMS tms, int i, long count) {
+        if((count & 1) == 0) {
+            return tms.getTask(name(i)) == null ? 0 : 1;
+        }
+        return tms.getEarliestFinishTime(name(i)) < 0 ? 0 : 1;
+    }
+
+    private static int query(ConcurrentTMS tms, int i, long count) {
+        if((count & 1) == 0) {
+            return tms.getTask(name(i)) == null ? 0 : 1;
+        }
+        return tms.getEarliestFinishTime(name(i)) < 0 ? 0 : 1;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if(children != null) {
+            for(File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long timeSearches(TMS tms, String criterion, int searches) {
+        silent(() -> tms.search(criterion));
+        long start = System.nanoTime();
+        silent(() -> {
+            for(int i = 0; i < searches; i++) {
+                tms.search(criterion);
+            }
+        });
+        return System.nanoTime() - start;
+    }
+
+    private static long timeQueries(TMS tms, int size) {
+        long start = System.nanoTime();
+        silent(() -> {
+            for(int i = 0; i < size; i++) {
+                tms.reportEarliestFinishTime(name(i));
+            }
+        });
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Creates depth layers of two primitive tasks, each depending on both tasks of the previous layer.
+     * Tasks are created bottom-up, so querying in creation order keeps the recursion shallow.
+     */
+    static void buildDiamondChain(TMS tms, int depth) {
+        for(int layer = 0; layer < depth; layer++) {
+            String prerequisite = layer == 0 ? "," : name(2 * layer - 2) + "," + name(2 * layer - 1);
+            tms.createPrimitiveTask(name(2 * layer), "left", "1", prerequisite, false, false);
+            tms.createPrimitiveTask(name(2 * layer + 1), "right", "2", prerequisite, false, false);
+        }
+    }
+
+    /**
+     * Creates primitive tasks that each depend on up to two earlier tasks,
+     * and one composite task for every block of ten primitive tasks.
+     */
+    static void buildLayeredGraph(TMS tms, int size) {
+        for(int i = 0; i < size; i++) {
+            String prerequisite = i < 2 ? "," : name(i / 2) + "," + name(i - 1);
+            tms.createPrimitiveTask(name(i), "task-" + i, Integer.toString(1 + i % 7), prerequisite, false, false);
+        }
+        for(int i = 0; i + 10 <= size; i += 10) {
+            StringBuilder subtask = new StringBuilder(name(i));
+            for(int j = i + 1; j < i + 10; j++) {
+                subtask.append(',').append(name(j));
+            }
+            tms.createCompositeTask("c" + Integer.toString(i / 10, 36), "block-" + i, subtask.toString(), false, false);
+        }
+    }
+
+    static String name(int i) {
+        return "t" + Integer.toString(i, 36);
+    }
+
+    static void silent(Runnable body) {
+        System.setOut(SILENT);
+        try {
+            body.run();
+        } finally {
+            System.setOut(CONSOLE);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package hk.edu.polyu.comp.comp2021.tms.bench;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A load generator for a TMSServer.
+ * <p>
+ * Usage: {@code TMSLoadClient [port [connections [pipeline [seconds [tasks]]]]]}, by default
+ * {@code TMSLoadClient 7070 4 8 10 10000}.
+ * The client first creates the tasks over one connection, each depending on the task with half its number.
+ * Then every connection keeps up to pipeline commands in flight for the given number of seconds:
+ * PrintTask and ReportEarliestFinishTime of random tasks, and one ChangeTask duration in ten.
+ * The latency of a command is measured from sending it to reading the end of its response,
+ * so it includes the time spent behind the commands pipelined before it.
+ * The throughput and the 50th, 99th and 99.9th percentile latencies over all connections are printed at the end.
+ */
+public class TMSLoadClient {
+    /**
+     * @param args The port, the number of connections, the pipeline depth, the duration in seconds and the number of tasks.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int pipeline = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int tasks = args.length > 4 ? Integer.parseInt(args[4]) : 10_000;
+
+        long start = System.nanoTime();
+        try (Connection setup = new Connection(port)) {
+            for(int i = 0; i < tasks; i++) {
+                setup.send("CreatePrimitiveTask " + name(i) + " load " + (1 + i % 7) + " " + (i == 0 ? "," : name(i / 2)));
+                // keep the pipeline bounded so neither side blocks on a full socket buffer
+                if(i % 256 == 255) {
+                    setup.flush();
+                    setup.drain();
+                }
+            }
+            setup.flush();
+            setup.drain();
+        }
+        System.out.printf("created %d task(s) in %.2f s%n", tasks, (System.nanoTime() - start) / 1e9);
+
+        long[][] latencies = new long[connections][];
+        ArrayList<Thread> threads = new ArrayList<>();
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        for(int c = 0; c < connections; c++) {
+            int connection = c;
+            threads.add(new Thread(() -> latencies[connection] = run(port, pipeline, tasks, end)));
+        }
+        start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%d connection(s), pipeline %d: %d command(s) in %.2f s, %.0f commands/s%n",
+                connections, pipeline, all.length, elapsed, all.length / elapsed);
+        System.out.printf("latency (us): p50 %.1f, p99 %.1f, p999 %.1f, max %.1f%n",
+                percentile(all, 0.50) / 1e3, percentile(all, 0.99) / 1e3, percentile(all, 0.999) / 1e3, all[all.length - 1] / 1e3);
+    }
+
+    // runs one connection until the end time and returns the latency of every command in nanoseconds
+    private static long[] run(int port, int pipeline, int tasks, long end) {
+        long[] latencies = new long[1 << 16];
+        int count = 0;
+        // the send times of the commands in flight, oldest first, in a ring
+        long[] sent = new long[pipeline];
+        int head = 0;
+        int inFlight = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (Connection connection = new Connection(port)) {
+            while(inFlight > 0 || System.nanoTime() < end) {
+                while(inFlight < pipeline && System.nanoTime() < end) {
+                    String task = name(random.nextInt(tasks));
+                    int kind = random.nextInt(10);
+                    connection.send(kind == 0 ? "ChangeTask " + task + " duration " + (1 + random.nextInt(7))
+                            : kind % 2 == 0 ? "PrintTask " + task : "ReportEarliestFinishTime " + task);
+                    sent[(head + inFlight) % pipeline] = System.nanoTime();
+                    inFlight++;
+                }
+                connection.flush();
+                connection.readResponse();
+                if(count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, 2 * count);
+                }
+                latencies[count++] = System.nanoTime() - sent[head];
+                head = (head + 1) % pipeline;
+                inFlight--;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+    }
+
+    private static String name(int i) {
+        return "l" + Integer.toString(i, 36);
+    }
+
+    // a connection to the server that counts the responses it still has to read
+    private static final class Connection implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final Writer writer;
+        private int pending = 0;
+
+        Connection(int port) throws IOException {
+            socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+            writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16);
+        }
+
+        void send(String command) throws IOException {
+            writer.write(command);
+            writer.write('\n');
+            pending++;
+        }
+
+        void flush() throws IOException {
+            writer.flush();
+        }
+
+        // reads the lines of one response up to the "." line that ends it
+        void readResponse() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+            } while(line != null && !line.equals("."));
+            if(line == null) {
+                throw new IOException("the server closed the connection");
+            }
+            pending--;
+        }
+
+        void drain() throws IOException {
+            while(pending > 0) {
+                readResponse();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.write("Quit\n");
+            writer.flush();
+            socket.close();
+        }
+    }
+}
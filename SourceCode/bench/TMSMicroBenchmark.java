@@ -0,0 +1,313 @@
+package hk.edu.polyu.comp.comp2021.tms.bench;
+
+import hk.edu.polyu.comp.comp2021.tms.model.TMS;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A micro-benchmark harness for the public operations of the Task Management System (TMS), meant to be run
+ * before and after a change so that the two result files can be compared.
+ * <p>
+ * Usage: {@code TMSMicroBenchmark [-o file] [-b regex] [-s sizes] [-wi iterations] [-i iterations]} to measure, and
+ * {@code TMSMicroBenchmark --compare baseline current} to compare two result files.
+ * - -o writes the results to a file, as JSON if its name ends with ".json" and as CSV otherwise.
+ * - -b runs only the benchmarks whose "operation/shape" matches the regular expression, for example "search/.*".
+ * - -s gives the comma-separated numbers of primitive tasks of the generated graphs, by default 1000,20000.
+ * - -wi and -i give the numbers of warmup and measured iterations, by default 3 and 5.
+ * <p>
+ * Every operation is measured on every shape of TaskGraphs and every size. An iteration times a fixed number
+ * of calls of the operation and yields the mean time per call; the result of a benchmark is the mean, the
+ * standard deviation and the minimum of its measured iterations. Operations that change the tasks get a
+ * freshly generated graph for every iteration, outside the timed region; the others share one graph.
+ * Console output of the TMS is discarded while a benchmark runs.
+ */
+public class TMSMicroBenchmark {
+    private static final PrintStream CONSOLE = System.out;
+    private static final PrintStream SILENT = new PrintStream(OutputStream.nullOutputStream());
+    private static final String CSV_HEADER = "benchmark,shape,size,iterations,calls,mean_ns,stddev_ns,min_ns";
+
+    /**
+     * One call of a benchmarked operation.
+     */
+    private interface Call {
+        /**
+         * Performs the call with the given number.
+         *
+         * @param tms   The TMS holding the generated graph.
+         * @param graph The generated graph.
+         * @param i     The number of the call within its iteration, from 0.
+         */
+        void run(TMS tms, TaskGraphs.Graph graph, int i);
+    }
+
+    // an operation: how it prepares the graph, how many calls an iteration makes, and whether it changes the tasks
+    private static final class Operation {
+        private final String name;
+        private final boolean mutating;
+        private final IntUnaryOperator calls;
+        private final Call prepare;
+        private final Call call;
+
+        Operation(String name, boolean mutating, IntUnaryOperator calls, Call prepare, Call call) {
+            this.name = name;
+            this.mutating = mutating;
+            this.calls = calls;
+            this.prepare = prepare;
+            this.call = call;
+        }
+    }
+
+    // the measured times per call of one benchmark
+    private static final class Result {
+        private final String benchmark;
+        private final String shape;
+        private final int size;
+        private final int calls;
+        private final double[] nanosPerCall;
+
+        Result(String benchmark, String shape, int size, int calls, double[] nanosPerCall) {
+            this.benchmark = benchmark;
+            this.shape = shape;
+            this.size = size;
+            this.calls = calls;
+            this.nanosPerCall = nanosPerCall;
+        }
+
+        double mean() {
+            double sum = 0;
+            for(double value : nanosPerCall) {
+                sum += value;
+            }
+            return sum / nanosPerCall.length;
+        }
+
+        double stddev() {
+            double mean = mean();
+            double sum = 0;
+            for(double value : nanosPerCall) {
+                sum += (value - mean) * (value - mean);
+            }
+            return nanosPerCall.length < 2 ? 0 : Math.sqrt(sum / (nanosPerCall.length - 1));
+        }
+
+        double min() {
+            double min = Double.MAX_VALUE;
+            for(double value : nanosPerCall) {
+                min = Math.min(min, value);
+            }
+            return min;
+        }
+    }
+
+    /**
+     * @param args The options described above.
+     */
+    public static void main(String[] args) {
+        if(args.length == 3 && args[0].equals("--compare")) {
+            compare(Path.of(args[1]), Path.of(args[2]));
+            return;
+        }
+        String output = null;
+        Pattern filter = Pattern.compile(".*");
+        int[] sizes = {1_000, 20_000};
+        int warmups = 3;
+        int iterations = 5;
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-o" -> output = args[i + 1];
+                case "-b" -> filter = Pattern.compile(args[i + 1]);
+                case "-s" -> sizes = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "-wi" -> warmups = Integer.parseInt(args[i + 1]);
+                case "-i" -> iterations = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        Path directory;
+        try {
+            directory = Files.createTempDirectory("tms-microbench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ArrayList<Result> results = new ArrayList<>();
+        CONSOLE.printf("%-26s %-14s %8s %8s %14s %12s%n", "benchmark", "shape", "size", "calls", "ns/call", "stddev");
+        try {
+            for(Operation operation : operations(directory)) {
+                for(String shape : TaskGraphs.SHAPES) {
+                    if(!filter.matcher(operation.name + "/" + shape).matches()) {
+                        continue;
+                    }
+                    for(int size : sizes) {
+                        Result result = measure(operation, shape, size, warmups, iterations);
+                        results.add(result);
+                        CONSOLE.printf("%-26s %-14s %8d %8d %14.1f %12.1f%n", result.benchmark, result.shape,
+                                result.size, result.calls, result.mean(), result.stddev());
+                    }
+                }
+            }
+        } finally {
+            deleteRecursively(directory.toFile());
+        }
+        if(output != null) {
+            write(Path.of(output), results);
+            CONSOLE.println("results written to " + output);
+        }
+    }
+
+    // the benchmarked operations; store and load use files in the given directory
+    private static List<Operation> operations(Path directory) {
+        String text = directory.resolve("workspace.txt").toString();
+        String binary = directory.resolve("workspace.tmsb").toString();
+        Call none = (tms, graph, i) -> { };
+        IntUnaryOperator thousand = size -> 1_000;
+        IntUnaryOperator upToThousand = size -> Math.min(size, 1_000);
+        IntUnaryOperator hundred = size -> 100;
+        IntUnaryOperator five = size -> 5;
+        List<Operation> operations = new ArrayList<>();
+        operations.add(new Operation("createPrimitiveTask", true, thousand, none, (tms, graph, i) ->
+                tms.createPrimitiveTask("n" + i, "new", "3", graph.getPrimitiveTasks().get(graph.getPrimitiveTasks().size() - 1), false, false)));
+        operations.add(new Operation("deleteTask", true, upToThousand, none, (tms, graph, i) ->
+                tms.deleteTask(graph.getPrimitiveTasks().get(graph.getPrimitiveTasks().size() - 1 - i), false, false)));
+        operations.add(new Operation("changeTask.name", true, upToThousand, none, (tms, graph, i) ->
+                tms.changeTask(graph.getPrimitiveTasks().get(i), "name", "r" + i, false, false)));
+        operations.add(new Operation("search", false, hundred, (tms, graph, i) -> {
+            tms.defineBasicCriterion("long", "duration", ">", "3", false, false);
+            tms.defineBasicCriterion("ones", "description", "contains", "1", false, false);
+            tms.defineBinaryCriterion("bench", "long", "&&", "ones", false, false);
+        }, (tms, graph, i) -> tms.search("bench")));
+        operations.add(new Operation("reportDuration", false, hundred, none, (tms, graph, i) ->
+                tms.reportDuration(graph.getTop())));
+        // the finish times are cached, so every iteration starts from a new graph and queries each task once
+        operations.add(new Operation("reportEarliestFinishTime", true, size -> size, none, (tms, graph, i) ->
+                tms.reportEarliestFinishTime(graph.getPrimitiveTasks().get(i))));
+        operations.add(new Operation("store", false, five, none, (tms, graph, i) -> tms.store(text)));
+        operations.add(new Operation("store.binary", false, five, none, (tms, graph, i) -> tms.store(binary)));
+        operations.add(new Operation("load", false, five, (tms, graph, i) -> tms.store(text), (tms, graph, i) -> tms.load(text)));
+        operations.add(new Operation("load.binary", false, five, (tms, graph, i) -> tms.store(binary), (tms, graph, i) -> tms.load(binary)));
+        return operations;
+    }
+
+    private static Result measure(Operation operation, String shape, int size, int warmups, int iterations) {
+        int calls = operation.calls.applyAsInt(size);
+        double[] nanosPerCall = new double[iterations];
+        TMS tms = null;
+        TaskGraphs.Graph graph = null;
+        System.setOut(SILENT);
+        try {
+            for(int iteration = 0; iteration < warmups + iterations; iteration++) {
+                if(tms == null || operation.mutating) {
+                    tms = new TMS();
+                    graph = TaskGraphs.build(shape, tms, size);
+                    operation.prepare.run(tms, graph, 0);
+                }
+                long start = System.nanoTime();
+                for(int i = 0; i < calls; i++) {
+                    operation.call.run(tms, graph, i);
+                }
+                long elapsed = System.nanoTime() - start;
+                if(iteration >= warmups) {
+                    nanosPerCall[iteration - warmups] = (double) elapsed / calls;
+                }
+            }
+        } finally {
+            System.setOut(CONSOLE);
+        }
+        return new Result(operation.name, shape, size, calls, nanosPerCall);
+    }
+
+    private static void write(Path file, List<Result> results) {
+        boolean json = file.toString().endsWith(".json");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file))) {
+            writer.println(json ? "[" : CSV_HEADER);
+            for(int i = 0; i < results.size(); i++) {
+                Result result = results.get(i);
+                if(json) {
+                    writer.printf(Locale.ROOT, "  {\"benchmark\": \"%s\", \"shape\": \"%s\", \"size\": %d, \"iterations\": %d, "
+                                    + "\"calls\": %d, \"mean_ns\": %.1f, \"stddev_ns\": %.1f, \"min_ns\": %.1f}%s%n",
+                            result.benchmark, result.shape, result.size, result.nanosPerCall.length, result.calls,
+                            result.mean(), result.stddev(), result.min(), i + 1 < results.size() ? "," : "");
+                }
+                else {
+                    writer.printf(Locale.ROOT, "%s,%s,%d,%d,%d,%.1f,%.1f,%.1f%n", result.benchmark, result.shape, result.size,
+                            result.nanosPerCall.length, result.calls, result.mean(), result.stddev(), result.min());
+                }
+            }
+            if(json) {
+                writer.println("]");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // prints the mean time per call of every benchmark found in both files, and how much it has changed
+    private static void compare(Path baseline, Path current) {
+        Map<String, Double> before = read(baseline);
+        Map<String, Double> after = read(current);
+        CONSOLE.printf("%-50s %14s %14s %8s%n", "benchmark", "baseline ns", "current ns", "change");
+        for(Map.Entry<String, Double> entry : after.entrySet()) {
+            Double old = before.get(entry.getKey());
+            if(old == null) {
+                CONSOLE.printf("%-50s %14s %14.1f %8s%n", entry.getKey(), "-", entry.getValue(), "new");
+                continue;
+            }
+            CONSOLE.printf("%-50s %14.1f %14.1f %+7.1f%%%n", entry.getKey(), old, entry.getValue(),
+                    100 * (entry.getValue() - old) / old);
+        }
+    }
+
+    // the mean time per call of every benchmark of a result file, in the order of the file
+    private static Map<String, Double> read(Path file) {
+        LinkedHashMap<String, Double> means = new LinkedHashMap<>();
+        Pattern field = Pattern.compile("\"(\\w+)\": \"?([^\",}]*)\"?");
+        try {
+            for(String line : Files.readAllLines(file)) {
+                String[] values;
+                if(line.trim().startsWith("{")) {
+                    Map<String, String> fields = new LinkedHashMap<>();
+                    Matcher matcher = field.matcher(line);
+                    while(matcher.find()) {
+                        fields.put(matcher.group(1), matcher.group(2));
+                    }
+                    values = new String[]{fields.get("benchmark"), fields.get("shape"), fields.get("size"), fields.get("mean_ns")};
+                }
+                else if(!line.isEmpty() && !line.equals(CSV_HEADER) && !line.equals("[") && !line.equals("]")) {
+                    String[] columns = line.split(",");
+                    values = new String[]{columns[0], columns[1], columns[2], columns[5]};
+                }
+                else {
+                    continue;
+                }
+                means.put(values[0] + "/" + values[1] + "/" + values[2], Double.parseDouble(values[3]));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return means;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if(children != null) {
+            for(File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
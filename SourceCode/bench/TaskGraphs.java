@@ -0,0 +1,160 @@
+package hk.edu.polyu.comp.comp2021.tms.bench;
+
+import hk.edu.polyu.comp.comp2021.tms.model.TMS;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic task graphs for benchmarking the Task Management System (TMS).
+ * <p>
+ * Every generator creates its tasks in dependency order, so a task only ever refers to tasks created before it.
+ * Deleting the primitive tasks in the reverse order of their creation therefore never meets a prerequisite
+ * that is still in use, and querying them in the order of their creation keeps every traversal shallow.
+ * Durations cycle through 1 to 7 and descriptions are "task-" followed by the number of the task.
+ * The output of the TMS is not suppressed; callers that do not want it should redirect System.out.
+ */
+public final class TaskGraphs {
+    /** The shapes the generators can build, as accepted by {@link #build(String, TMS, int)}. */
+    public static final String[] SHAPES = {"chain", "fanOut", "deepComposite", "diamond"};
+
+    private TaskGraphs() {
+    }
+
+    /**
+     * The tasks a generator has created.
+     */
+    public static final class Graph {
+        private final List<String> primitiveTasks;
+        private final String top;
+
+        Graph(List<String> primitiveTasks, String top) {
+            this.primitiveTasks = primitiveTasks;
+            this.top = top;
+        }
+
+        /**
+         * Returns the names of the primitive tasks in the order they were created.
+         *
+         * @return The list of task names, which must not be modified.
+         */
+        public List<String> getPrimitiveTasks() {
+            return primitiveTasks;
+        }
+
+        /**
+         * Returns the name of the task created last, which depends directly or indirectly on the most other tasks.
+         *
+         * @return The name of the top task.
+         */
+        public String getTop() {
+            return top;
+        }
+    }
+
+    /**
+     * Builds a graph of one of the shapes of {@link #SHAPES}.
+     *
+     * @param shape The name of the shape.
+     * @param tms   The TMS the tasks are created in.
+     * @param size  The number of primitive tasks.
+     * @return The created graph.
+     * @throws IllegalArgumentException If the shape is unknown.
+     */
+    public static Graph build(String shape, TMS tms, int size) {
+        switch (shape) {
+            case "chain" -> { return chain(tms, size); }
+            case "fanOut" -> { return fanOut(tms, size); }
+            case "deepComposite" -> { return deepComposite(tms, size, 8); }
+            case "diamond" -> { return diamond(tms, size); }
+            default -> throw new IllegalArgumentException("unknown shape " + shape);
+        }
+    }
+
+    /**
+     * Creates size primitive tasks, each depending on the one created before it.
+     *
+     * @param tms  The TMS the tasks are created in.
+     * @param size The number of primitive tasks.
+     * @return The created graph, whose top is the end of the chain.
+     */
+    public static Graph chain(TMS tms, int size) {
+        ArrayList<String> names = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            primitive(tms, names, i, i == 0 ? "," : name(i - 1));
+        }
+        return new Graph(names, names.get(size - 1));
+    }
+
+    /**
+     * Creates one root primitive task and size - 1 primitive tasks that all depend on it.
+     *
+     * @param tms  The TMS the tasks are created in.
+     * @param size The number of primitive tasks.
+     * @return The created graph, whose top is the last dependent of the root.
+     */
+    public static Graph fanOut(TMS tms, int size) {
+        ArrayList<String> names = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            primitive(tms, names, i, i == 0 ? "," : name(0));
+        }
+        return new Graph(names, names.get(size - 1));
+    }
+
+    /**
+     * Creates composite tasks nested size / width deep. Every level holds width new primitive tasks,
+     * each depending on the first primitive task of the level below, and the composite task of the level below.
+     *
+     * @param tms   The TMS the tasks are created in.
+     * @param size  The number of primitive tasks.
+     * @param width The number of primitive tasks of each level.
+     * @return The created graph, whose top is the outermost composite task.
+     */
+    public static Graph deepComposite(TMS tms, int size, int width) {
+        ArrayList<String> names = new ArrayList<>(size);
+        String inner = null;
+        for(int level = 0; level * width < size; level++) {
+            StringBuilder subtask = new StringBuilder(inner == null ? "" : inner);
+            for(int i = level * width; i < Math.min(size, (level + 1) * width); i++) {
+                primitive(tms, names, i, level == 0 ? "," : name((level - 1) * width));
+                subtask.append(subtask.length() == 0 ? "" : ",").append(name(i));
+            }
+            inner = "c" + Integer.toString(level, 36);
+            tms.createCompositeTask(inner, "level-" + level, subtask.toString(), false, false);
+        }
+        return new Graph(names, inner);
+    }
+
+    /**
+     * Creates layers of two primitive tasks, each depending on both tasks of the layer below,
+     * so that the number of paths through the graph doubles with every layer.
+     *
+     * @param tms  The TMS the tasks are created in.
+     * @param size The number of primitive tasks, rounded down to an even number of at least two.
+     * @return The created graph, whose top is the second task of the last layer.
+     */
+    public static Graph diamond(TMS tms, int size) {
+        ArrayList<String> names = new ArrayList<>(size);
+        for(int layer = 0; layer < Math.max(1, size / 2); layer++) {
+            String prerequisite = layer == 0 ? "," : name(2 * layer - 2) + "," + name(2 * layer - 1);
+            primitive(tms, names, 2 * layer, prerequisite);
+            primitive(tms, names, 2 * layer + 1, prerequisite);
+        }
+        return new Graph(names, names.get(names.size() - 1));
+    }
+
+    /**
+     * Returns the name generated tasks are given.
+     *
+     * @param i The number of the task.
+     * @return The task name.
+     */
+    public static String name(int i) {
+        return "g" + Integer.toString(i, 36);
+    }
+
+    private static void primitive(TMS tms, List<String> names, int i, String prerequisite) {
+        tms.createPrimitiveTask(name(i), "task-" + i, Integer.toString(1 + i % 7), prerequisite, false, false);
+        names.add(name(i));
+    }
+}
@@ -0,0 +1,70 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.util.ArrayDeque;
+
+/**
+ * The CommandHistory class is a bounded stack of HistoryEntry objects backed by an unsynchronized ArrayDeque.
+ * When the stack is full, pushing an entry drops the oldest one, so the history of a long session
+ * stays within its limit.
+ */
+class CommandHistory {
+    private final ArrayDeque<HistoryEntry> entries = new ArrayDeque<>();
+    private int limit;
+
+    /**
+     * Constructs an empty history.
+     *
+     * @param limit The maximum number of entries kept, at least 1.
+     */
+    CommandHistory(int limit) {
+        setLimit(limit);
+    }
+
+    /**
+     * Pushes an entry, dropping the oldest entry if the history is full.
+     *
+     * @param entry The entry to be pushed.
+     */
+    void push(HistoryEntry entry) {
+        if(entries.size() == limit) {
+            entries.removeLast();
+        }
+        entries.push(entry);
+    }
+
+    /**
+     * Removes and returns the most recent entry.
+     *
+     * @return The most recent entry, or null if the history is empty.
+     */
+    HistoryEntry pop() {
+        return entries.poll();
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Changes the maximum number of entries kept, dropping the oldest entries beyond it.
+     *
+     * @param limit The maximum number of entries kept, at least 1.
+     */
+    void setLimit(int limit) {
+        if(limit < 1) {
+            throw new IllegalArgumentException("history limit must be at least 1: " + limit);
+        }
+        this.limit = limit;
+        while(entries.size() > limit) {
+            entries.removeLast();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The ConcurrentTMS class shares one Task Management System (TMS) between several threads.
+ * <p>
+ * Queries hold a shared read lock, so any number of them run in parallel, and each one sees the tasks and criteria
+ * as they were between two changes. Changes hold the exclusive write lock, so they run one at a time and never
+ * while a query is running. The lock is fair, so it is granted in arrival order: a steady stream of queries
+ * does not starve the writers, at some cost in query throughput.
+ * <p>
+ * The caches filled by queries, the earliest finish times and the compiled criteria, are concurrent maps,
+ * and a lazily loaded snapshot is read completely after every change, so a query never changes the task maps.
+ * Printed output still goes to the output sink and to System.out, a whole block at a time.
+ * <p>
+ * Every change also publishes a new TaskVersion. getVersion returns the latest one without taking any lock,
+ * so a long search or report can run over a stable version while changes go on.
+ */
+public final class ConcurrentTMS {
+    private final TMS tms;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+
+    /**
+     * Constructs a new ConcurrentTMS sharing the given TMS.
+     * The TMS must not be used directly afterwards.
+     *
+     * @param tms The TMS to be shared.
+     */
+    public ConcurrentTMS(TMS tms) {
+        this.tms = tms;
+        write(TMS::materializeAll);
+    }
+
+    /**
+     * Runs a query under the read lock. The query must not change the TMS.
+     *
+     * @param query The query.
+     * @param <T>   The type of the result.
+     * @return The result of the query.
+     */
+    public <T> T read(Function<TMS, T> query) {
+        ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return query.apply(tms);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Runs a change under the write lock.
+     *
+     * @param change The change.
+     */
+    public void write(Consumer<TMS> change) {
+        ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            change.accept(tms);
+            // a Load may have mapped a snapshot lazily, which queries would read into the task maps
+            tms.materializeAll();
+            tms.publish();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the version published by the latest change, without taking a lock.
+     *
+     * @return The latest version.
+     */
+    public TaskVersion getVersion() {
+        return tms.publishedVersion();
+    }
+
+    /**
+     * Returns a task under the read lock, as TMS.getTask does.
+     *
+     * @param name The name of the task.
+     * @return The task, or null if it does not exist.
+     */
+    public Task getTask(String name) {
+        return read(tms -> tms.getTask(name));
+    }
+
+    /**
+     * Returns the names of the tasks that meet a criterion under the read lock, as TMS.searchTasks does.
+     *
+     * @param criterionName The name of the criterion.
+     * @return The names of the tasks, or null if the criterion does not exist or cannot be evaluated.
+     */
+    public List<String> searchTasks(String criterionName) {
+        return read(tms -> tms.searchTasks(criterionName));
+    }
+
+    /**
+     * Returns the duration of a task under the read lock, as TMS.getDuration does.
+     *
+     * @param name The name of the task.
+     * @return The duration, or 0 if the task does not exist.
+     */
+    public double getDuration(String name) {
+        return read(tms -> tms.getDuration(name));
+    }
+
+    /**
+     * Returns the earliest finish time of a task under the read lock, as TMS.getEarliestFinishTime does.
+     *
+     * @param name The name of the task.
+     * @return The earliest finish time, or -1 if the task does not exist.
+     */
+    public double getEarliestFinishTime(String name) {
+        return read(tms -> tms.getEarliestFinishTime(name));
+    }
+}
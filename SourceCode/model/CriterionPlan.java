@@ -0,0 +1,464 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The CriterionPlan class is the compiled form of a Criterion in the Task Management System (TMS).
+ * A criterion tree is compiled once into a tree of predicates, with duration thresholds already parsed
+ * and value lists already split, so that a search only has to test each task once.
+ * <p>
+ * A plan answers the same questions as the original search:
+ * - "IsPrimitive" and "IsCompos" match every primitive or composite task respectively.
+ * - "name" and "description" criteria match primitive and composite tasks.
+ * - "prerequisites" criteria match primitive tasks having any of the listed prerequisites.
+ * - "duration" criteria match primitive tasks.
+ * - "subtasks" criteria match composite tasks having the first of the listed subtasks, as the original search
+ *   stops at the first listed subtask.
+ * - A negated criterion matches the primitive tasks its sub-criterion does not match.
+ * - A binary criterion combines its two sub-criteria with "&amp;&amp;" or "||".
+ * <p>
+ * A plan is evaluated over the dense task ids of TaskIds into a BitSet.
+ * Only the basic criteria look at individual tasks, and "name" and "description" criteria only look at
+ * the candidates of the trigram indexes when those are enabled; negation, "&amp;&amp;" and "||" are
+ * word-parallel operations on the bitsets of their sub-criteria.
+ * <p>
+ * A scan of a large set of tasks is split into segments of the id range and run on the fork-join pool
+ * of the SearchIndexes. Each segment fills in its own words of the result, so the result is the same
+ * bitset as a sequential scan would give, whatever the order the segments finish in.
+ */
+abstract class CriterionPlan {
+    /** The number of task ids below which a scan always runs on the calling thread. */
+    static final int PARALLEL_SCAN_THRESHOLD = 1 << 15;
+    // the number of ids tested by one fork-join task, a multiple of 64
+    private static final int SCAN_SEGMENT_SIZE = 1 << 12;
+
+    /**
+     * A plan that matches no task.
+     */
+    static final CriterionPlan NONE = new CriterionPlan() {
+        @Override
+        boolean matches(String name, PrimitiveTask task) { return false; }
+        @Override
+        boolean matches(String name, CompositeTask task) { return false; }
+        @Override
+        BitSet evaluate(SearchIndexes indexes) { return new BitSet(); }
+    };
+
+    /**
+     * Tests a primitive task against this plan.
+     *
+     * @param name The name of the task.
+     * @param task The task to be tested.
+     * @return true if the task meets the criterion, false otherwise.
+     */
+    abstract boolean matches(String name, PrimitiveTask task);
+
+    /**
+     * Tests a composite task against this plan.
+     *
+     * @param name The name of the task.
+     * @param task The task to be tested.
+     * @return true if the task meets the criterion, false otherwise.
+     */
+    abstract boolean matches(String name, CompositeTask task);
+
+    /**
+     * Computes the ids of all tasks that meet this plan.
+     *
+     * @param indexes The indexes of the tasks to be searched.
+     * @return A new bitset of the ids of the matching tasks.
+     */
+    BitSet evaluate(SearchIndexes indexes) {
+        BitSet result = scanPrimitiveTasks(indexes);
+        result.or(scanCompositeTasks(indexes));
+        return result;
+    }
+
+    /**
+     * Tests every primitive task against this plan.
+     *
+     * @param indexes The indexes of the tasks to be searched.
+     * @return A new bitset of the ids of the matching primitive tasks.
+     */
+    final BitSet scanPrimitiveTasks(SearchIndexes indexes) {
+        return scan(indexes, indexes.getIds().primitiveIds(), true);
+    }
+
+    /**
+     * Tests every composite task against this plan.
+     *
+     * @param indexes The indexes of the tasks to be searched.
+     * @return A new bitset of the ids of the matching composite tasks.
+     */
+    final BitSet scanCompositeTasks(SearchIndexes indexes) {
+        return scan(indexes, indexes.getIds().compositeIds(), false);
+    }
+
+    // below the threshold, or without a pool, the candidates are tested on the calling thread;
+    // otherwise the id range is split into segments of whole words, each filled in by one fork-join task
+    private BitSet scan(SearchIndexes indexes, BitSet candidates, boolean primitive) {
+        TaskIds ids = indexes.getIds();
+        long[] words = new long[(ids.limit() + 63) >>> 6];
+        ForkJoinPool pool = indexes.getScanPool();
+        if(pool == null || ids.limit() < PARALLEL_SCAN_THRESHOLD) {
+            count(indexes, "search.scan");
+            scanRange(ids, candidates, primitive, 0, ids.limit(), words);
+        } else {
+            count(indexes, "search.scan.parallel");
+            pool.invoke(new Scan(this, ids, candidates, primitive, 0, ids.limit(), words));
+        }
+        return BitSet.valueOf(words);
+    }
+
+    private static void count(SearchIndexes indexes, String counter) {
+        Metrics metrics = indexes.getMetrics();
+        if(metrics != null) {
+            metrics.increment(counter);
+        }
+    }
+
+    // tests the candidates with ids from inclusive to exclusive and sets the bits of the matches in words
+    private void scanRange(TaskIds ids, BitSet candidates, boolean primitive, int from, int to, long[] words) {
+        for(int id = candidates.nextSetBit(from); id >= 0 && id < to; id = candidates.nextSetBit(id + 1)) {
+            boolean match = primitive ? matches(ids.nameOf(id), (PrimitiveTask) ids.taskOf(id))
+                    : matches(ids.nameOf(id), (CompositeTask) ids.taskOf(id));
+            if(match) {
+                words[id >>> 6] |= 1L << id;
+            }
+        }
+    }
+
+    // one segment of a parallel scan; segments start on word boundaries, so no two of them write the same word
+    private static final class Scan extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CriterionPlan plan;
+        private final TaskIds ids;
+        private final BitSet candidates;
+        private final boolean primitive;
+        private final int from;
+        private final int to;
+        private final long[] words;
+
+        Scan(CriterionPlan plan, TaskIds ids, BitSet candidates, boolean primitive, int from, int to, long[] words) {
+            this.plan = plan;
+            this.ids = ids;
+            this.candidates = candidates;
+            this.primitive = primitive;
+            this.from = from;
+            this.to = to;
+            this.words = words;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= SCAN_SEGMENT_SIZE) {
+                plan.scanRange(ids, candidates, primitive, from, to, words);
+                return;
+            }
+            int middle = ((from + to) >>> 1) & ~63;
+            invokeAll(new Scan(plan, ids, candidates, primitive, from, middle, words),
+                    new Scan(plan, ids, candidates, primitive, middle, to, words));
+        }
+    }
+
+    /**
+     * Compiles the criterion with the given name, together with all of its sub-criteria.
+     * If a sub-criterion does not exist or a binary criterion uses an unknown logic operator,
+     * an error message is added to the problems and null is returned.
+     *
+     * @param name      The name of the criterion to be compiled.
+     * @param criterion A map with criterion names as keys and Criterion objects as values.
+     * @param problems  The list the error messages are added to.
+     * @return The compiled plan, or null if the criterion cannot be compiled.
+     */
+    static CriterionPlan compile(String name, Map<String, Criterion> criterion, List<String> problems) {
+        Criterion cur = criterion.get(name);
+        if(cur == null) {
+            problems.add(name + " does not exist.");
+            return null;
+        }
+        if(cur.getName().equals("IsPrimitive")) {
+            return new IsPrimitive();
+        }
+        if(cur.getName().equals("IsCompos")) {
+            return new IsComposite();
+        }
+        String[] subCriterion = cur.getSubCriterion();
+        if(cur.getIsNegated()) {
+            CriterionPlan inner = compile(subCriterion[0], criterion, problems);
+            return inner == null ? null : new Not(inner);
+        }
+        // criteria read back by Load carry no sub-criteria and are evaluated from their property alone
+        if(cur.getIsBasic() || subCriterion == null || subCriterion[0] == null) {
+            return compileBasic(cur.getProperty(), cur.getOp(), cur.getValue());
+        }
+        CriterionPlan left = compile(subCriterion[0], criterion, problems);
+        CriterionPlan right = compile(subCriterion[1], criterion, problems);
+        if(left == null || right == null) {
+            return null;
+        }
+        switch (subCriterion[2]) {
+            case "&&" -> { return new And(left, right); }
+            case "||" -> { return new Or(left, right); }
+            default -> {
+                problems.add(subCriterion[2] + " is not a valid op.");
+                return null;
+            }
+        }
+    }
+
+    private static CriterionPlan compileBasic(String property, String op, String value) {
+        if(property == null || op == null || value == null) {
+            return NONE;
+        }
+        op = op.trim();
+        if(op.equals("not-contains")) {
+            return new Not(compileBasic(property, "contains", value));
+        }
+        switch (property) {
+            case "name" -> { return new NameContains(value); }
+            case "description" -> { return new DescriptionContains(value); }
+            case "prerequisites" -> { return new PrerequisitesContain(value.split(",")); }
+            case "subtasks" -> { return new SubtasksContain(value.split(",")[0]); }
+            case "duration" -> {
+                try {
+                    return new DurationCompare(op, Double.parseDouble(value));
+                } catch (NumberFormatException e) {
+                    return NONE;
+                }
+            }
+            default -> { return NONE; }
+        }
+    }
+
+    private static final class IsPrimitive extends CriterionPlan {
+        @Override
+        boolean matches(String name, PrimitiveTask task) { return true; }
+        @Override
+        boolean matches(String name, CompositeTask task) { return false; }
+        @Override
+        BitSet evaluate(SearchIndexes indexes) { return (BitSet) indexes.getIds().primitiveIds().clone(); }
+    }
+
+    private static final class IsComposite extends CriterionPlan {
+        @Override
+        boolean matches(String name, PrimitiveTask task) { return false; }
+        @Override
+        boolean matches(String name, CompositeTask task) { return true; }
+        @Override
+        BitSet evaluate(SearchIndexes indexes) { return (BitSet) indexes.getIds().compositeIds().clone(); }
+    }
+
+    private static final class NameContains extends CriterionPlan {
+        private final String value;
+
+        NameContains(String value) { this.value = value; }
+
+        @Override
+        boolean matches(String name, PrimitiveTask task) { return name.contains(value); }
+        @Override
+        boolean matches(String name, CompositeTask task) { return name.contains(value); }
+        @Override
+        BitSet evaluate(SearchIndexes indexes) {
+            BitSet candidates = indexes.nameCandidates(value);
+            if(candidates == null) {
+                return super.evaluate(indexes);
+            }
+            count(indexes, "search.substringIndex");
+            TaskIds ids = indexes.getIds();
+            for(int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+                if(!ids.nameOf(id).contains(value)) {
+                    candidates.clear(id);
+                }
+            }
+            return candidates;
+        }
+    }
+
+    private static final class DescriptionContains extends CriterionPlan {
+        private final String value;
+
+        DescriptionContains(String value) { this.value = value; }
+
+        @Override
+        boolean matches(String name, PrimitiveTask task) { return task.getDescription().contains(value); }
+        @Override
+        boolean matches(String name, CompositeTask task) { return task.getDescription().contains(value); }
+        @Override
+        BitSet evaluate(SearchIndexes indexes) {
+            BitSet candidates = indexes.descriptionCandidates(value);
+            if(candidates == null) {
+                return super.evaluate(indexes);
+            }
+            count(indexes, "search.substringIndex");
+            TaskIds ids = indexes.getIds();
+            for(int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+                if(!ids.taskOf(id).getDescription().contains(value)) {
+                    candidates.clear(id);
+                }
+            }
+            return candidates;
+        }
+    }
+
+    private static final class PrerequisitesContain extends CriterionPlan {
+        private final String[] values;
+
+        PrerequisitesContain(String[] values) { this.values = values; }
+
+        @Override
+        boolean matches(String name, PrimitiveTask task) {
+            if(task.getPrerequisite() == null) {
+                return false;
+            }
+            for(String prerequisite : task.getPrerequisite()) {
+                for(String value : values) {
+                    if(value.equals(prerequisite)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        @Override
+        boolean matches(String name, CompositeTask task) { return false; }
+        @Override
+        BitSet evaluate(SearchIndexes indexes) { return scanPrimitiveTasks(indexes); }
+    }
+
+    private static final class SubtasksContain extends CriterionPlan {
+        private final String value;
+
+        SubtasksContain(String value) { this.value = value; }
+
+        @Override
+        boolean matches(String name, PrimitiveTask task) { return false; }
+        @Override
+        boolean matches(String name, CompositeTask task) {
+            if(task.getSubtask() == null) {
+                return false;
+            }
+            for(String subtask : task.getSubtask()) {
+                if(value.equals(subtask)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        @Override
+        BitSet evaluate(SearchIndexes indexes) { return scanCompositeTasks(indexes); }
+    }
+
+    private static final class DurationCompare extends CriterionPlan {
+        private static final int GREATER = 0;
+        private static final int LESS = 1;
+        private static final int GREATER_OR_EQUAL = 2;
+        private static final int LESS_OR_EQUAL = 3;
+        private static final int NOT_EQUAL = 4;
+        private static final int EQUAL = 5;
+        private final String symbol;
+        private final int op;
+        private final double threshold;
+
+        DurationCompare(String op, double threshold) {
+            this.symbol = op;
+            switch (op) {
+                case ">" -> this.op = GREATER;
+                case "<" -> this.op = LESS;
+                case ">=" -> this.op = GREATER_OR_EQUAL;
+                case "<=" -> this.op = LESS_OR_EQUAL;
+                case "!=" -> this.op = NOT_EQUAL;
+                case "==" -> this.op = EQUAL;
+                default -> this.op = -1;
+            }
+            this.threshold = threshold;
+        }
+
+        @Override
+        boolean matches(String name, PrimitiveTask task) {
+            double duration = task.getDuration();
+            switch (op) {
+                case GREATER -> { return duration > threshold; }
+                case LESS -> { return duration < threshold; }
+                case GREATER_OR_EQUAL -> { return duration >= threshold; }
+                case LESS_OR_EQUAL -> { return duration <= threshold; }
+                case NOT_EQUAL -> { return duration != threshold; }
+                case EQUAL -> { return duration == threshold; }
+                default -> { return false; }
+            }
+        }
+        @Override
+        boolean matches(String name, CompositeTask task) { return false; }
+        @Override
+        BitSet evaluate(SearchIndexes indexes) {
+            count(indexes, "search.durationIndex");
+            return indexes.durationRange(symbol, threshold);
+        }
+    }
+
+    private static final class Not extends CriterionPlan {
+        private final CriterionPlan inner;
+
+        Not(CriterionPlan inner) { this.inner = inner; }
+
+        @Override
+        boolean matches(String name, PrimitiveTask task) { return !inner.matches(name, task); }
+        @Override
+        boolean matches(String name, CompositeTask task) { return false; }
+        @Override
+        BitSet evaluate(SearchIndexes indexes) {
+            BitSet result = (BitSet) indexes.getIds().primitiveIds().clone();
+            result.andNot(inner.evaluate(indexes));
+            return result;
+        }
+    }
+
+    private static final class And extends CriterionPlan {
+        private final CriterionPlan left;
+        private final CriterionPlan right;
+
+        And(CriterionPlan left, CriterionPlan right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean matches(String name, PrimitiveTask task) { return left.matches(name, task) && right.matches(name, task); }
+        @Override
+        boolean matches(String name, CompositeTask task) { return left.matches(name, task) && right.matches(name, task); }
+        @Override
+        BitSet evaluate(SearchIndexes indexes) {
+            BitSet result = left.evaluate(indexes);
+            if(!result.isEmpty()) {
+                result.and(right.evaluate(indexes));
+            }
+            return result;
+        }
+    }
+
+    private static final class Or extends CriterionPlan {
+        private final CriterionPlan left;
+        private final CriterionPlan right;
+
+        Or(CriterionPlan left, CriterionPlan right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean matches(String name, PrimitiveTask task) { return left.matches(name, task) || right.matches(name, task); }
+        @Override
+        boolean matches(String name, CompositeTask task) { return left.matches(name, task) || right.matches(name, task); }
+        @Override
+        BitSet evaluate(SearchIndexes indexes) {
+            BitSet result = left.evaluate(indexes);
+            result.or(right.evaluate(indexes));
+            return result;
+        }
+    }
+}
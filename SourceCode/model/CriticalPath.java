@@ -0,0 +1,40 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+/**
+ * The CriticalPath class represents the longest chain of primitive tasks that determines the duration of a task
+ * in the Task Management System (TMS).
+ * The path is listed from the first task to start to the last task to finish.
+ */
+public class CriticalPath {
+    private final double length;
+    private final String[] path;
+
+    /**
+     * Constructs a new CriticalPath with the specified length and tasks.
+     *
+     * @param length The total duration of the tasks on the path.
+     * @param path   An array of names of the primitive tasks on the path, in the order they are executed.
+     */
+    public CriticalPath(double length, String[] path) {
+        this.length = length;
+        this.path = path;
+    }
+
+    /**
+     * Returns the total duration of the tasks on this path.
+     *
+     * @return The length of this path.
+     */
+    public double getLength() {
+        return this.length;
+    }
+
+    /**
+     * Returns the tasks on this path.
+     *
+     * @return An array of names of the primitive tasks on this path, in the order they are executed.
+     */
+    public String[] getPath() {
+        return this.path;
+    }
+}
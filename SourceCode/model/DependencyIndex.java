@@ -0,0 +1,312 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The DependencyIndex class keeps the reverse edges of the task graph in the Task Management System (TMS).
+ * For every task name it records the primitive tasks that list it as a prerequisite (its dependents)
+ * and the composite tasks that list it as a subtask (its parents).
+ * The index mirrors the prerequisite and subtask arrays exactly, so a name may be indexed even if no task
+ * with that name currently exists.
+ * <p>
+ * Most tasks are referred to by one or two others, so the referrers of a name are kept as the String itself
+ * while there is one, as an array in insertion order while there are a few, and only then as a LinkedHashSet.
+ * When edges are recorded, the names in the recorded array are replaced by the String of the task they name,
+ * so a name that is listed by many tasks is held once.
+ */
+class DependencyIndex {
+    // referrers with more than this many are kept in a set, since an array is searched from end to end
+    private static final int SMALL_REFERRERS = 8;
+
+    private final TaskIds ids;
+    // the referrers of a name: a String, a String[] of 2 to SMALL_REFERRERS names, or a Referrers set
+    private final HashMap<String, Object> dependents = new HashMap<>();
+    private final HashMap<String, Object> parents = new HashMap<>();
+    // the number of distinct edges held in the two maps
+    private int edgeCount = 0;
+
+    /**
+     * Constructs a new DependencyIndex.
+     *
+     * @param ids The ids of the tasks, whose names recorded arrays are made to share.
+     */
+    DependencyIndex(TaskIds ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Returns the primitive tasks that list the given task as a prerequisite.
+     *
+     * @param name The name of the task.
+     * @return A read-only set of names of the dependent tasks.
+     */
+    Set<String> getDependents(String name) {
+        return view(dependents.get(name));
+    }
+
+    /**
+     * Returns the composite tasks that list the given task as a subtask.
+     *
+     * @param name The name of the task.
+     * @return A read-only set of names of the parent composite tasks.
+     */
+    Set<String> getParents(String name) {
+        return view(parents.get(name));
+    }
+
+    /**
+     * Returns the number of edges of the graph, counting every distinct prerequisite and subtask link once.
+     *
+     * @return The number of edges.
+     */
+    int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Records the prerequisite edges of a primitive task.
+     * Names in the array that belong to a task are replaced by the name String of that task.
+     *
+     * @param name         The name of the primitive task.
+     * @param prerequisite An array of names of the prerequisite tasks, may be null.
+     */
+    void addPrerequisites(String name, String[] prerequisite) {
+        link(dependents, name, prerequisite);
+    }
+
+    /**
+     * Removes the prerequisite edges of a primitive task.
+     *
+     * @param name         The name of the primitive task.
+     * @param prerequisite An array of names of the prerequisite tasks, may be null.
+     */
+    void removePrerequisites(String name, String[] prerequisite) {
+        unlink(dependents, name, prerequisite);
+    }
+
+    /**
+     * Records the subtask edges of a composite task.
+     * Names in the array that belong to a task are replaced by the name String of that task.
+     *
+     * @param name    The name of the composite task.
+     * @param subtask An array of names of the subtasks, may be null.
+     */
+    void addSubtasks(String name, String[] subtask) {
+        link(parents, name, subtask);
+    }
+
+    /**
+     * Removes the subtask edges of a composite task.
+     *
+     * @param name    The name of the composite task.
+     * @param subtask An array of names of the subtasks, may be null.
+     */
+    void removeSubtasks(String name, String[] subtask) {
+        unlink(parents, name, subtask);
+    }
+
+    /**
+     * Moves the dependents of a task from its old name to its new name.
+     * Called after the prerequisite arrays of the dependents have been rewritten.
+     *
+     * @param oldName The old name of the task.
+     * @param newName The new name of the task.
+     */
+    void renameDependents(String oldName, String newName) {
+        move(dependents, oldName, newName);
+    }
+
+    /**
+     * Moves the parents of a task from its old name to its new name.
+     * Called after the subtask arrays of the parents have been rewritten.
+     *
+     * @param oldName The old name of the task.
+     * @param newName The new name of the task.
+     */
+    void renameParents(String oldName, String newName) {
+        move(parents, oldName, newName);
+    }
+
+    /**
+     * Removes every edge from the index.
+     */
+    void clear() {
+        dependents.clear();
+        parents.clear();
+        edgeCount = 0;
+    }
+
+    private void link(HashMap<String, Object> edges, String from, String[] targets) {
+        if(targets == null) {
+            return;
+        }
+        for(int i = 0; i < targets.length; i++) {
+            int id = ids.idOf(targets[i]);
+            if(id >= 0) {
+                targets[i] = ids.nameOf(id);
+            }
+            if(add(edges, targets[i], from)) {
+                edgeCount++;
+            }
+        }
+    }
+
+    private void unlink(HashMap<String, Object> edges, String from, String[] targets) {
+        if(targets == null) {
+            return;
+        }
+        for(String target : targets) {
+            if(remove(edges, target, from)) {
+                edgeCount--;
+            }
+        }
+    }
+
+    private void move(HashMap<String, Object> edges, String oldName, String newName) {
+        Object referrers = edges.remove(oldName);
+        if(referrers == null) {
+            return;
+        }
+        if(!edges.containsKey(newName)) {
+            edges.put(newName, referrers);
+            return;
+        }
+        for(String referrer : view(referrers)) {
+            // referrers already linked to the new name are merged into one edge
+            if(!add(edges, newName, referrer)) {
+                edgeCount--;
+            }
+        }
+    }
+
+    private static boolean add(HashMap<String, Object> edges, String target, String from) {
+        Object referrers = edges.get(target);
+        if(referrers == null) {
+            edges.put(target, from);
+            return true;
+        }
+        if(referrers instanceof String) {
+            if(referrers.equals(from)) {
+                return false;
+            }
+            edges.put(target, new String[]{(String) referrers, from});
+            return true;
+        }
+        if(referrers instanceof String[]) {
+            String[] array = (String[]) referrers;
+            if(indexOf(array, from) >= 0) {
+                return false;
+            }
+            if(array.length < SMALL_REFERRERS) {
+                String[] grown = Arrays.copyOf(array, array.length + 1);
+                grown[array.length] = from;
+                edges.put(target, grown);
+            } else {
+                Referrers set = new Referrers(array);
+                set.add(from);
+                edges.put(target, set);
+            }
+            return true;
+        }
+        return ((Referrers) referrers).add(from);
+    }
+
+    private static boolean remove(HashMap<String, Object> edges, String target, String from) {
+        Object referrers = edges.get(target);
+        if(referrers == null) {
+            return false;
+        }
+        if(referrers instanceof String) {
+            if(!referrers.equals(from)) {
+                return false;
+            }
+            edges.remove(target);
+            return true;
+        }
+        if(referrers instanceof String[]) {
+            String[] array = (String[]) referrers;
+            int index = indexOf(array, from);
+            if(index < 0) {
+                return false;
+            }
+            if(array.length == 2) {
+                edges.put(target, array[1 - index]);
+            } else {
+                String[] shrunk = new String[array.length - 1];
+                System.arraycopy(array, 0, shrunk, 0, index);
+                System.arraycopy(array, index + 1, shrunk, index, shrunk.length - index);
+                edges.put(target, shrunk);
+            }
+            return true;
+        }
+        Referrers set = (Referrers) referrers;
+        if(!set.remove(from)) {
+            return false;
+        }
+        if(set.isEmpty()) {
+            edges.remove(target);
+        }
+        return true;
+    }
+
+    private static int indexOf(String[] array, String name) {
+        for(int i = 0; i < array.length; i++) {
+            if(array[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Set<String> view(Object referrers) {
+        if(referrers == null) {
+            return Collections.emptySet();
+        }
+        if(referrers instanceof String) {
+            return Collections.singleton((String) referrers);
+        }
+        if(referrers instanceof String[]) {
+            return new ArrayView((String[]) referrers);
+        }
+        return Collections.unmodifiableSet((Referrers) referrers);
+    }
+
+    // the referrers of a name once there are more than SMALL_REFERRERS
+    private static final class Referrers extends LinkedHashSet<String> {
+        private static final long serialVersionUID = 1L;
+
+        Referrers(String[] referrers) {
+            super(Arrays.asList(referrers));
+        }
+    }
+
+    // a read-only set over an array of referrers; arrays are replaced rather than changed, so the view never changes
+    private static final class ArrayView extends AbstractSet<String> {
+        private final String[] referrers;
+
+        ArrayView(String[] referrers) {
+            this.referrers = referrers;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return Collections.unmodifiableList(Arrays.asList(referrers)).iterator();
+        }
+
+        @Override
+        public int size() {
+            return referrers.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String && indexOf(referrers, (String) o) >= 0;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * The DurationIndex class keeps the ids of the primitive tasks ordered by duration.
+ * Entries are (duration, id) pairs sorted by duration and then by id, stored in blocks of primitive arrays
+ * so that an insert or a removal only shifts one block.
+ * A range criterion such as "duration &gt; 4" is answered by a binary search for the bounds of the range
+ * followed by a walk over the contiguous entries in between.
+ * Tasks whose duration is NaN sort after every other task and never satisfy a comparison other than "!=".
+ */
+class DurationIndex {
+    private static final int BLOCK = 512;
+    private final ArrayList<Block> blocks = new ArrayList<>();
+    private int size = 0;
+
+    /**
+     * Adds a task to the index.
+     *
+     * @param id       The id of the primitive task.
+     * @param duration The duration of the task.
+     */
+    void add(int id, double duration) {
+        duration = normalize(duration);
+        if(blocks.isEmpty()) {
+            blocks.add(new Block());
+        }
+        int b = blockFor(duration, id);
+        Block block = blocks.get(b);
+        block.insert(block.position(duration, id), duration, id);
+        if(block.size == 2 * BLOCK) {
+            blocks.add(b + 1, block.split());
+        }
+        size++;
+    }
+
+    /**
+     * Removes a task from the index.
+     * The duration must be the one the task was added with.
+     *
+     * @param id       The id of the primitive task.
+     * @param duration The duration the task was added with.
+     */
+    void remove(int id, double duration) {
+        duration = normalize(duration);
+        if(blocks.isEmpty()) {
+            return;
+        }
+        int b = blockFor(duration, id);
+        Block block = blocks.get(b);
+        int position = block.position(duration, id);
+        if(position >= block.size || block.ids[position] != id || Double.compare(block.durations[position], duration) != 0) {
+            return;
+        }
+        block.delete(position);
+        if(block.size == 0) {
+            blocks.remove(b);
+        }
+        size--;
+    }
+
+    /**
+     * Returns the number of tasks in the index.
+     *
+     * @return The number of indexed tasks.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the ids of the tasks whose duration compares with the threshold as the operator demands.
+     *
+     * @param op        One of "&lt;", "&gt;", "&lt;=", "&gt;=", "==" or "!=".
+     * @param threshold The value the durations are compared with.
+     * @param all       The ids of all primitive tasks, used to answer "!=".
+     * @return A new bitset of the ids of the matching tasks.
+     */
+    BitSet range(String op, double threshold, BitSet all) {
+        BitSet result = new BitSet();
+        if(Double.isNaN(threshold)) {
+            if(op.equals("!=")) {
+                result.or(all);
+            }
+            return result;
+        }
+        threshold = normalize(threshold);
+        long lower = bound(threshold, false);
+        long upper = bound(threshold, true);
+        long end = bound(Double.NaN, false);
+        long start = 0;
+        switch (op) {
+            case ">" -> collect(upper, end, result);
+            case "<" -> collect(start, lower, result);
+            case ">=" -> collect(lower, end, result);
+            case "<=" -> collect(start, upper, result);
+            case "==" -> collect(lower, upper, result);
+            case "!=" -> {
+                collect(lower, upper, result);
+                BitSet others = (BitSet) all.clone();
+                others.andNot(result);
+                return others;
+            }
+            default -> { }
+        }
+        return result;
+    }
+
+    /**
+     * Removes every task from the index.
+     */
+    void clear() {
+        blocks.clear();
+        size = 0;
+    }
+
+    // -0.0 and 0.0 compare equal with ==, so they are stored as the same key
+    private static double normalize(double duration) {
+        return duration + 0.0;
+    }
+
+    // the block an entry belongs in: the first block whose last entry is not smaller, or the last block
+    private int blockFor(double duration, int id) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            Block block = blocks.get(middle);
+            if(compare(block.durations[block.size - 1], block.ids[block.size - 1], duration, id) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // the position (block << 32 | offset) of the first entry whose duration is >= value, or > value if strict
+    private long bound(double value, boolean strict) {
+        int low = 0;
+        int high = blocks.size();
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            Block block = blocks.get(middle);
+            if(before(block.durations[block.size - 1], value, strict)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if(low == blocks.size()) {
+            return (long) low << 32;
+        }
+        Block block = blocks.get(low);
+        int from = 0;
+        int to = block.size;
+        while(from < to) {
+            int middle = (from + to) >>> 1;
+            if(before(block.durations[middle], value, strict)) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return ((long) low << 32) | from;
+    }
+
+    private static boolean before(double duration, double value, boolean strict) {
+        int order = Double.compare(duration, value);
+        return strict ? order <= 0 : order < 0;
+    }
+
+    private void collect(long from, long to, BitSet result) {
+        int block = (int) (from >>> 32);
+        int offset = (int) from;
+        int lastBlock = (int) (to >>> 32);
+        int lastOffset = (int) to;
+        while(block < lastBlock || (block == lastBlock && offset < lastOffset)) {
+            Block current = blocks.get(block);
+            int stop = block == lastBlock ? lastOffset : current.size;
+            for(int i = offset; i < stop; i++) {
+                result.set(current.ids[i]);
+            }
+            block++;
+            offset = 0;
+        }
+    }
+
+    private static int compare(double leftDuration, int leftId, double rightDuration, int rightId) {
+        int order = Double.compare(leftDuration, rightDuration);
+        return order != 0 ? order : Integer.compare(leftId, rightId);
+    }
+
+    /**
+     * A sorted run of (duration, id) entries.
+     */
+    private static final class Block {
+        private double[] durations = new double[2 * BLOCK];
+        private int[] ids = new int[2 * BLOCK];
+        private int size = 0;
+
+        // the position of the first entry that is not smaller than (duration, id)
+        int position(double duration, int id) {
+            int low = 0;
+            int high = size;
+            while(low < high) {
+                int middle = (low + high) >>> 1;
+                if(compare(durations[middle], ids[middle], duration, id) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        void insert(int position, double duration, int id) {
+            System.arraycopy(durations, position, durations, position + 1, size - position);
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            durations[position] = duration;
+            ids[position] = id;
+            size++;
+        }
+
+        void delete(int position) {
+            System.arraycopy(durations, position + 1, durations, position, size - position - 1);
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+        }
+
+        Block split() {
+            Block upper = new Block();
+            upper.size = size - BLOCK;
+            System.arraycopy(durations, BLOCK, upper.durations, 0, upper.size);
+            System.arraycopy(ids, BLOCK, upper.ids, 0, upper.size);
+            size = BLOCK;
+            return upper;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.util.Arrays;
+
+/**
+ * The HeapTaskGraphStore class keeps the records of a TaskGraph in arrays on the Java heap, one int array per row.
+ * It is the default store.
+ */
+class HeapTaskGraphStore implements TaskGraphStore {
+    private int[][] rows = new int[16][];
+    private double[] durations = new double[16];
+    private double[] finishTimes = new double[16];
+    private int[] stamps = new int[16];
+
+    /**
+     * Constructs a new HeapTaskGraphStore with room for a few ids.
+     */
+    HeapTaskGraphStore() {
+        Arrays.fill(finishTimes, Double.NaN);
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        if(capacity <= rows.length) {
+            return;
+        }
+        int length = Math.max(capacity, rows.length * 2);
+        int old = rows.length;
+        rows = Arrays.copyOf(rows, length);
+        durations = Arrays.copyOf(durations, length);
+        finishTimes = Arrays.copyOf(finishTimes, length);
+        Arrays.fill(finishTimes, old, length, Double.NaN);
+        stamps = Arrays.copyOf(stamps, length);
+    }
+
+    @Override
+    public int capacity() {
+        return rows.length;
+    }
+
+    @Override
+    public int dependencyCount(int id) {
+        int[] row = rows[id];
+        return row == null ? -1 : row.length;
+    }
+
+    @Override
+    public int dependency(int id, int index) {
+        return rows[id][index];
+    }
+
+    @Override
+    public void setDependencies(int id, int[] row) {
+        rows[id] = row;
+    }
+
+    @Override
+    public double duration(int id) {
+        return durations[id];
+    }
+
+    @Override
+    public void setDuration(int id, double duration) {
+        durations[id] = duration;
+    }
+
+    @Override
+    public double finishTime(int id) {
+        return finishTimes[id];
+    }
+
+    @Override
+    public void setFinishTime(int id, double finishTime) {
+        finishTimes[id] = finishTime;
+    }
+
+    @Override
+    public void clearFinishTimes() {
+        Arrays.fill(finishTimes, Double.NaN);
+    }
+
+    @Override
+    public int stamp(int id) {
+        return stamps[id];
+    }
+
+    @Override
+    public void setStamp(int id, int stamp) {
+        stamps[id] = stamp;
+    }
+}
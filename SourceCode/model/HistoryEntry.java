@@ -0,0 +1,234 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+/**
+ * The HistoryEntry class is one entry of the undo or redo history of the Task Management System (TMS).
+ * An entry holds the command that reverses a change, with its arguments kept as fields,
+ * so recording a change does not build a command string and replaying it does not parse one.
+ * Each kind of command is a subclass created through a static factory method.
+ */
+abstract class HistoryEntry {
+    /**
+     * Runs the command.
+     *
+     * @param tms  The system the command is run on.
+     * @param undo true if the command is run by undo, false if it is run by redo.
+     */
+    abstract void apply(TMS tms, boolean undo);
+
+    static HistoryEntry createPrimitiveTask(String name, String description, double duration, String prerequisite) {
+        return new CreatePrimitiveTask(name, description, duration, prerequisite);
+    }
+
+    static HistoryEntry createCompositeTask(String name, String description, String subtask) {
+        return new CreateCompositeTask(name, description, subtask);
+    }
+
+    static HistoryEntry deleteTask(String name) {
+        return new DeleteTask(name);
+    }
+
+    static HistoryEntry changeTask(String name, String property, String value) {
+        return new ChangeTask(name, property, value);
+    }
+
+    static HistoryEntry changeDuration(String name, double duration) {
+        return new ChangeDuration(name, duration);
+    }
+
+    static HistoryEntry defineBasicCriterion(String name, String property, String op, String value) {
+        return new DefineBasicCriterion(name, property, op, value);
+    }
+
+    static HistoryEntry defineNegatedCriterion(String name, String criterion) {
+        return new DefineNegatedCriterion(name, criterion);
+    }
+
+    static HistoryEntry defineBinaryCriterion(String name, String left, String op, String right) {
+        return new DefineBinaryCriterion(name, left, op, right);
+    }
+
+    static HistoryEntry deleteCriterion(String name) {
+        return new DeleteCriterion(name);
+    }
+
+    static HistoryEntry importBatch(TaskBatch batch) {
+        return new ImportBatch(batch);
+    }
+
+    static HistoryEntry removeBatch(TaskBatch batch) {
+        return new RemoveBatch(batch);
+    }
+
+    private static final class CreatePrimitiveTask extends HistoryEntry {
+        private final String name;
+        private final String description;
+        private final double duration;
+        private final String prerequisite;
+
+        CreatePrimitiveTask(String name, String description, double duration, String prerequisite) {
+            this.name = name;
+            this.description = description;
+            this.duration = duration;
+            this.prerequisite = prerequisite;
+        }
+
+        @Override
+        void apply(TMS tms, boolean undo) {
+            tms.createPrimitiveTask(name, description, Double.toString(duration), prerequisite, true, undo);
+        }
+    }
+
+    private static final class CreateCompositeTask extends HistoryEntry {
+        private final String name;
+        private final String description;
+        private final String subtask;
+
+        CreateCompositeTask(String name, String description, String subtask) {
+            this.name = name;
+            this.description = description;
+            this.subtask = subtask;
+        }
+
+        @Override
+        void apply(TMS tms, boolean undo) {
+            tms.createCompositeTask(name, description, subtask, true, undo);
+        }
+    }
+
+    private static final class DeleteTask extends HistoryEntry {
+        private final String name;
+
+        DeleteTask(String name) {
+            this.name = name;
+        }
+
+        @Override
+        void apply(TMS tms, boolean undo) {
+            tms.deleteTask(name, true, undo);
+        }
+    }
+
+    private static final class ChangeTask extends HistoryEntry {
+        private final String name;
+        private final String property;
+        private final String value;
+
+        ChangeTask(String name, String property, String value) {
+            this.name = name;
+            this.property = property;
+            this.value = value;
+        }
+
+        @Override
+        void apply(TMS tms, boolean undo) {
+            tms.changeTask(name, property, value, true, undo);
+        }
+    }
+
+    private static final class ChangeDuration extends HistoryEntry {
+        private final String name;
+        private final double duration;
+
+        ChangeDuration(String name, double duration) {
+            this.name = name;
+            this.duration = duration;
+        }
+
+        @Override
+        void apply(TMS tms, boolean undo) {
+            tms.changeTask(name, "duration", Double.toString(duration), true, undo);
+        }
+    }
+
+    private static final class DefineBasicCriterion extends HistoryEntry {
+        private final String name;
+        private final String property;
+        private final String op;
+        private final String value;
+
+        DefineBasicCriterion(String name, String property, String op, String value) {
+            this.name = name;
+            this.property = property;
+            this.op = op;
+            this.value = value;
+        }
+
+        @Override
+        void apply(TMS tms, boolean undo) {
+            tms.defineBasicCriterion(name, property, op, value, true, undo);
+        }
+    }
+
+    private static final class DefineNegatedCriterion extends HistoryEntry {
+        private final String name;
+        private final String criterion;
+
+        DefineNegatedCriterion(String name, String criterion) {
+            this.name = name;
+            this.criterion = criterion;
+        }
+
+        @Override
+        void apply(TMS tms, boolean undo) {
+            tms.defineNegatedCriterion(name, criterion, true, undo);
+        }
+    }
+
+    private static final class DefineBinaryCriterion extends HistoryEntry {
+        private final String name;
+        private final String left;
+        private final String op;
+        private final String right;
+
+        DefineBinaryCriterion(String name, String left, String op, String right) {
+            this.name = name;
+            this.left = left;
+            this.op = op;
+            this.right = right;
+        }
+
+        @Override
+        void apply(TMS tms, boolean undo) {
+            tms.defineBinaryCriterion(name, left, op, right, true, undo);
+        }
+    }
+
+    private static final class DeleteCriterion extends HistoryEntry {
+        private final String name;
+
+        DeleteCriterion(String name) {
+            this.name = name;
+        }
+
+        @Override
+        void apply(TMS tms, boolean undo) {
+            tms.deleteCriterion(name, true);
+        }
+    }
+
+    private static final class ImportBatch extends HistoryEntry {
+        private final TaskBatch batch;
+
+        ImportBatch(TaskBatch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        void apply(TMS tms, boolean undo) {
+            tms.importBatch(batch, true, undo);
+        }
+    }
+
+    private static final class RemoveBatch extends HistoryEntry {
+        private final TaskBatch batch;
+
+        RemoveBatch(TaskBatch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        void apply(TMS tms, boolean undo) {
+            tms.removeBatch(batch, true, undo);
+        }
+    }
+}
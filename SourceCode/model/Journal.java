@@ -0,0 +1,355 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * The Journal class is an append-only write-ahead log of the changes made to the Task Management System (TMS).
+ * <p>
+ * A journal directory holds at most one snapshot and one log of the same generation:
+ * "snapshot-N.tmsb" is a binary snapshot written by TaskSnapshot, and "journal-N.log" holds every change
+ * made after that snapshot. Generation 0 has no snapshot. Recovery loads the snapshot of the highest
+ * generation and replays its log.
+ * <p>
+ * Every record is framed by its length and a CRC32 of its contents, so a record torn by a crash is detected
+ * and cut off during recovery. Appends are written at once but only forced to disk in groups: when a number
+ * of records is pending, when enough time has passed since the last sync, or when the journal is synced or closed.
+ * <p>
+ * Compaction writes a snapshot of the next generation, starts an empty log for it and then deletes the files
+ * of the previous generation, so a crash at any point leaves a complete snapshot and log to recover from.
+ */
+final class Journal implements AutoCloseable {
+    static final int CREATE_PRIMITIVE_TASK = 1;
+    static final int CREATE_COMPOSITE_TASK = 2;
+    static final int DELETE_TASK = 3;
+    static final int CHANGE_TASK = 4;
+    static final int DEFINE_BASIC_CRITERION = 5;
+    static final int DEFINE_NEGATED_CRITERION = 6;
+    static final int DEFINE_BINARY_CRITERION = 7;
+    static final int DELETE_CRITERION = 8;
+    static final int IMPORT_BATCH = 9;
+    static final int REMOVE_BATCH = 10;
+    private static final byte[] MAGIC = {'T', 'M', 'S', 'J'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+    private static final int SYNC_RECORDS = 64;
+    private static final long SYNC_MILLIS = 50;
+    private static final long COMPACT_BYTES = 16L << 20;
+
+    private final Path directory;
+    private final ScheduledExecutorService syncer;
+    private long generation;
+    private FileChannel log;
+    private int pending = 0;
+    private long lastSync = System.nanoTime();
+
+    /**
+     * A change read back from the journal.
+     */
+    static final class Record {
+        final int op;
+        final boolean undoRedo;
+        final boolean undo;
+        final String[] args;
+
+        Record(int op, boolean undoRedo, boolean undo, String[] args) {
+            this.op = op;
+            this.undoRedo = undoRedo;
+            this.undo = undo;
+            this.args = args;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the current state to a file.
+     */
+    interface SnapshotWriter {
+        /**
+         * @param path The file to be written.
+         * @throws IOException If the file cannot be written.
+         */
+        void write(Path path) throws IOException;
+    }
+
+    private Journal(Path directory, long generation) {
+        this.directory = directory;
+        this.generation = generation;
+        this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tms-journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the journal in a directory, creating the directory if needed.
+     * The caller must load the snapshot and replay the records before appending.
+     *
+     * @param directory The journal directory.
+     * @return The opened journal.
+     * @throws IOException If the directory cannot be read or created.
+     */
+    static Journal open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        long generation = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "snapshot-*.tmsb")) {
+            for(Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generation = Math.max(generation, Long.parseLong(name.substring("snapshot-".length(), name.length() - ".tmsb".length())));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return new Journal(directory, generation);
+    }
+
+    /**
+     * Returns the snapshot the journal starts from.
+     *
+     * @return The snapshot file, or null if the journal has no snapshot.
+     */
+    Path snapshot() {
+        return generation == 0 ? null : snapshotPath(generation);
+    }
+
+    /**
+     * Reads every intact record of the log, cuts off a torn tail, and makes the log ready for appending.
+     *
+     * @return The records in the order they were appended.
+     * @throws IOException If the log cannot be read or written.
+     */
+    ArrayList<Record> recover() throws IOException {
+        ArrayList<Record> records = new ArrayList<>();
+        log = FileChannel.open(logPath(generation), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = log.size();
+        if(size < HEADER_SIZE) {
+            log.truncate(0);
+            writeHeader(log);
+            return records;
+        }
+        ByteBuffer content = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE));
+        while(content.hasRemaining()) {
+            if(log.read(content, content.position()) < 0) {
+                break;
+            }
+        }
+        content.flip();
+        for(byte b : MAGIC) {
+            if(content.get() != b) {
+                throw new IOException("not a task journal: " + logPath(generation));
+            }
+        }
+        if(content.get() != VERSION) {
+            throw new IOException("unsupported task journal version: " + logPath(generation));
+        }
+        CRC32 crc = new CRC32();
+        while(content.remaining() >= 2 * Integer.BYTES) {
+            int start = content.position();
+            int length = content.getInt();
+            int checksum = content.getInt();
+            if(length < 0 || length > content.remaining()) {
+                content.position(start);
+                break;
+            }
+            crc.reset();
+            crc.update(content.array(), content.position(), length);
+            if((int) crc.getValue() != checksum) {
+                content.position(start);
+                break;
+            }
+            records.add(decode(content.slice(content.position(), length)));
+            content.position(content.position() + length);
+        }
+        log.truncate(content.position());
+        log.position(content.position());
+        return records;
+    }
+
+    /**
+     * Appends a change to the log.
+     * The record is forced to disk together with the other pending records when the group is synced.
+     *
+     * @param op       The kind of change.
+     * @param undoRedo The undoRedo flag the change was made with.
+     * @param undo     The undo flag the change was made with.
+     * @param args     The arguments of the change, each may be null.
+     */
+    synchronized void append(int op, boolean undoRedo, boolean undo, String... args) {
+        int length = 2;
+        byte[][] encoded = new byte[args.length][];
+        for(int i = 0; i < args.length; i++) {
+            encoded[i] = args[i] == null ? null : args[i].getBytes(StandardCharsets.UTF_8);
+            length += 5 + (encoded[i] == null ? 0 : encoded[i].length);
+        }
+        ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + length);
+        record.position(2 * Integer.BYTES);
+        record.put((byte) op);
+        record.put((byte) ((undoRedo ? 1 : 0) | (undo ? 2 : 0)));
+        for(byte[] bytes : encoded) {
+            putVarint(record, bytes == null ? 0 : bytes.length + 1);
+            if(bytes != null) {
+                record.put(bytes);
+            }
+        }
+        int end = record.position();
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 2 * Integer.BYTES, end - 2 * Integer.BYTES);
+        record.putInt(0, end - 2 * Integer.BYTES);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        record.position(0).limit(end);
+        try {
+            while(record.hasRemaining()) {
+                log.write(record);
+            }
+            pending++;
+            if(pending >= SYNC_RECORDS || System.nanoTime() - lastSync >= TimeUnit.MILLISECONDS.toNanos(SYNC_MILLIS)) {
+                sync();
+            } else if(pending == 1) {
+                syncer.schedule(this::syncQuietly, SYNC_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Forces every pending record to disk.
+     *
+     * @throws IOException If the log cannot be forced.
+     */
+    synchronized void sync() throws IOException {
+        if(pending > 0 && log.isOpen()) {
+            log.force(false);
+        }
+        pending = 0;
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * Returns whether the log has grown large enough to be folded into a snapshot.
+     *
+     * @return true if the journal should be compacted.
+     * @throws IOException If the size of the log cannot be read.
+     */
+    synchronized boolean needsCompaction() throws IOException {
+        return log.size() >= COMPACT_BYTES;
+    }
+
+    /**
+     * Folds the log into a snapshot of the next generation and starts an empty log.
+     *
+     * @param writer Writes a snapshot of the current state.
+     * @throws IOException If the snapshot or the new log cannot be written.
+     */
+    synchronized void compact(SnapshotWriter writer) throws IOException {
+        sync();
+        long next = generation + 1;
+        Path temporary = directory.resolve("snapshot-" + next + ".tmp");
+        writer.write(temporary);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotPath(next), StandardCopyOption.ATOMIC_MOVE);
+        FileChannel nextLog = FileChannel.open(logPath(next), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader(nextLog);
+        nextLog.force(true);
+        log.close();
+        log = nextLog;
+        Files.deleteIfExists(logPath(generation));
+        if(generation > 0) {
+            Files.deleteIfExists(snapshotPath(generation));
+        }
+        generation = next;
+    }
+
+    /**
+     * Syncs and closes the log.
+     *
+     * @throws IOException If the log cannot be forced or closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        syncer.shutdownNow();
+        if(log != null && log.isOpen()) {
+            pending = 1;
+            sync();
+            log.close();
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Path snapshotPath(long generation) {
+        return directory.resolve("snapshot-" + generation + ".tmsb");
+    }
+
+    private Path logPath(long generation) {
+        return directory.resolve("journal-" + generation + ".log");
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).put((byte) VERSION).flip();
+        while(header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    private static Record decode(ByteBuffer in) throws IOException {
+        int op = in.get();
+        int flags = in.get();
+        ArrayList<String> args = new ArrayList<>();
+        while(in.hasRemaining()) {
+            int length = getVarint(in) - 1;
+            if(length < 0) {
+                args.add(null);
+                continue;
+            }
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            args.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return new Record(op, (flags & 1) != 0, (flags & 2) != 0, args.toArray(new String[0]));
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint in task journal");
+    }
+}
@@ -0,0 +1,282 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The MappedSnapshot class gives lazy access to the tasks of a binary snapshot written by TaskSnapshot.
+ * <p>
+ * The file is memory-mapped and scanned once to build an offset index: the position of every name
+ * in the name table, the position of every task record, and an open-addressing hash table from the
+ * UTF-8 bytes of a task name to its record. No task object is built up front; a task is decoded from
+ * the mapped file only when it is asked for, so the heap used depends on the tasks actually read
+ * rather than on the size of the file. Criteria are few and are read eagerly.
+ * <p>
+ * The file must not be modified while it is mapped.
+ */
+final class MappedSnapshot {
+    private final MappedByteBuffer buffer;
+    private final int[] nameOffsets;
+    private final int[] recordOffsets;
+    private final int primitiveCount;
+    private final int[] slots;
+
+    private MappedSnapshot(MappedByteBuffer buffer, int[] nameOffsets, int[] recordOffsets, int primitiveCount) {
+        this.buffer = buffer;
+        this.nameOffsets = nameOffsets;
+        this.recordOffsets = recordOffsets;
+        this.primitiveCount = primitiveCount;
+        this.slots = new int[Integer.highestOneBit(Math.max(1, recordOffsets.length) * 2) * 2];
+        for(int task = 0; task < recordOffsets.length; task++) {
+            int slot = hash(nameOffsets[task]) & (slots.length - 1);
+            while(slots[slot] != 0) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            slots[slot] = task + 1;
+        }
+    }
+
+    /**
+     * Maps a snapshot file, builds its offset index and reads its criteria.
+     *
+     * @param path     The snapshot file to be mapped.
+     * @param criteria The map the criteria are put into.
+     * @return The mapped snapshot.
+     * @throws IOException If the file cannot be mapped or is not a valid snapshot.
+     */
+    static MappedSnapshot open(Path path, Map<String, Criterion> criteria) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("task snapshot too large to be mapped: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            for(byte b : TaskSnapshot.MAGIC) {
+                if(buffer.get() != b) {
+                    throw new IOException("not a task snapshot: " + path);
+                }
+            }
+            int version = buffer.get();
+            if(version != TaskSnapshot.VERSION) {
+                throw new IOException("unsupported task snapshot version: " + version);
+            }
+            int[] nameOffsets = new int[varint(buffer)];
+            for(int i = 0; i < nameOffsets.length; i++) {
+                nameOffsets[i] = buffer.position();
+                skipString(buffer);
+            }
+            int primitiveCount = varint(buffer);
+            int[] primitiveOffsets = new int[primitiveCount];
+            for(int i = 0; i < primitiveCount; i++) {
+                primitiveOffsets[i] = buffer.position();
+                skipString(buffer);
+                buffer.position(buffer.position() + Double.BYTES);
+                skipReferences(buffer, nameOffsets.length);
+            }
+            int compositeCount = varint(buffer);
+            if(primitiveCount + compositeCount > nameOffsets.length) {
+                throw new IOException("task record without a name in task snapshot");
+            }
+            int[] recordOffsets = new int[primitiveCount + compositeCount];
+            System.arraycopy(primitiveOffsets, 0, recordOffsets, 0, primitiveCount);
+            for(int i = 0; i < compositeCount; i++) {
+                recordOffsets[primitiveCount + i] = buffer.position();
+                skipString(buffer);
+                skipReferences(buffer, nameOffsets.length);
+            }
+            int criterionCount = varint(buffer);
+            for(int i = 0; i < criterionCount; i++) {
+                String name = string(buffer);
+                Criterion criterion = new Criterion(name, string(buffer), string(buffer), string(buffer));
+                int flags = buffer.get();
+                criterion.setIsPrimitive((flags & TaskSnapshot.FLAG_PRIMITIVE) != 0);
+                criterion.setIsBasic((flags & TaskSnapshot.FLAG_BASIC) != 0);
+                criterion.setIsNegated((flags & TaskSnapshot.FLAG_NEGATED) != 0);
+                criterion.setSubCriterion(strings(buffer));
+                criteria.put(name, criterion);
+            }
+            return new MappedSnapshot(buffer, nameOffsets, recordOffsets, primitiveCount);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("truncated task snapshot: " + path, e);
+        }
+    }
+
+    /**
+     * Decodes a primitive task from the snapshot.
+     *
+     * @param name The name of the task.
+     * @return A new PrimitiveTask, or null if the snapshot has no primitive task of that name.
+     */
+    PrimitiveTask primitive(String name) {
+        int task = find(name);
+        return task < 0 || task >= primitiveCount ? null : decodePrimitive(task);
+    }
+
+    /**
+     * Decodes a composite task from the snapshot.
+     *
+     * @param name The name of the task.
+     * @return A new CompositeTask, or null if the snapshot has no composite task of that name.
+     */
+    CompositeTask composite(String name) {
+        int task = find(name);
+        return task < primitiveCount ? null : decodeComposite(task);
+    }
+
+    /**
+     * Decodes every task of the snapshot into the given maps.
+     * Tasks that are in the maps already are kept, and all tasks are put in file order,
+     * so the maps iterate in the same order as after an eager read of the same file.
+     *
+     * @param primitives The map the primitive tasks are put into.
+     * @param composites The map the composite tasks are put into.
+     */
+    void readAll(Map<String, PrimitiveTask> primitives, Map<String, CompositeTask> composites) {
+        HashMap<String, PrimitiveTask> readPrimitives = new HashMap<>(primitives);
+        HashMap<String, CompositeTask> readComposites = new HashMap<>(composites);
+        primitives.clear();
+        composites.clear();
+        for(int task = 0; task < recordOffsets.length; task++) {
+            String name = nameAt(task);
+            if(task < primitiveCount) {
+                PrimitiveTask read = readPrimitives.remove(name);
+                primitives.put(name, read != null ? read : decodePrimitive(task));
+            } else {
+                CompositeTask read = readComposites.remove(name);
+                composites.put(name, read != null ? read : decodeComposite(task));
+            }
+        }
+        primitives.putAll(readPrimitives);
+        composites.putAll(readComposites);
+    }
+
+    // the index of the task record of a name, or -1
+    private int find(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int h = 0x811C9DC5;
+        for(byte b : bytes) {
+            h = (h ^ (b & 0xFF)) * 0x01000193;
+        }
+        for(int slot = h & (slots.length - 1); slots[slot] != 0; slot = (slot + 1) & (slots.length - 1)) {
+            int task = slots[slot] - 1;
+            if(nameEquals(nameOffsets[task], bytes)) {
+                return task;
+            }
+        }
+        return -1;
+    }
+
+    // FNV-1a over the UTF-8 bytes of the name stored at the given offset
+    private int hash(int offset) {
+        ByteBuffer in = buffer.duplicate().position(offset);
+        int length = varint(in) - 1;
+        int h = 0x811C9DC5;
+        for(int i = 0; i < length; i++) {
+            h = (h ^ (in.get() & 0xFF)) * 0x01000193;
+        }
+        return h;
+    }
+
+    private boolean nameEquals(int offset, byte[] bytes) {
+        ByteBuffer in = buffer.duplicate().position(offset);
+        if(varint(in) - 1 != bytes.length) {
+            return false;
+        }
+        for(byte b : bytes) {
+            if(in.get() != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String nameAt(int index) {
+        return string(buffer.duplicate().position(nameOffsets[index]));
+    }
+
+    private PrimitiveTask decodePrimitive(int task) {
+        ByteBuffer in = buffer.duplicate().position(recordOffsets[task]);
+        String description = string(in);
+        double duration = in.getDouble();
+        return new PrimitiveTask(nameAt(task), description, duration, references(in));
+    }
+
+    private CompositeTask decodeComposite(int task) {
+        ByteBuffer in = buffer.duplicate().position(recordOffsets[task]);
+        String description = string(in);
+        return new CompositeTask(nameAt(task), description, references(in));
+    }
+
+    private String[] references(ByteBuffer in) {
+        int count = varint(in);
+        if(count == 0) {
+            return null;
+        }
+        String[] array = new String[count - 1];
+        for(int i = 0; i < array.length; i++) {
+            int reference = varint(in);
+            array[i] = reference == 0 ? null : nameAt(reference - 1);
+        }
+        return array;
+    }
+
+    private static int varint(ByteBuffer in) {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint in task snapshot");
+    }
+
+    private static String string(ByteBuffer in) {
+        int length = varint(in) - 1;
+        if(length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String[] strings(ByteBuffer in) {
+        int count = varint(in);
+        if(count == 0) {
+            return null;
+        }
+        String[] array = new String[count - 1];
+        for(int i = 0; i < array.length; i++) {
+            array[i] = string(in);
+        }
+        return array;
+    }
+
+    private static void skipString(ByteBuffer in) {
+        int length = varint(in) - 1;
+        if(length > 0) {
+            in.position(in.position() + length);
+        }
+    }
+
+    private static void skipReferences(ByteBuffer in, int nameCount) {
+        int count = varint(in);
+        for(int i = 1; i < count; i++) {
+            if(varint(in) > nameCount) {
+                throw new IllegalArgumentException("name reference out of range in task snapshot");
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Metrics class collects what the Task Management System (TMS) spends its time on.
+ * <p>
+ * It holds a LatencyHistogram of every command run, keyed by the command name, and counters of the hits and
+ * misses of the caches and indexes of the TMS:
+ * - finishTime.cache.hit and finishTime.cache.miss: tasks whose earliest finish time was or was not cached.
+ * - criterionPlan.cache.hit and criterionPlan.cache.miss: searches whose criterion was or was not already compiled.
+ * - search.substringIndex and search.durationIndex: basic criteria answered from the trigram or duration index.
+ * - search.scan and search.scan.parallel: scans testing every primitive or composite task, on the calling
+ *   thread or split across the search pool.
+ * Every method may be called from any number of threads at once.
+ * <p>
+ * Metrics are off by default and enabled with TMS.setMetricsEnabled; a disabled TMS only tests a null field.
+ */
+public final class Metrics {
+    private final ConcurrentHashMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Records how long a command took.
+     *
+     * @param command The name of the command, such as "Search".
+     * @param nanos   The duration in nanoseconds.
+     */
+    public void record(String command, long nanos) {
+        LatencyHistogram histogram = latencies.get(command);
+        if(histogram == null) {
+            histogram = latencies.computeIfAbsent(command, k -> new LatencyHistogram());
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * Adds one to a counter.
+     *
+     * @param counter The name of the counter.
+     */
+    public void increment(String counter) {
+        LongAdder adder = counters.get(counter);
+        if(adder == null) {
+            adder = counters.computeIfAbsent(counter, k -> new LongAdder());
+        }
+        adder.increment();
+    }
+
+    /**
+     * Returns the latencies of the commands run so far.
+     *
+     * @return A new map of the live histograms by command name, in the order of the names.
+     */
+    public Map<String, LatencyHistogram> getLatencies() {
+        return new TreeMap<>(latencies);
+    }
+
+    /**
+     * Returns the value of a counter.
+     *
+     * @param counter The name of the counter.
+     * @return The value, or 0 if the counter has never been incremented.
+     */
+    public long getCounter(String counter) {
+        LongAdder adder = counters.get(counter);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * Returns the values of all counters.
+     *
+     * @return A new map of the counter values by name, in the order of the names.
+     */
+    public Map<String, Long> getCounters() {
+        TreeMap<String, Long> values = new TreeMap<>();
+        counters.forEach((name, adder) -> values.put(name, adder.sum()));
+        return values;
+    }
+
+    /**
+     * Formats the metrics as a table for people, as printed by the Stats command.
+     *
+     * @param gauges The current sizes of the TMS, as returned by TMS.getGauges.
+     * @return The table, one line per command, counter and gauge.
+     */
+    public String format(Map<String, Long> gauges) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%-26s %10s %10s %10s %10s %10s %10s%n",
+                "command", "count", "mean(us)", "p50(us)", "p99(us)", "p999(us)", "max(us)"));
+        getLatencies().forEach((command, histogram) -> out.append(String.format(Locale.ROOT,
+                "%-26s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", command, histogram.getCount(),
+                histogram.getMean() / 1e3, histogram.getValueAtPercentile(50) / 1e3,
+                histogram.getValueAtPercentile(99) / 1e3, histogram.getValueAtPercentile(99.9) / 1e3,
+                histogram.getMax() / 1e3)));
+        getCounters().forEach((name, value) -> out.append(String.format(Locale.ROOT, "%-26s %10d%n", name, value)));
+        gauges.forEach((name, value) -> out.append(String.format(Locale.ROOT, "%-26s %10d%n", name, value)));
+        return out.toString();
+    }
+
+    /**
+     * Formats the metrics in the Prometheus text exposition format, as served by the metrics endpoint.
+     * Latencies are summaries in seconds with the 0.5, 0.99 and 0.999 quantiles.
+     *
+     * @param gauges The current sizes of the TMS, as returned by TMS.getGauges.
+     * @return The exposition, ending with a newline.
+     */
+    public String expose(Map<String, Long> gauges) {
+        StringBuilder out = new StringBuilder();
+        out.append("# TYPE tms_command_seconds summary\n");
+        getLatencies().forEach((command, histogram) -> {
+            for(double quantile : new double[]{0.5, 0.99, 0.999}) {
+                out.append(String.format(Locale.ROOT, "tms_command_seconds{command=\"%s\",quantile=\"%s\"} %.9f\n",
+                        command, quantile, histogram.getValueAtPercentile(quantile * 100) / 1e9));
+            }
+            out.append(String.format(Locale.ROOT, "tms_command_seconds_sum{command=\"%s\"} %.9f\n",
+                    command, histogram.getMean() * histogram.getCount() / 1e9));
+            out.append(String.format(Locale.ROOT, "tms_command_seconds_count{command=\"%s\"} %d\n", command, histogram.getCount()));
+        });
+        out.append("# TYPE tms_events_total counter\n");
+        getCounters().forEach((name, value) -> out.append(String.format(Locale.ROOT, "tms_events_total{event=\"%s\"} %d\n", name, value)));
+        out.append("# TYPE tms_size gauge\n");
+        gauges.forEach((name, value) -> out.append(String.format(Locale.ROOT, "tms_size{of=\"%s\"} %d\n", name, value)));
+        return out.toString();
+    }
+}
@@ -0,0 +1,144 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * The NgramIndex class is an inverted index from trigrams (three consecutive characters) to task ids.
+ * It answers "contains" queries with an intersection of the posting lists of the trigrams of the query;
+ * the resulting candidates still have to be verified, because sharing every trigram does not imply
+ * containing the query.
+ * Queries shorter than three characters cannot use the index.
+ */
+class NgramIndex {
+    static final int GRAM = 3;
+    private final HashMap<Long, Postings> postings = new HashMap<>();
+
+    /**
+     * Indexes the trigrams of a text under the given task id.
+     *
+     * @param id   The id of the task.
+     * @param text The text to be indexed, may be null.
+     */
+    void add(int id, String text) {
+        if(text == null) {
+            return;
+        }
+        for(int i = 0; i + GRAM <= text.length(); i++) {
+            postings.computeIfAbsent(gram(text, i), k -> new Postings()).add(id);
+        }
+    }
+
+    /**
+     * Removes the trigrams of a text from the given task id.
+     * The text must be the one that was indexed for the id.
+     *
+     * @param id   The id of the task.
+     * @param text The text that was indexed, may be null.
+     */
+    void remove(int id, String text) {
+        if(text == null) {
+            return;
+        }
+        for(int i = 0; i + GRAM <= text.length(); i++) {
+            Long key = gram(text, i);
+            Postings list = postings.get(key);
+            if(list == null) {
+                continue;
+            }
+            list.remove(id);
+            if(list.size == 0) {
+                postings.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of the tasks whose text contains every trigram of the query.
+     *
+     * @param query The text to be searched for.
+     * @return A new bitset of candidate ids, or null if the query is too short to use the index.
+     */
+    BitSet candidates(String query) {
+        if(query.length() < GRAM) {
+            return null;
+        }
+        Postings[] lists = new Postings[query.length() - GRAM + 1];
+        for(int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(gram(query, i));
+            if(lists[i] == null) {
+                return new BitSet();
+            }
+        }
+        // intersect starting from the shortest posting list
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        int[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+        int count = result.length;
+        for(int i = 1; i < lists.length && count > 0; i++) {
+            count = lists[i].retain(result, count);
+        }
+        BitSet candidates = new BitSet();
+        for(int i = 0; i < count; i++) {
+            candidates.set(result[i]);
+        }
+        return candidates;
+    }
+
+    /**
+     * Removes every posting from the index.
+     */
+    void clear() {
+        postings.clear();
+    }
+
+    private static long gram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    /**
+     * A sorted list of task ids without duplicates.
+     */
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size = 0;
+
+        void add(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if(position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            if(size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if(position < 0) {
+                return;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+        }
+
+        // keeps the first count ids of result that are also in this list and returns how many are kept
+        int retain(int[] result, int count) {
+            int kept = 0;
+            int j = 0;
+            for(int i = 0; i < count; i++) {
+                while(j < size && ids[j] < result[i]) {
+                    j++;
+                }
+                if(j < size && ids[j] == result[i]) {
+                    result[kept++] = result[i];
+                }
+            }
+            return kept;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The OffHeapTaskGraphStore class keeps the records of a TaskGraph in direct buffers outside the Java heap,
+ * so that the garbage collector has no object to trace or move per task.
+ * <p>
+ * Every id has a fixed record of 32 bytes: the offset and length of its row, its stamp, its duration and
+ * its earliest finish time. Rows are stored one after another in a second buffer of ints. A row that grows is
+ * written again at the end and its old place becomes garbage; once garbage makes up half of the buffer,
+ * the rows are copied into a new buffer without it. Buffers grow by doubling and are released
+ * by the garbage collector once no longer used, as every direct buffer is.
+ */
+class OffHeapTaskGraphStore implements TaskGraphStore {
+    private static final int RECORD_SIZE = 32;
+    private static final int OFFSET = 0;
+    private static final int LENGTH = 4;
+    private static final int STAMP = 8;
+    private static final int DURATION = 16;
+    private static final int FINISH_TIME = 24;
+
+    private ByteBuffer records = allocate(0);
+    private int capacity = 0;
+    private ByteBuffer rows = allocate(1024 * Integer.BYTES);
+    // ints of the rows buffer in use, and how many of them belong to rows that were written again
+    private int rowsUsed = 0;
+    private int rowsGarbage = 0;
+
+    /**
+     * Constructs a new OffHeapTaskGraphStore with room for a few ids.
+     */
+    OffHeapTaskGraphStore() {
+        ensureCapacity(16);
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        if(capacity <= this.capacity) {
+            return;
+        }
+        int length = Math.max(capacity, this.capacity * 2);
+        ByteBuffer grown = allocate((long) length * RECORD_SIZE);
+        grown.put(records.duplicate().clear());
+        for(int id = this.capacity; id < length; id++) {
+            int record = id * RECORD_SIZE;
+            grown.putInt(record + LENGTH, -1);
+            grown.putDouble(record + FINISH_TIME, Double.NaN);
+        }
+        records = grown;
+        this.capacity = length;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public int dependencyCount(int id) {
+        return records.getInt(id * RECORD_SIZE + LENGTH);
+    }
+
+    @Override
+    public int dependency(int id, int index) {
+        return rows.getInt((records.getInt(id * RECORD_SIZE + OFFSET) + index) * Integer.BYTES);
+    }
+
+    @Override
+    public void setDependencies(int id, int[] row) {
+        int record = id * RECORD_SIZE;
+        int oldLength = Math.max(0, records.getInt(record + LENGTH));
+        int offset = records.getInt(record + OFFSET);
+        if(row.length > oldLength) {
+            rowsGarbage += oldLength;
+            offset = reserve(row.length);
+        }
+        else {
+            rowsGarbage += oldLength - row.length;
+        }
+        for(int i = 0; i < row.length; i++) {
+            rows.putInt((offset + i) * Integer.BYTES, row[i]);
+        }
+        records.putInt(record + OFFSET, offset);
+        records.putInt(record + LENGTH, row.length);
+    }
+
+    @Override
+    public double duration(int id) {
+        return records.getDouble(id * RECORD_SIZE + DURATION);
+    }
+
+    @Override
+    public void setDuration(int id, double duration) {
+        records.putDouble(id * RECORD_SIZE + DURATION, duration);
+    }
+
+    @Override
+    public double finishTime(int id) {
+        return records.getDouble(id * RECORD_SIZE + FINISH_TIME);
+    }
+
+    @Override
+    public void setFinishTime(int id, double finishTime) {
+        records.putDouble(id * RECORD_SIZE + FINISH_TIME, finishTime);
+    }
+
+    @Override
+    public void clearFinishTimes() {
+        for(int id = 0; id < capacity; id++) {
+            records.putDouble(id * RECORD_SIZE + FINISH_TIME, Double.NaN);
+        }
+    }
+
+    @Override
+    public int stamp(int id) {
+        return records.getInt(id * RECORD_SIZE + STAMP);
+    }
+
+    @Override
+    public void setStamp(int id, int stamp) {
+        records.putInt(id * RECORD_SIZE + STAMP, stamp);
+    }
+
+    // the offset of room for length more ints at the end of the rows, compacting or growing the buffer if needed
+    private int reserve(int length) {
+        int limit = rows.capacity() / Integer.BYTES;
+        if(rowsUsed + length > limit) {
+            int live = rowsUsed - rowsGarbage;
+            int size = live + length > limit / 2 ? Math.max(limit * 2, live + length) : limit;
+            compact(allocate((long) size * Integer.BYTES));
+        }
+        int offset = rowsUsed;
+        rowsUsed += length;
+        return offset;
+    }
+
+    // copies the rows still in use to the start of a new buffer, in the order of the ids
+    private void compact(ByteBuffer into) {
+        int used = 0;
+        for(int id = 0; id < capacity; id++) {
+            int record = id * RECORD_SIZE;
+            int length = records.getInt(record + LENGTH);
+            if(length <= 0) {
+                continue;
+            }
+            int offset = records.getInt(record + OFFSET);
+            for(int i = 0; i < length; i++) {
+                into.putInt((used + i) * Integer.BYTES, rows.getInt((offset + i) * Integer.BYTES));
+            }
+            records.putInt(record + OFFSET, used);
+            used += length;
+        }
+        rows = into;
+        rowsUsed = used;
+        rowsGarbage = 0;
+    }
+
+    private static ByteBuffer allocate(long bytes) {
+        if(bytes > Integer.MAX_VALUE) {
+            throw new OutOfMemoryError("a task graph buffer cannot hold more than 2 GB");
+        }
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+}
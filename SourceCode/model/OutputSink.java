@@ -0,0 +1,21 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+/**
+ * The OutputSink interface receives the output of the query methods of the Task Management System (TMS),
+ * such as printTask, printAllTasks, search, reportDuration and reportEarliestFinishTime.
+ * Output is handed over in blocks of whole lines rather than piece by piece, so a sink can write each block at once.
+ */
+public interface OutputSink {
+    /**
+     * Writes a block of text made of whole lines, each ending with a line separator.
+     *
+     * @param lines The lines to be written.
+     */
+    void write(CharSequence lines);
+
+    /**
+     * Writes out any output the sink still holds.
+     */
+    default void flush() {
+    }
+}
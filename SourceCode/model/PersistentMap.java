@@ -0,0 +1,401 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * The PersistentMap class is an immutable hash array mapped trie keyed by names.
+ * <p>
+ * plus and minus return a new map and leave this one unchanged. The new map shares every node of the trie
+ * except the few on the path to the changed key, so an update costs O(log32 n) time and memory
+ * and any number of older versions can be kept cheaply. The Map methods that would change the map throw
+ * UnsupportedOperationException, so a map can be handed out as a read-only Map and read from any thread.
+ * <p>
+ * The trie does not use String.hashCode, which often collides on short names such as "t1n" and "t30":
+ * two keys with the same hash share a path down to the bottom of the trie, so collisions make it deep and slow.
+ *
+ * @param <V> The type of the values.
+ */
+final class PersistentMap<V> extends AbstractMap<String, V> {
+    private static final int BITS = 5;
+    private static final PersistentMap<?> EMPTY = new PersistentMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     *
+     * @param <V> The type of the values.
+     * @return The empty map.
+     */
+    @SuppressWarnings("unchecked")
+    static <V> PersistentMap<V> empty() {
+        return (PersistentMap<V>) EMPTY;
+    }
+
+    /**
+     * Returns a map that maps a key to a value and otherwise holds the entries of this map.
+     *
+     * @param key   The key, not null.
+     * @param value The value.
+     * @return The new map, or this map if it already maps the key to the same value.
+     */
+    PersistentMap<V> plus(String key, V value) {
+        Leaf leaf = new Leaf(hash(key), key, value);
+        if(root == null) {
+            return new PersistentMap<>(new BitmapNode(0, new Object[0]).put(leaf, 0, new boolean[1]), 1);
+        }
+        boolean[] added = new boolean[1];
+        Node newRoot = root.put(leaf, 0, added);
+        return newRoot == root ? this : new PersistentMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map that holds the entries of this map except the one of a key.
+     *
+     * @param key The key.
+     * @return The new map, or this map if it does not contain the key.
+     */
+    PersistentMap<V> minus(Object key) {
+        if(root == null || !(key instanceof String)) {
+            return this;
+        }
+        Node newRoot = root.remove(hash(key), key, 0);
+        if(newRoot == root) {
+            return this;
+        }
+        return newRoot == null ? empty() : new PersistentMap<>(newRoot, size - 1);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if(root == null || !(key instanceof String)) {
+            return null;
+        }
+        Leaf leaf = root.find(hash(key), key, 0);
+        return leaf == null ? null : (V) leaf.getValue();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return root != null && key instanceof String && root.find(hash(key), key, 0) != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super String, ? super V> action) {
+        if(root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    // FNV-1a over the characters, then the finalizer of MurmurHash3 to spread every character over all 32 bits
+    private static int hash(Object key) {
+        String name = (String) key;
+        int h = 0x811c9dc5;
+        for(int i = 0; i < name.length(); i++) {
+            h = (h ^ name.charAt(i)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    // an entry of the map, stored in the slots of the nodes
+    private static final class Leaf extends SimpleImmutableEntry<Object, Object> {
+        private static final long serialVersionUID = 1L;
+
+        final int hash;
+
+        Leaf(int hash, Object key, Object value) {
+            super(key, value);
+            this.hash = hash;
+        }
+    }
+
+    private abstract static class Node {
+        // the slots of the node, each a Leaf or a Node
+        abstract Object[] slots();
+
+        abstract Leaf find(int hash, Object key, int shift);
+
+        // the node with the leaf added or replaced, or this node if it already holds the same entry
+        abstract Node put(Leaf leaf, int shift, boolean[] added);
+
+        // the node without the key, this node if it does not hold the key, or null if it becomes empty
+        abstract Node remove(int hash, Object key, int shift);
+
+        final void forEach(BiConsumer<Object, Object> action) {
+            for(Object slot : slots()) {
+                if(slot instanceof Leaf) {
+                    action.accept(((Leaf) slot).getKey(), ((Leaf) slot).getValue());
+                }
+                else {
+                    ((Node) slot).forEach(action);
+                }
+            }
+        }
+    }
+
+    // a node indexed by five bits of the hash; the bitmap records which of the 32 positions hold a slot
+    private static final class BitmapNode extends Node {
+        private final int bitmap;
+        private final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        @Override
+        Object[] slots() {
+            return slots;
+        }
+
+        @Override
+        Leaf find(int hash, Object key, int shift) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if((bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = slots[Integer.bitCount(bitmap & (bit - 1))];
+            if(slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.hash == hash && leaf.getKey().equals(key) ? leaf : null;
+            }
+            return ((Node) slot).find(hash, key, shift + BITS);
+        }
+
+        @Override
+        Node put(Leaf leaf, int shift, boolean[] added) {
+            int bit = 1 << ((leaf.hash >>> shift) & 31);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            if((bitmap & bit) == 0) {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, index);
+                newSlots[index] = leaf;
+                System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newSlots);
+            }
+            Object slot = slots[index];
+            Object newSlot;
+            if(slot instanceof Leaf) {
+                Leaf old = (Leaf) slot;
+                if(old.hash == leaf.hash && old.getKey().equals(leaf.getKey())) {
+                    if(old.getValue() == leaf.getValue()) {
+                        return this;
+                    }
+                    newSlot = leaf;
+                }
+                else {
+                    newSlot = merge(old, leaf, shift + BITS);
+                    added[0] = true;
+                }
+            }
+            else {
+                newSlot = ((Node) slot).put(leaf, shift + BITS, added);
+                if(newSlot == slot) {
+                    return this;
+                }
+            }
+            Object[] newSlots = slots.clone();
+            newSlots[index] = newSlot;
+            return new BitmapNode(bitmap, newSlots);
+        }
+
+        @Override
+        Node remove(int hash, Object key, int shift) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            Object slot = slots[index];
+            Object newSlot;
+            if(slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                if(leaf.hash != hash || !leaf.getKey().equals(key)) {
+                    return this;
+                }
+                newSlot = null;
+            }
+            else {
+                newSlot = ((Node) slot).remove(hash, key, shift + BITS);
+                if(newSlot == slot) {
+                    return this;
+                }
+            }
+            if(newSlot != null) {
+                Object[] newSlots = slots.clone();
+                newSlots[index] = newSlot;
+                return new BitmapNode(bitmap, newSlots);
+            }
+            if(slots.length == 1) {
+                return null;
+            }
+            Object[] newSlots = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            System.arraycopy(slots, index + 1, newSlots, index, slots.length - index - 1);
+            return new BitmapNode(bitmap & ~bit, newSlots);
+        }
+
+        // the node holding two leaves whose hashes agree below shift
+        private static Node merge(Leaf first, Leaf second, int shift) {
+            if(shift >= 32) {
+                return new CollisionNode(new Leaf[]{first, second});
+            }
+            int firstBit = 1 << ((first.hash >>> shift) & 31);
+            int secondBit = 1 << ((second.hash >>> shift) & 31);
+            if(firstBit == secondBit) {
+                return new BitmapNode(firstBit, new Object[]{merge(first, second, shift + BITS)});
+            }
+            Object[] slots = Integer.compareUnsigned(firstBit, secondBit) < 0 ? new Object[]{first, second} : new Object[]{second, first};
+            return new BitmapNode(firstBit | secondBit, slots);
+        }
+    }
+
+    // the leaves whose hashes are equal in all 32 bits
+    private static final class CollisionNode extends Node {
+        private final Leaf[] leaves;
+
+        CollisionNode(Leaf[] leaves) {
+            this.leaves = leaves;
+        }
+
+        @Override
+        Object[] slots() {
+            return leaves;
+        }
+
+        @Override
+        Leaf find(int hash, Object key, int shift) {
+            for(Leaf leaf : leaves) {
+                if(leaf.hash == hash && leaf.getKey().equals(key)) {
+                    return leaf;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        Node put(Leaf leaf, int shift, boolean[] added) {
+            for(int i = 0; i < leaves.length; i++) {
+                if(leaves[i].getKey().equals(leaf.getKey())) {
+                    if(leaves[i].getValue() == leaf.getValue()) {
+                        return this;
+                    }
+                    Leaf[] newLeaves = leaves.clone();
+                    newLeaves[i] = leaf;
+                    return new CollisionNode(newLeaves);
+                }
+            }
+            Leaf[] newLeaves = new Leaf[leaves.length + 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+            newLeaves[leaves.length] = leaf;
+            added[0] = true;
+            return new CollisionNode(newLeaves);
+        }
+
+        @Override
+        Node remove(int hash, Object key, int shift) {
+            for(int i = 0; i < leaves.length; i++) {
+                if(leaves[i].hash == hash && leaves[i].getKey().equals(key)) {
+                    if(leaves.length == 1) {
+                        return null;
+                    }
+                    Leaf[] newLeaves = new Leaf[leaves.length - 1];
+                    System.arraycopy(leaves, 0, newLeaves, 0, i);
+                    System.arraycopy(leaves, i + 1, newLeaves, i, leaves.length - i - 1);
+                    return new CollisionNode(newLeaves);
+                }
+            }
+            return this;
+        }
+    }
+
+    // walks the trie depth first with a stack of slot arrays and positions
+    private final class EntryIterator implements Iterator<Entry<String, V>> {
+        private final ArrayDeque<Object[]> arrays = new ArrayDeque<>();
+        private final ArrayDeque<Integer> positions = new ArrayDeque<>();
+        private Leaf next;
+
+        EntryIterator() {
+            if(root != null) {
+                arrays.push(root.slots());
+                positions.push(0);
+            }
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while(!arrays.isEmpty()) {
+                Object[] slots = arrays.peek();
+                int position = positions.pop();
+                if(position == slots.length) {
+                    arrays.pop();
+                    continue;
+                }
+                positions.push(position + 1);
+                Object slot = slots[position];
+                if(slot instanceof Leaf) {
+                    next = (Leaf) slot;
+                    return;
+                }
+                arrays.push(((Node) slot).slots());
+                positions.push(0);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<String, V> next() {
+            if(next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf leaf = next;
+            advance();
+            return (Entry<String, V>) (Entry<?, ?>) leaf;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+/**
+ * The PrintStreamSink class is the default OutputSink of the Task Management System (TMS).
+ * It writes every block to System.out with a single call. System.out is looked up at each write,
+ * so output follows System.setOut like the messages the TMS prints directly.
+ */
+public class PrintStreamSink implements OutputSink {
+    @Override
+    public void write(CharSequence lines) {
+        System.out.print(lines.toString());
+    }
+
+    @Override
+    public void flush() {
+        System.out.flush();
+    }
+}
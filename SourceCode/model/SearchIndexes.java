@@ -0,0 +1,237 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The SearchIndexes class groups the indexes used to evaluate criteria in the Task Management System (TMS).
+ * It always keeps the dense task ids and the primitive tasks ordered by duration, and optionally trigram indexes
+ * over task names and descriptions that let "contains" criteria avoid a scan of every task.
+ * Every task must be registered when it is created and unregistered before it is removed.
+ * It also holds the fork-join pool that scans of large sets of tasks are split across.
+ */
+class SearchIndexes {
+    private final TaskIds ids = new TaskIds();
+    private final DurationIndex durations = new DurationIndex();
+    private NgramIndex names;
+    private NgramIndex descriptions;
+    // null when scans run on the calling thread; a machine with one processor gains nothing from a pool
+    private Metrics metrics = null;
+    private ForkJoinPool scanPool = Runtime.getRuntime().availableProcessors() > 1 ? ForkJoinPool.commonPool() : null;
+
+    /**
+     * Returns the dense task ids.
+     *
+     * @return The TaskIds of the registered tasks.
+     */
+    TaskIds getIds() {
+        return ids;
+    }
+
+    /**
+     * Registers a primitive task with every index.
+     *
+     * @param task The primitive task to be registered.
+     */
+    void register(PrimitiveTask task) {
+        unregister(task.getName());
+        int id = ids.register(task);
+        durations.add(id, task.getDuration());
+        indexText(id, task);
+    }
+
+    /**
+     * Registers a composite task with every index.
+     *
+     * @param task The composite task to be registered.
+     */
+    void register(CompositeTask task) {
+        unregister(task.getName());
+        indexText(ids.register(task), task);
+    }
+
+    /**
+     * Removes a task from every index.
+     * Nothing is done if the task is not registered.
+     *
+     * @param name The name of the task to be removed.
+     */
+    void unregister(String name) {
+        int id = ids.idOf(name);
+        if(id < 0) {
+            return;
+        }
+        if(ids.taskOf(id) instanceof PrimitiveTask primitive) {
+            durations.remove(id, primitive.getDuration());
+        }
+        if(names != null) {
+            names.remove(id, name);
+            descriptions.remove(id, ids.taskOf(id).getDescription());
+        }
+        ids.unregister(name);
+    }
+
+    /**
+     * Updates the indexes after the description of a task has changed.
+     *
+     * @param name           The name of the task.
+     * @param oldDescription The description the task was indexed with.
+     */
+    void descriptionChanged(String name, String oldDescription) {
+        int id = ids.idOf(name);
+        if(id < 0 || descriptions == null) {
+            return;
+        }
+        descriptions.remove(id, oldDescription);
+        descriptions.add(id, ids.taskOf(id).getDescription());
+    }
+
+    /**
+     * Updates the indexes after the duration of a primitive task has changed.
+     *
+     * @param name        The name of the primitive task.
+     * @param oldDuration The duration the task was indexed with.
+     */
+    void durationChanged(String name, double oldDuration) {
+        int id = ids.idOf(name);
+        if(id < 0 || !(ids.taskOf(id) instanceof PrimitiveTask primitive)) {
+            return;
+        }
+        durations.remove(id, oldDuration);
+        durations.add(id, primitive.getDuration());
+    }
+
+    /**
+     * Returns the ids of the primitive tasks whose duration compares with the threshold as the operator demands.
+     *
+     * @param op        One of "&lt;", "&gt;", "&lt;=", "&gt;=", "==" or "!=".
+     * @param threshold The value the durations are compared with.
+     * @return A new bitset of the ids of the matching primitive tasks.
+     */
+    BitSet durationRange(String op, double threshold) {
+        return durations.range(op, threshold, ids.primitiveIds());
+    }
+
+    /**
+     * Returns whether the trigram indexes over names and descriptions are maintained.
+     *
+     * @return true if the trigram indexes are enabled, false otherwise.
+     */
+    boolean isSubstringIndexEnabled() {
+        return names != null;
+    }
+
+    /**
+     * Builds or drops the trigram indexes over names and descriptions.
+     *
+     * @param enabled Whether the trigram indexes should be maintained.
+     */
+    void setSubstringIndexEnabled(boolean enabled) {
+        if(enabled == isSubstringIndexEnabled()) {
+            return;
+        }
+        if(!enabled) {
+            names = null;
+            descriptions = null;
+            return;
+        }
+        names = new NgramIndex();
+        descriptions = new NgramIndex();
+        for(int id = 0; id < ids.limit(); id++) {
+            if(ids.taskOf(id) != null) {
+                indexText(id, ids.taskOf(id));
+            }
+        }
+    }
+
+    /**
+     * Returns the metrics searches count their use of the indexes in.
+     *
+     * @return The metrics, or null if metrics are disabled.
+     */
+    Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics searches count their use of the indexes in.
+     *
+     * @param metrics The metrics, or null to count nothing.
+     */
+    void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the pool that scans of large sets of tasks are split across.
+     *
+     * @return The pool, or null if scans run on the calling thread.
+     */
+    ForkJoinPool getScanPool() {
+        return scanPool;
+    }
+
+    /**
+     * Returns the number of threads a scan may use.
+     *
+     * @return The parallelism of the scan pool, or 1 if scans run on the calling thread.
+     */
+    int getScanParallelism() {
+        return scanPool == null ? 1 : scanPool.getParallelism();
+    }
+
+    /**
+     * Sets the number of threads a scan may use.
+     * A pool created by an earlier call is shut down once the scans running on it are done.
+     *
+     * @param parallelism The number of threads; 1 or less runs scans on the calling thread.
+     */
+    void setScanParallelism(int parallelism) {
+        if(parallelism == getScanParallelism()) {
+            return;
+        }
+        if(scanPool != null && scanPool != ForkJoinPool.commonPool()) {
+            scanPool.shutdown();
+        }
+        scanPool = parallelism <= 1 ? null : new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Returns the ids of the tasks whose name may contain the given text.
+     *
+     * @param value The text to be searched for.
+     * @return A new bitset of candidate ids, or null if the index cannot answer the query.
+     */
+    BitSet nameCandidates(String value) {
+        return names == null ? null : names.candidates(value);
+    }
+
+    /**
+     * Returns the ids of the tasks whose description may contain the given text.
+     *
+     * @param value The text to be searched for.
+     * @return A new bitset of candidate ids, or null if the index cannot answer the query.
+     */
+    BitSet descriptionCandidates(String value) {
+        return descriptions == null ? null : descriptions.candidates(value);
+    }
+
+    /**
+     * Removes every task from every index.
+     */
+    void clear() {
+        ids.clear();
+        durations.clear();
+        if(names != null) {
+            names.clear();
+            descriptions.clear();
+        }
+    }
+
+    private void indexText(int id, Task task) {
+        if(names != null) {
+            names.add(id, task.getName());
+            descriptions.add(id, task.getDescription());
+        }
+    }
+}
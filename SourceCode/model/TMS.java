@@ -9,7 +9,12 @@ import java.io.PrintWriter;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.FileNotFoundException;
-import java.util.concurrent.atomic.AtomicReference;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
 
 
 /**
@@ -18,18 +23,46 @@ import java.util.concurrent.atomic.AtomicReference;
  * Each HashMap uses a String as the key and the corresponding class object as the value.
  */
 public class TMS {
-    private Stack<String> redoStack = new Stack<>();
-    private Stack<String> undoStack = new Stack<>();
+    /** The number of changes kept for undo and redo when no other limit is set. */
+    public static final int DEFAULT_UNDO_HISTORY_LIMIT = 10_000;
+    private static final String NEWLINE = System.lineSeparator();
+    private static final int OUTPUT_BLOCK_SIZE = 1 << 16;
+    private CommandHistory redoHistory = new CommandHistory(DEFAULT_UNDO_HISTORY_LIMIT);
+    private CommandHistory undoHistory = new CommandHistory(DEFAULT_UNDO_HISTORY_LIMIT);
     private HashMap<String, PrimitiveTask> primitiveTask = new HashMap<String, PrimitiveTask>();
     private HashMap<String, CompositeTask> compositeTask = new HashMap<String, CompositeTask>();
     private HashMap<String, Criterion> criterion = new HashMap<String, Criterion>();
+    private SearchIndexes searchIndexes = new SearchIndexes();
+    private DependencyIndex dependencyIndex = new DependencyIndex(searchIndexes.getIds());
+    // the graph by task id that earliest finish times and critical paths are computed on
+    private TaskGraph taskGraph = new TaskGraph(searchIndexes.getIds(), dependencyIndex);
+    // filled by queries, so concurrent maps for queries running in parallel under ConcurrentTMS;
+    // finish times only go here while a snapshot is being read lazily
+    private ConcurrentHashMap<String, Double> finishTimeCache = new ConcurrentHashMap<String, Double>();
+    private ConcurrentHashMap<String, CriterionPlan> criterionPlans = new ConcurrentHashMap<String, CriterionPlan>();
+    // the latest published version, and what has changed since it was published
+    private volatile TaskVersion version = TaskVersion.EMPTY;
+    private HashSet<String> changedTasks = new HashSet<String>();
+    private boolean changedCriteria = true;
+    private boolean changedAll = true;
+    private MappedSnapshot snapshot = null;
+    private boolean lazyLoadEnabled = false;
+    private boolean compactStorageEnabled = false;
+    private Journal journal = null;
+    private int journalDepth = 0;
+    private OutputSink output = new PrintStreamSink();
+    // null while metrics are disabled, so that an uninstrumented TMS only tests this field
+    private volatile Metrics metrics = null;
     /**
      * Retrieves the current mapping of primitive tasks in the task management system.
      * The returned map has task names as keys and corresponding PrimitiveTask objects as values.
      *
+     * If a snapshot was loaded lazily, every task still in the snapshot is read first.
+     *
      * @return A HashMap with task names as keys and PrimitiveTask objects as values.
      */
     public HashMap<String, PrimitiveTask> getPrimitiveTask() {
+        materializeAll();
         return primitiveTask;
     }
 
@@ -37,9 +70,12 @@ public class TMS {
      * Retrieves the current mapping of composite tasks in the task management system.
      * The returned map has task names as keys and corresponding CompositeTask objects as values.
      *
+     * If a snapshot was loaded lazily, every task still in the snapshot is read first.
+     *
      * @return A HashMap with task names as keys and CompositeTask objects as values.
      */
     public HashMap<String, CompositeTask> getCompositeTask() {
+        materializeAll();
         return compositeTask;
     }
 
@@ -64,7 +100,9 @@ public class TMS {
         if(primitiveTask == null) {
             System.out.println("values cannot be null.");
         }
+        materializeAll();
         this.primitiveTask = primitiveTask;
+        rebuildIndexes();
     }
 
     /**
@@ -78,7 +116,9 @@ public class TMS {
         if(compositeTask == null) {
             System.out.println("values cannot be null.");
         }
+        materializeAll();
         this.compositeTask = compositeTask;
+        rebuildIndexes();
     }
 
     /**
@@ -93,58 +133,562 @@ public class TMS {
             System.out.println("values cannot be null.");
         }
         this.criterion = criterion;
+        criteriaChanged();
+    }
+
+    /**
+     * Returns whether Search keeps trigram indexes over task names and descriptions.
+     *
+     * @return true if the substring index is enabled, false otherwise.
+     */
+    public boolean isSubstringIndexEnabled() {
+        return searchIndexes.isSubstringIndexEnabled();
+    }
+
+    /**
+     * Enables or disables the trigram indexes over task names and descriptions.
+     * When enabled, "name contains" and "description contains" criteria with a value of at least three characters
+     * are answered from the index instead of a scan of every task, at the cost of maintaining the index
+     * on every create, change and delete.
+     * The index is enabled by default.
+     *
+     * @param enabled Whether the substring index should be maintained.
+     */
+    public void setSubstringIndexEnabled(boolean enabled) {
+        searchIndexes.setSubstringIndexEnabled(enabled);
+    }
+
+    /**
+     * Returns the number of threads a Search may use to test tasks one by one.
+     *
+     * @return The search parallelism, 1 if tasks are tested on the calling thread.
+     */
+    public int getSearchParallelism() {
+        return searchIndexes.getScanParallelism();
+    }
+
+    /**
+     * Sets the number of threads a Search may use to test tasks one by one.
+     * Criteria that no index can answer test every primitive or composite task; when there are at least
+     * CriterionPlan.PARALLEL_SCAN_THRESHOLD tasks, the tasks are split into segments that are tested on a fork-join pool.
+     * The result is the same as that of a sequential scan. By default the common pool is used on a machine
+     * with more than one processor, and tasks are tested on the calling thread otherwise.
+     *
+     * @param parallelism The number of threads; 1 or less tests every task on the calling thread.
+     */
+    public void setSearchParallelism(int parallelism) {
+        searchIndexes.setScanParallelism(parallelism);
+    }
+
+    /**
+     * Returns whether Load maps binary snapshots and reads their tasks lazily.
+     *
+     * @return true if lazy loading is enabled, false otherwise.
+     */
+    public boolean isLazyLoadEnabled() {
+        return lazyLoadEnabled;
+    }
+
+    /**
+     * Enables or disables lazy loading of binary snapshots.
+     * When enabled, Load memory-maps a binary snapshot and only builds an index of where each task is stored.
+     * PrintTask, ReportDuration and ReportEarliestFinishTime then read just the tasks they need from the file,
+     * and every other command reads all remaining tasks the first time it runs.
+     * Text files are always read eagerly. Lazy loading is disabled by default.
+     *
+     * @param enabled Whether binary snapshots should be loaded lazily.
+     */
+    public void setLazyLoadEnabled(boolean enabled) {
+        lazyLoadEnabled = enabled;
+    }
+
+    /**
+     * Returns whether equal descriptions are shared between tasks.
+     *
+     * @return true if compact storage is enabled, false otherwise.
+     */
+    public boolean isCompactStorageEnabled() {
+        return compactStorageEnabled;
+    }
+
+    /**
+     * Enables or disables compact storage of descriptions.
+     * When enabled, every description a task is given by a create, a change, an import or a Load is replaced by
+     * the canonical String of String.intern, so a description repeated across many tasks, such as one copied
+     * from a template, is held once. The canonical Strings are kept by the JVM outside the object heap and are
+     * released once no task uses them. Enabling it shares the descriptions of the existing tasks at once.
+     * Names are always shared: the prerequisite and subtask arrays hold the name String of the task they name.
+     * Compact storage is disabled by default.
+     *
+     * @param enabled Whether equal descriptions should be shared.
+     */
+    public void setCompactStorageEnabled(boolean enabled) {
+        boolean wasEnabled = compactStorageEnabled;
+        compactStorageEnabled = enabled;
+        if(enabled && !wasEnabled) {
+            for(Task task : getAllTasks()) {
+                shareDescription(task);
+            }
+        }
+    }
+
+    // the canonical instance of a description while compact storage is enabled
+    private String shared(String description) {
+        return compactStorageEnabled && description != null ? description.intern() : description;
+    }
+
+    private void shareDescription(Task task) {
+        if(compactStorageEnabled && task.getDescription() != null && !task.getDescription().isEmpty()) {
+            task.setDescription(task.getDescription().intern());
+        }
+    }
+
+    /**
+     * Returns whether the task graph used for earliest finish times and critical paths is kept outside the Java heap.
+     *
+     * @return true if the off-heap task graph is enabled, false otherwise.
+     */
+    public boolean isOffHeapGraphEnabled() {
+        return taskGraph.isOffHeap();
+    }
+
+    /**
+     * Moves the task graph by id, which ReportEarliestFinishTime and ReportDuration run on, on or off the Java heap.
+     * When enabled, the prerequisites and subtasks, duration and cached earliest finish time of every task are
+     * kept in direct buffers as fixed-size records and packed rows of ids, instead of one array object per task,
+     * so the garbage collector has less to trace and copy. Reading a record costs an absolute buffer read
+     * instead of an array access. The tasks themselves stay on the heap, as every query and command returns them.
+     * The graph is rebuilt from the tasks on the next query, and the off-heap graph is disabled by default.
+     *
+     * @param enabled Whether the task graph should be kept outside the Java heap.
+     */
+    public void setOffHeapGraphEnabled(boolean enabled) {
+        taskGraph.setOffHeap(enabled);
+    }
+
+    /**
+     * Returns the sink the query methods write their output to.
+     *
+     * @return The output sink.
+     */
+    public OutputSink getOutputSink() {
+        return output;
+    }
+
+    /**
+     * Sets the sink the query methods write their output to.
+     * The query methods are printTask, printAllTasks, reportDuration, reportEarliestFinishTime, printAllCriteria and search;
+     * the messages of the other methods are still printed to System.out.
+     *
+     * @param output The output sink.
+     */
+    public void setOutputSink(OutputSink output) {
+        this.output = output;
+    }
+
+    /**
+     * Returns whether the TMS collects metrics.
+     *
+     * @return true if metrics are enabled, false otherwise.
+     */
+    public boolean isMetricsEnabled() {
+        return metrics != null;
+    }
+
+    /**
+     * Enables or disables the collection of metrics.
+     * Enabling metrics starts from empty histograms and counters; disabling them drops what was collected.
+     * Metrics are disabled by default.
+     *
+     * @param enabled Whether metrics should be collected.
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        if(enabled == isMetricsEnabled()) {
+            return;
+        }
+        metrics = enabled ? new Metrics() : null;
+        searchIndexes.setMetrics(metrics);
+    }
+
+    /**
+     * Returns the metrics collected so far.
+     * The latencies of commands are recorded by whoever runs them, such as Application.execute.
+     *
+     * @return The metrics, or null if metrics are disabled.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the current size of the task graph and of the undo history.
+     * The gauges are primitiveTasks, compositeTasks, criteria, edges (distinct prerequisite and subtask links),
+     * undoDepth and redoDepth. Tasks still held in a lazily loaded snapshot are not counted.
+     * Every gauge is read in constant time without reading any task, so they may be read while the TMS is changing,
+     * at the cost of being momentarily inconsistent with each other.
+     *
+     * @return A new map of the gauges by name, in a fixed order.
+     */
+    public Map<String, Long> getGauges() {
+        LinkedHashMap<String, Long> gauges = new LinkedHashMap<>();
+        gauges.put("primitiveTasks", (long) primitiveTask.size());
+        gauges.put("compositeTasks", (long) compositeTask.size());
+        gauges.put("criteria", (long) criterion.size());
+        gauges.put("edges", (long) dependencyIndex.edgeCount());
+        gauges.put("undoDepth", (long) undoHistory.size());
+        gauges.put("redoDepth", (long) redoHistory.size());
+        return gauges;
+    }
+
+    /**
+     * Prints the latency of every command run so far, the cache and index counters and the gauges.
+     * If metrics are disabled, a message saying so is printed instead.
+     */
+    public void printStats() {
+        Metrics current = metrics;
+        output.write(current == null ? "Metrics are disabled." + NEWLINE : current.format(getGauges()));
+    }
+
+    // adds one to a counter if metrics are enabled
+    private void count(String counter) {
+        Metrics current = metrics;
+        if(current != null) {
+            current.increment(counter);
+        }
+    }
+
+    // the primitive task of a name, read from a lazily loaded snapshot if needed, or null
+    private PrimitiveTask findPrimitiveTask(String name) {
+        PrimitiveTask task = primitiveTask.get(name);
+        if(task == null && snapshot != null && (task = snapshot.primitive(name)) != null) {
+            primitiveTask.put(name, task);
+        }
+        return task;
+    }
+
+    // the composite task of a name, read from a lazily loaded snapshot if needed, or null
+    private CompositeTask findCompositeTask(String name) {
+        CompositeTask task = compositeTask.get(name);
+        if(task == null && snapshot != null && (task = snapshot.composite(name)) != null) {
+            compositeTask.put(name, task);
+        }
+        return task;
+    }
+
+    // reads every task left in a lazily loaded snapshot and builds the indexes over all of them
+    void materializeAll() {
+        if(snapshot == null) {
+            return;
+        }
+        MappedSnapshot remaining = snapshot;
+        snapshot = null;
+        remaining.readAll(primitiveTask, compositeTask);
+        rebuildIndexes();
+    }
+
+    /**
+     * Returns the tasks and criteria as an immutable TaskVersion that can be read without a lock while the TMS changes.
+     * The first call after a change publishes a new version, copying only the tasks changed since the previous one.
+     * This method publishes, so it must not run in parallel with other methods; under ConcurrentTMS,
+     * use ConcurrentTMS.getVersion instead, which returns the version published by the latest change.
+     *
+     * @return The current version.
+     */
+    public TaskVersion getVersion() {
+        publish();
+        return version;
+    }
+
+    // the latest published version; may be read from any thread
+    TaskVersion publishedVersion() {
+        return version;
+    }
+
+    // publishes a new version if anything has changed since the previous one
+    void publish() {
+        if(!changedAll && !changedCriteria && changedTasks.isEmpty()) {
+            return;
+        }
+        materializeAll();
+        TaskVersion current = version;
+        PersistentMap<PrimitiveTask> primitives = changedAll ? PersistentMap.empty() : current.primitiveTaskMap();
+        PersistentMap<CompositeTask> composites = changedAll ? PersistentMap.empty() : current.compositeTaskMap();
+        PersistentMap<Criterion> criteria = current.criterionMap();
+        if(changedAll) {
+            for(Map.Entry<String, PrimitiveTask> entry : primitiveTask.entrySet()) {
+                primitives = primitives.plus(entry.getKey(), copyOf(entry.getValue()));
+            }
+            for(Map.Entry<String, CompositeTask> entry : compositeTask.entrySet()) {
+                composites = composites.plus(entry.getKey(), copyOf(entry.getValue()));
+            }
+        }
+        else {
+            for(String name : changedTasks) {
+                PrimitiveTask primitive = primitiveTask.get(name);
+                primitives = primitive == null ? primitives.minus(name) : primitives.plus(name, copyOf(primitive));
+                CompositeTask composite = compositeTask.get(name);
+                composites = composite == null ? composites.minus(name) : composites.plus(name, copyOf(composite));
+            }
+        }
+        if(changedAll || changedCriteria) {
+            // criteria are few and are replaced rather than changed, so the map is rebuilt and the criteria are shared
+            criteria = PersistentMap.empty();
+            for(Map.Entry<String, Criterion> entry : criterion.entrySet()) {
+                criteria = criteria.plus(entry.getKey(), entry.getValue());
+            }
+        }
+        version = new TaskVersion(current.getNumber() + 1, primitives, composites, criteria);
+        changedTasks.clear();
+        changedCriteria = false;
+        changedAll = false;
+    }
+
+    // records that a task was created, changed or removed since the version was published
+    private void taskChanged(String name) {
+        taskGraph.taskChanged(name);
+        if(changedAll) {
+            return;
+        }
+        changedTasks.add(name);
+        // past this point publishing copies most tasks anyway, so the names are no longer worth keeping
+        if(changedTasks.size() > 1024 + (primitiveTask.size() + compositeTask.size()) / 2) {
+            changedTasks.clear();
+            changedAll = true;
+        }
+    }
+
+    // drops the compiled criteria and records that the criteria changed since the version was published
+    private void criteriaChanged() {
+        criterionPlans.clear();
+        changedCriteria = true;
+    }
+
+    private static PrimitiveTask copyOf(PrimitiveTask task) {
+        String[] prerequisite = task.getPrerequisite();
+        return new PrimitiveTask(task.getName(), task.getDescription(), task.getDuration(), prerequisite == null ? null : prerequisite.clone());
+    }
+
+    private static CompositeTask copyOf(CompositeTask task) {
+        String[] subtask = task.getSubtask();
+        return new CompositeTask(task.getName(), task.getDescription(), subtask == null ? null : subtask.clone());
+    }
+
+    /**
+     * Opens a journal directory and records every later change in it.
+     * <p>
+     * If the directory already holds a journal, the tasks and criteria are replaced by the recovered state:
+     * the latest snapshot is loaded and the changes logged after it are replayed. Otherwise the current
+     * tasks and criteria become the first snapshot of the journal.
+     * <p>
+     * Each change is then appended to the log before it is applied, and the log is forced to disk in groups.
+     * When the log grows large it is folded into a new snapshot. The undo and redo history is not journaled.
+     *
+     * @param directory The path of the journal directory.
+     */
+    public void openJournal(String directory) {
+        closeJournal();
+        try {
+            Journal opened = Journal.open(new File(directory).toPath());
+            ArrayList<Journal.Record> records = opened.recover();
+            if(opened.snapshot() == null && records.isEmpty()) {
+                journal = opened;
+                compactJournal();
+                System.out.println("Journal started in " + directory + ".");
+                return;
+            }
+            snapshot = null;
+            HashMap<String, PrimitiveTask> primitives = new HashMap<String, PrimitiveTask>();
+            HashMap<String, CompositeTask> composites = new HashMap<String, CompositeTask>();
+            HashMap<String, Criterion> criteria = new HashMap<String, Criterion>();
+            if(opened.snapshot() != null) {
+                TaskSnapshot.read(opened.snapshot(), primitives, composites, criteria);
+            } else {
+                criteria.put("IsPrimitive", getCriterion().get("IsPrimitive"));
+            }
+            this.primitiveTask = primitives;
+            this.compositeTask = composites;
+            this.criterion = criteria;
+            rebuildIndexes();
+            PrintStream console = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try {
+                for(Journal.Record record : records) {
+                    replay(record);
+                }
+            } finally {
+                System.setOut(console);
+            }
+            journal = opened;
+            System.out.println("Recovered " + records.size() + " change(s) from the journal in " + directory + ".");
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            System.out.println("Failed to open the journal.");
+        }
+    }
+
+    /**
+     * Folds the journal into a snapshot of the current tasks and criteria and starts an empty log.
+     * Nothing is done if no journal is open.
+     */
+    public void compactJournal() {
+        if(journal == null) {
+            return;
+        }
+        try {
+            journal.compact(path -> TaskSnapshot.write(path, getPrimitiveTask(), getCompositeTask(), getCriterion()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Failed to compact the journal.");
+        }
+    }
+
+    /**
+     * Forces the pending journal records to disk and stops journaling.
+     * Nothing is done if no journal is open.
+     */
+    public void closeJournal() {
+        if(journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Failed to close the journal.");
+        }
+        journal = null;
+    }
+
+    // true if a change made now is a top-level change that has to be journaled
+    private boolean isJournaling() {
+        return journal != null && journalDepth == 0;
+    }
+
+    // appends the change to the journal, then applies it; changes made while applying it are part of it
+    private void journaled(Runnable change, int op, boolean undoRedo, boolean undo, String... args) {
+        try {
+            journal.append(op, undoRedo, undo, args);
+        } catch (UncheckedIOException e) {
+            e.printStackTrace();
+            System.out.println("Failed to write the journal.");
+            return;
+        }
+        journalDepth++;
+        try {
+            change.run();
+        } finally {
+            journalDepth--;
+        }
+        try {
+            if(journal.needsCompaction()) {
+                compactJournal();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void replay(Journal.Record record) {
+        String[] a = record.args;
+        switch (record.op) {
+            case Journal.CREATE_PRIMITIVE_TASK -> createPrimitiveTask(a[0], a[1], a[2], a[3], record.undoRedo, record.undo);
+            case Journal.CREATE_COMPOSITE_TASK -> createCompositeTask(a[0], a[1], a[2], record.undoRedo, record.undo);
+            case Journal.DELETE_TASK -> deleteTask(a[0], record.undoRedo, record.undo);
+            case Journal.CHANGE_TASK -> changeTask(a[0], a[1], a[2], record.undoRedo, record.undo);
+            case Journal.DEFINE_BASIC_CRITERION -> defineBasicCriterion(a[0], a[1], a[2], a[3], record.undoRedo, record.undo);
+            case Journal.DEFINE_NEGATED_CRITERION -> defineNegatedCriterion(a[0], a[1], record.undoRedo, record.undo);
+            case Journal.DEFINE_BINARY_CRITERION -> defineBinaryCriterion(a[0], a[1], a[2], a[3], record.undoRedo, record.undo);
+            case Journal.DELETE_CRITERION -> deleteCriterion(a[0], record.undo);
+            case Journal.IMPORT_BATCH -> importBatch(TaskBatch.fromArgs(a), record.undoRedo, record.undo);
+            case Journal.REMOVE_BATCH -> removeBatch(TaskBatch.fromArgs(a), record.undoRedo, record.undo);
+            default -> { }
+        }
+    }
+
+    /**
+     * Rebuilds the reverse-dependency index and the search indexes from the tasks in the task maps
+     * and drops every cached earliest finish time and compiled criterion.
+     * Used whenever the task maps are replaced as a whole.
+     */
+    private void rebuildIndexes() {
+        finishTimeCache.clear();
+        taskGraph.clear();
+        criteriaChanged();
+        changedAll = true;
+        dependencyIndex.clear();
+        searchIndexes.clear();
+        // every task has its id before any edge is recorded, so that the recorded arrays share the names of the tasks
+        if(primitiveTask != null) {
+            for(PrimitiveTask task : primitiveTask.values()) {
+                shareDescription(task);
+                searchIndexes.register(task);
+            }
+        }
+        if(compositeTask != null) {
+            for(CompositeTask task : compositeTask.values()) {
+                shareDescription(task);
+                searchIndexes.register(task);
+            }
+        }
+        if(primitiveTask != null) {
+            for(PrimitiveTask task : primitiveTask.values()) {
+                dependencyIndex.addPrerequisites(task.getName(), task.getPrerequisite());
+            }
+        }
+        if(compositeTask != null) {
+            for(CompositeTask task : compositeTask.values()) {
+                dependencyIndex.addSubtasks(task.getName(), task.getSubtask());
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of changes that can be undone or redone.
+     *
+     * @return The undo history limit.
+     */
+    public int getUndoHistoryLimit() {
+        return undoHistory.getLimit();
+    }
+
+    /**
+     * Sets the maximum number of changes that can be undone or redone.
+     * When more changes are made, the oldest ones can no longer be undone.
+     *
+     * @param limit The undo history limit, at least 1.
+     * @throws IllegalArgumentException If the limit is less than 1.
+     */
+    public void setUndoHistoryLimit(int limit) {
+        undoHistory.setLimit(limit);
+        redoHistory.setLimit(limit);
     }
 
     /**
-     * Reverses the most recent change to the task management system by executing the undo command stored in the undo stack.
-     * If the undo stack is empty, prints a message indicating there's nothing to undo and returns immediately.
-     * The undo command is a string containing the operation to undo and the arguments it was originally called with.
-     * The operation to undo is determined by the first word of the undo command.
-     * Depending on the operation, the necessary method is called with the original arguments to reverse the change.
-     * If the operation isn't recognized, nothing is done.
+     * Reverses the most recent change to the task management system by applying the entry stored in the undo history.
+     * If the undo history is empty, prints a message indicating there's nothing to undo and returns immediately.
+     * The entry holds the operation that reverses the change and the arguments to call it with,
+     * and applying it records the matching entry in the redo history.
      */
     public void undo() {
-        if(undoStack.isEmpty()) {
+        if(undoHistory.isEmpty()) {
             System.out.println("nothing to undo.");
             return;
         }
-        String[] undoCommand = undoStack.pop().split(" ");
-        switch (undoCommand[0]) {
-            case "CreatePrimitiveTask" -> { createPrimitiveTask(undoCommand[1], undoCommand[2], undoCommand[3], undoCommand[4], true, true); }
-            case "CreateCompositeTask" -> { createCompositeTask(undoCommand[1], undoCommand[2], undoCommand[3], true, true); }
-            case "DeleteTask" -> { deleteTask(undoCommand[1], true, true); }
-            case "ChangeTask" -> { changeTask(undoCommand[1], undoCommand[2], undoCommand[3], true, true);}
-            case "DefineBasicCriterion" -> { defineBasicCriterion(undoCommand[1], undoCommand[2], undoCommand[3], undoCommand[4], true, true);}
-            case "DefineNegatedCriterion" -> { defineNegatedCriterion(undoCommand[1], undoCommand[2], true, true);}
-            case "DefineBinaryCriterion" -> { defineBinaryCriterion(undoCommand[1], undoCommand[2], undoCommand[3], undoCommand[4], true, true);}
-            case "DeleteCriterion" -> { deleteCriterion(undoCommand[1], true);}
-        }
+        undoHistory.pop().apply(this, true);
     }
 
     /**
-     * Reapplies the most recent change to the task management system that was undone by executing the redo command stored in the redo stack.
-     * If the redo stack is empty, prints a message indicating there's nothing to redo and returns immediately.
-     * The redo command is a string containing the operation to redo and the arguments it was originally called with.
-     * The operation to redo is determined by the first word of the redo command.
-     * Depending on the operation, the necessary method is called with the original arguments to reapply the change.
-     * If the operation isn't recognized, nothing is done.
+     * Reapplies the most recent change to the task management system that was undone by applying the entry stored in the redo history.
+     * If the redo history is empty, prints a message indicating there's nothing to redo and returns immediately.
+     * The entry holds the operation that reapplies the change and the arguments to call it with,
+     * and applying it records the matching entry in the undo history.
      */
     public void redo() {
-        if(redoStack.isEmpty()) {
+        if(redoHistory.isEmpty()) {
             System.out.println("nothing to redo.");
             return;
         }
-        String[] redoCommand = redoStack.pop().split(" ");
-        switch (redoCommand[0]) {
-            case "CreatePrimitiveTask" -> { createPrimitiveTask(redoCommand[1], redoCommand[2], redoCommand[3], redoCommand[4], true, false); }
-            case "CreateCompositeTask" -> { createCompositeTask(redoCommand[1], redoCommand[2], redoCommand[3], true, false); }
-            case "DeleteTask" -> { deleteTask(redoCommand[1], true, false); }
-            case "ChangeTask" -> { changeTask(redoCommand[1], redoCommand[2], redoCommand[3], true, false);}
-            case "DefineBasicCriterion" -> { defineBasicCriterion(redoCommand[1], redoCommand[2], redoCommand[3], redoCommand[4], true, false);}
-            case "DefineNegatedCriterion" -> { defineNegatedCriterion(redoCommand[1], redoCommand[2], true, false);}
-            case "DefineBinaryCriterion" -> { defineBinaryCriterion(redoCommand[1], redoCommand[2], redoCommand[3], redoCommand[4], true, false);}
-            case "DeleteCriterion" -> { deleteCriterion(redoCommand[1], true);}
-        }
+        redoHistory.pop().apply(this, false);
     }
 
     /**
@@ -166,6 +710,11 @@ public class TMS {
      * @param undo Whether undo should be performed
      */
     public void createPrimitiveTask(String name, String description, String duration, String prerequisite, boolean undoRedo, boolean undo) {
+        if(isJournaling()) {
+            journaled(() -> createPrimitiveTask(name, description, duration, prerequisite, undoRedo, undo),
+                    Journal.CREATE_PRIMITIVE_TASK, undoRedo, undo, name, description, duration, prerequisite);
+            return;
+        }
         if(getPrimitiveTask().containsKey(name) || getCompositeTask().containsKey(name)) {
             System.out.println(name + " already existed.");
             return;
@@ -216,17 +765,21 @@ public class TMS {
                 }
             }
         }
-        PrimitiveTask newPrimitiveTask = new PrimitiveTask(name, description, durationInDouble, listOfPrerequisite);
+        PrimitiveTask newPrimitiveTask = new PrimitiveTask(name, shared(description), durationInDouble, listOfPrerequisite);
         if(undoRedo) {
             if(undo) {
-                redoStack.push("DeleteTask " + name);
+                redoHistory.push(HistoryEntry.deleteTask(name));
             } else {
-                undoStack.push("DeleteTask " + name);
+                undoHistory.push(HistoryEntry.deleteTask(name));
             }
         } else {
-            undoStack.push("DeleteTask " + name);
+            undoHistory.push(HistoryEntry.deleteTask(name));
         }
         getPrimitiveTask().put(name, newPrimitiveTask);
+        taskChanged(name);
+        searchIndexes.register(newPrimitiveTask);
+        dependencyIndex.addPrerequisites(name, listOfPrerequisite);
+        invalidateFinishTime(name);
         System.out.println(name + " has been successfully created.");
     }
 
@@ -247,6 +800,11 @@ public class TMS {
      * @param undo Whether undo should be performed
      */
     public void createCompositeTask(String name0, String description, String subtask, boolean undoRedo, boolean undo) {
+        if(isJournaling()) {
+            journaled(() -> createCompositeTask(name0, description, subtask, undoRedo, undo),
+                    Journal.CREATE_COMPOSITE_TASK, undoRedo, undo, name0, description, subtask);
+            return;
+        }
         if(getPrimitiveTask().containsKey(name0) || getCompositeTask().containsKey(name0)) {
             System.out.println(name0 + " already existed.");
             return;
@@ -285,17 +843,21 @@ public class TMS {
                 }
             }
         }
-        CompositeTask newCompositeTask = new CompositeTask(name0, description, listOfSubtasks);
+        CompositeTask newCompositeTask = new CompositeTask(name0, shared(description), listOfSubtasks);
         if(undoRedo) {
             if(undo) {
-                redoStack.push("DeleteTask " + name0);
+                redoHistory.push(HistoryEntry.deleteTask(name0));
             } else {
-                undoStack.push("DeleteTask " + name0);
+                undoHistory.push(HistoryEntry.deleteTask(name0));
             }
         } else {
-            undoStack.push("DeleteTask " + name0);
+            undoHistory.push(HistoryEntry.deleteTask(name0));
         }
         getCompositeTask().put(name0, newCompositeTask);
+        taskChanged(name0);
+        searchIndexes.register(newCompositeTask);
+        dependencyIndex.addSubtasks(name0, listOfSubtasks);
+        invalidateFinishTime(name0);
         System.out.println(name0 + " has been successfully created.");
     }
 
@@ -316,33 +878,40 @@ public class TMS {
      * @return true if the task is successfully deleted, false otherwise.
      */
     public boolean deleteTask(String name, boolean undoRedo, boolean undo) {
+        if(isJournaling()) {
+            boolean[] deleted = new boolean[1];
+            journaled(() -> deleted[0] = deleteTask(name, undoRedo, undo), Journal.DELETE_TASK, undoRedo, undo, name);
+            return deleted[0];
+        }
         if(getPrimitiveTask().containsKey(name)) { // if name is a simple task
-            for(String task : getPrimitiveTask().keySet()) {
-                if(task.equals(name) || getPrimitiveTask().get(task).getPrerequisite() == null) {
-                    continue;
-                }
-                for(String j : getPrimitiveTask().get(task).getPrerequisite()) {
-                    if(j.equals(name)) {
-                        System.out.println(name + " is a prerequisite of other task(s).");
-                        return false;
-                    }
+            // only the tasks recorded in the reverse index can refer to name
+            for(String task : dependencyIndex.getDependents(name)) {
+                if(!task.equals(name)) {
+                    System.out.println(name + " is a prerequisite of other task(s).");
+                    return false;
                 }
             }
-            for(String task : getCompositeTask().keySet()) {
-                if(task.equals(name) || getCompositeTask().get(task).getSubtask() == null) {
+            invalidateFinishTime(name);
+            for(String task : new ArrayList<>(dependencyIndex.getParents(name))) {
+                CompositeTask parent = getCompositeTask().get(task);
+                if(parent == null || parent.getSubtask() == null) {
                     continue;
                 }
-                for(String j : getCompositeTask().get(task).getSubtask()) {
-                    if(j.equals(name)) {
-                        String[] temp = new String[getCompositeTask().get(task).getSubtask().length - 1];
-                        int k = -1;
-                        for(int i = 0; i < getCompositeTask().get(task).getSubtask().length; i++) {
-                            if(getCompositeTask().get(task).getSubtask()[i].equals(name)) { continue; }
-                            temp[++k] = getCompositeTask().get(task).getSubtask()[i];
-                        }
-                        getCompositeTask().get(task).setSubtask(temp);
-                    }
+                String[] listOfSubtask = parent.getSubtask();
+                int remaining = 0;
+                for(String j : listOfSubtask) {
+                    if(!j.equals(name)) { remaining++; }
                 }
+                String[] temp = new String[remaining];
+                int k = -1;
+                for(String j : listOfSubtask) {
+                    if(j.equals(name)) { continue; }
+                    temp[++k] = j;
+                }
+                dependencyIndex.removeSubtasks(task, listOfSubtask);
+                parent.setSubtask(temp);
+                taskChanged(task);
+                dependencyIndex.addSubtasks(task, temp);
             }
             String tempPrerequisite = ",";
             if(getPrimitiveTask().get(name).getPrerequisite() != null) {
@@ -350,16 +919,19 @@ public class TMS {
             }
             if(undoRedo) {
                 if(undo) {
-                    redoStack.push("CreatePrimitiveTask " + name + " " + getPrimitiveTask().get(name).getDescription() + " " + getPrimitiveTask().get(name).getDuration() + " " + tempPrerequisite);
+                    redoHistory.push(HistoryEntry.createPrimitiveTask(name, getPrimitiveTask().get(name).getDescription(), getPrimitiveTask().get(name).getDuration(), tempPrerequisite));
                 } else {
-                    undoStack.push("CreatePrimitiveTask " + name + " " + getPrimitiveTask().get(name).getDescription() + " " + getPrimitiveTask().get(name).getDuration() + " " + tempPrerequisite);
+                    undoHistory.push(HistoryEntry.createPrimitiveTask(name, getPrimitiveTask().get(name).getDescription(), getPrimitiveTask().get(name).getDuration(), tempPrerequisite));
                 }
             }
             else {
-                undoStack.push("CreatePrimitiveTask " + name + " " + getPrimitiveTask().get(name).getDescription() + " " + getPrimitiveTask().get(name).getDuration() + " " + tempPrerequisite);
+                undoHistory.push(HistoryEntry.createPrimitiveTask(name, getPrimitiveTask().get(name).getDescription(), getPrimitiveTask().get(name).getDuration(), tempPrerequisite));
             }
             System.out.println(name + " has been successfully deleted.");
+            dependencyIndex.removePrerequisites(name, getPrimitiveTask().get(name).getPrerequisite());
             getPrimitiveTask().remove(name);
+            taskChanged(name);
+            searchIndexes.unregister(name);
         } else if (getCompositeTask().containsKey(name)) { // if name is a composite task
             boolean deletionCheck = true;
             for(String task : getCompositeTask().get(name).getSubtask()) {
@@ -375,16 +947,20 @@ public class TMS {
             }
             if(undoRedo) {
                 if(undo) {
-                    redoStack.push("CreateCompositeTask " + name + " " + getCompositeTask().get(name).getDescription() + " " + tempSubtask);
+                    redoHistory.push(HistoryEntry.createCompositeTask(name, getCompositeTask().get(name).getDescription(), tempSubtask));
                 } else {
-                    undoStack.push("CreateCompositeTask " + name + " " + getCompositeTask().get(name).getDescription() + " " + tempSubtask);
+                    undoHistory.push(HistoryEntry.createCompositeTask(name, getCompositeTask().get(name).getDescription(), tempSubtask));
                 }
             }
             else {
-                undoStack.push("CreateCompositeTask " + name + " " + getCompositeTask().get(name).getDescription() + " " + tempSubtask);
+                undoHistory.push(HistoryEntry.createCompositeTask(name, getCompositeTask().get(name).getDescription(), tempSubtask));
             }
             System.out.println(name + " has been successfully deleted.");
+            invalidateFinishTime(name);
+            dependencyIndex.removeSubtasks(name, getCompositeTask().get(name).getSubtask());
             getCompositeTask().remove(name);
+            taskChanged(name);
+            searchIndexes.unregister(name);
         } else { // if name does not exist
             System.out.println(name + " does not exist.");
             return false;
@@ -408,6 +984,11 @@ public class TMS {
      * @param undo Whether undo should be performed
      */
     public void changeTask(String name, String property, String newValue, boolean undoRedo, boolean undo) {
+        if(isJournaling()) {
+            journaled(() -> changeTask(name, property, newValue, undoRedo, undo),
+                    Journal.CHANGE_TASK, undoRedo, undo, name, property, newValue);
+            return;
+        }
         if(getPrimitiveTask().containsKey(name)) { // if name is a simple task
             switch (property) {
                 case "name" -> {
@@ -415,25 +996,31 @@ public class TMS {
                         System.out.println(newValue + " already existed.");
                         return;
                     }
-                    for(String i : getPrimitiveTask().keySet()) { // if name is a simple task
+                    // the old task goes away, so its own edges are dropped before the neighbours are rewritten
+                    invalidateFinishTime(name);
+                    dependencyIndex.removePrerequisites(name, getPrimitiveTask().get(name).getPrerequisite());
+                    for(String i : dependencyIndex.getDependents(name)) {
                         String[] listOfPrerequisite = getPrimitiveTask().get(i).getPrerequisite();
-                        if(i.equals(name) || listOfPrerequisite == null) { continue; }
                         for(int j = 0; j < listOfPrerequisite.length; j++) {
                             if(listOfPrerequisite[j].equals(name)) {
                                 listOfPrerequisite[j] = newValue;
                             }
                         }
                         getPrimitiveTask().get(i).setPrerequisite(listOfPrerequisite);
+                        taskChanged(i);
                     }
-                    for(String i : getCompositeTask().keySet()) {
+                    for(String i : dependencyIndex.getParents(name)) {
                         String[] listOfSubtask = getCompositeTask().get(i).getSubtask();
-                        if(listOfSubtask == null) { continue; }
                         for(int j = 0; j < listOfSubtask.length; j++) {
                             if(listOfSubtask[j].equals(name)) {
                                 listOfSubtask[j] = newValue;
                             }
                         }
+                        getCompositeTask().get(i).setSubtask(listOfSubtask);
+                        taskChanged(i);
                     }
+                    dependencyIndex.renameDependents(name, newValue);
+                    dependencyIndex.renameParents(name, newValue);
                     String tempDescription = getPrimitiveTask().get(name).getDescription();
                     String tempDuration = getPrimitiveTask().get(name).getDuration() + "";
                     String tempPrerequisite = ",";
@@ -442,20 +1029,25 @@ public class TMS {
                     }
                     createPrimitiveTask(newValue, tempDescription, tempDuration, tempPrerequisite, false, false);
                     getPrimitiveTask().remove(name);
+                    taskChanged(name);
+                    searchIndexes.unregister(name);
                     System.out.println(name + "'s " + property + " has been successfully changed.");
                     if(undoRedo && undo) {
-                        redoStack.push("ChangeTask " + newValue + " " + property + " " + name);
+                        redoHistory.push(HistoryEntry.changeTask(newValue, property, name));
                     } else {
-                        undoStack.push("ChangeTask " + newValue + " " + property + " " + name);
+                        undoHistory.push(HistoryEntry.changeTask(newValue, property, name));
                     }
                 }
                 case "description" -> {
                     if(undoRedo && undo) {
-                        redoStack.push("ChangeTask " + name + " " + property + " " + getPrimitiveTask().get(name).getDescription());
+                        redoHistory.push(HistoryEntry.changeTask(name, property, getPrimitiveTask().get(name).getDescription()));
                     } else {
-                        undoStack.push("ChangeTask " + name + " " + property + " " + getPrimitiveTask().get(name).getDescription());
+                        undoHistory.push(HistoryEntry.changeTask(name, property, getPrimitiveTask().get(name).getDescription()));
                     }
-                    getPrimitiveTask().get(name).setDescription(newValue);
+                    String oldDescription = getPrimitiveTask().get(name).getDescription();
+                    getPrimitiveTask().get(name).setDescription(shared(newValue));
+                    taskChanged(name);
+                    searchIndexes.descriptionChanged(name, oldDescription);
                     System.out.println(name + "'s " + property + " has been successfully changed.");
                 }
                 case "duration" -> {
@@ -470,11 +1062,15 @@ public class TMS {
                         return;
                     }
                     if(undoRedo && undo) {
-                        redoStack.push("ChangeTask " + name + " " + property + " " + getPrimitiveTask().get(name).getDuration());
+                        redoHistory.push(HistoryEntry.changeDuration(name, getPrimitiveTask().get(name).getDuration()));
                     } else {
-                        undoStack.push("ChangeTask " + name + " " + property + " " + getPrimitiveTask().get(name).getDuration());
+                        undoHistory.push(HistoryEntry.changeDuration(name, getPrimitiveTask().get(name).getDuration()));
                     }
+                    double oldDuration = getPrimitiveTask().get(name).getDuration();
                     getPrimitiveTask().get(name).setDuration(Double.parseDouble(newValue));
+                    taskChanged(name);
+                    searchIndexes.durationChanged(name, oldDuration);
+                    invalidateFinishTime(name);
                     System.out.println(name + "'s " + property + " has been successfully changed.");
                 }
                 case "prerequisites" -> {
@@ -495,11 +1091,15 @@ public class TMS {
                         tempPrerequisite = String.join(",", getPrimitiveTask().get(name).getPrerequisite());
                     }
                     if(undoRedo && undo) {
-                        redoStack.push("ChangeTask " + name + " " + property + " " + tempPrerequisite);
+                        redoHistory.push(HistoryEntry.changeTask(name, property, tempPrerequisite));
                     } else {
-                        undoStack.push("ChangeTask " + name + " " + property + " " + tempPrerequisite);
+                        undoHistory.push(HistoryEntry.changeTask(name, property, tempPrerequisite));
                     }
+                    dependencyIndex.removePrerequisites(name, getPrimitiveTask().get(name).getPrerequisite());
                     getPrimitiveTask().get(name).setPrerequisite(listOfPrerequisite);
+                    taskChanged(name);
+                    dependencyIndex.addPrerequisites(name, listOfPrerequisite);
+                    invalidateFinishTime(name);
                     System.out.println(name + "'s " + property + " has been successfully changed.");
                 }
                 default -> System.out.println(property + " does not exist");
@@ -512,10 +1112,10 @@ public class TMS {
                         System.out.println(newValue + " already existed.");
                         return;
                     }
-                    for(String task : getCompositeTask().keySet()) {
-                        if(task.equals(name)) {
-                            continue;
-                        }
+                    // the old task goes away, so its own edges are dropped before the neighbours are rewritten
+                    invalidateFinishTime(name);
+                    dependencyIndex.removeSubtasks(name, getCompositeTask().get(name).getSubtask());
+                    for(String task : dependencyIndex.getParents(name)) {
                         String[] listOfSubtask = getCompositeTask().get(task).getSubtask();
                         for(int j = 0; j < listOfSubtask.length; j++) {
                             if(listOfSubtask[j].equals(name)) {
@@ -523,25 +1123,32 @@ public class TMS {
                             }
                         }
                         getCompositeTask().get(task).setSubtask(listOfSubtask);
+                        taskChanged(task);
                     }
+                    dependencyIndex.renameParents(name, newValue);
                     String tempDescription = getCompositeTask().get(name).getDescription();
                     String tempSubtask = String.join(",", getCompositeTask().get(name).getSubtask());
                     createCompositeTask(newValue, tempDescription, tempSubtask, false, false);
                     if(undoRedo && undo) {
-                        redoStack.push("ChangeTask " + newValue + " " + property + " " + name);
+                        redoHistory.push(HistoryEntry.changeTask(newValue, property, name));
                     } else {
-                        undoStack.push("ChangeTask " + newValue + " " + property + " " + name);
+                        undoHistory.push(HistoryEntry.changeTask(newValue, property, name));
                     }
                     getCompositeTask().remove(name);
+                    taskChanged(name);
+                    searchIndexes.unregister(name);
                     System.out.println(name + "'s " + property + " has been successfully changed.");
                 }
                 case "description" -> {
                     if(undoRedo && undo) {
-                        redoStack.push("ChangeTask " + name + " " + property + " " + getCompositeTask().get(name).getDescription());
+                        redoHistory.push(HistoryEntry.changeTask(name, property, getCompositeTask().get(name).getDescription()));
                     } else {
-                        undoStack.push("ChangeTask " + name + " " + property + " " + getCompositeTask().get(name).getDescription());
+                        undoHistory.push(HistoryEntry.changeTask(name, property, getCompositeTask().get(name).getDescription()));
                     }
-                    getCompositeTask().get(name).setDescription(newValue);
+                    String oldDescription = getCompositeTask().get(name).getDescription();
+                    getCompositeTask().get(name).setDescription(shared(newValue));
+                    taskChanged(name);
+                    searchIndexes.descriptionChanged(name, oldDescription);
                     System.out.println(name + "'s " + property + " has been successfully changed.");
                 }
                 case "subtasks" -> {
@@ -562,11 +1169,15 @@ public class TMS {
                         tempSubtask = String.join(",", getCompositeTask().get(name).getSubtask());
                     }
                     if(undoRedo && undo) {
-                        redoStack.push("ChangeTask " + name + " " + property + " " + tempSubtask);
+                        redoHistory.push(HistoryEntry.changeTask(name, property, tempSubtask));
                     } else {
-                        undoStack.push("ChangeTask " + name + " " + property + " " + tempSubtask);
+                        undoHistory.push(HistoryEntry.changeTask(name, property, tempSubtask));
                     }
+                    dependencyIndex.removeSubtasks(name, getCompositeTask().get(name).getSubtask());
                     getCompositeTask().get(name).setSubtask(listOfSubtask);
+                    taskChanged(name);
+                    dependencyIndex.addSubtasks(name, getCompositeTask().get(name).getSubtask());
+                    invalidateFinishTime(name);
                     System.out.println(name + "'s " + property + " has been successfully changed.");
                 }
                 default -> System.out.println(property + " does not exist");
@@ -586,33 +1197,55 @@ public class TMS {
      * @param taskName The name of the task to be printed.
      */
     public void printTask(String taskName) {
-        if(getPrimitiveTask().containsKey(taskName)) {
-            System.out.print(taskName + " -> ");
-            System.out.print("description: " + getPrimitiveTask().get(taskName).getDescription() + ", ");
-            System.out.print("duration: " + getPrimitiveTask().get(taskName).getDuration() + ", ");
-            System.out.print("prerequisite(s): ");
-            if(getPrimitiveTask().get(taskName).getPrerequisite() == null) {
-                System.out.print("null");
-            } else {
-                for(String j : getPrimitiveTask().get(taskName).getPrerequisite()) {
-                    System.out.print(j + " ");
-                }
-            }
-            System.out.println();
-        } else if(getCompositeTask().containsKey(taskName)) {
-            System.out.print(taskName + " -> ");
-            System.out.print("description: " + getCompositeTask().get(taskName).getDescription() + ", ");
-            System.out.print("subtasks: ");
-            if(getCompositeTask().get(taskName).getSubtask() == null) {
-                System.out.print("null");
-            } else {
-                for(String j : getCompositeTask().get(taskName).getSubtask()) {
-                    System.out.print(j + " ");
-                }
-            }
-            System.out.println();
+        StringBuilder out = new StringBuilder();
+        appendTask(out, taskName, getTask(taskName));
+        output.write(out);
+    }
+
+    /**
+     * Returns a task of the task management system without printing anything.
+     *
+     * @param taskName The name of the task.
+     * @return The PrimitiveTask or CompositeTask of that name, or null if the task does not exist.
+     */
+    public Task getTask(String taskName) {
+        PrimitiveTask primitive = findPrimitiveTask(taskName);
+        return primitive != null ? primitive : findCompositeTask(taskName);
+    }
+
+    // formats a task as one line, the way printTask prints it
+    private static void appendTask(StringBuilder out, String taskName, Task task) {
+        if(task instanceof PrimitiveTask primitive) {
+            out.append(taskName).append(" -> description: ").append(primitive.getDescription())
+                    .append(", duration: ").append(primitive.getDuration()).append(", prerequisite(s): ");
+            appendNames(out, primitive.getPrerequisite());
+        } else if(task instanceof CompositeTask composite) {
+            out.append(taskName).append(" -> description: ").append(composite.getDescription()).append(", subtasks: ");
+            appendNames(out, composite.getSubtask());
         } else {
-            System.out.println(taskName + " does not exist.");
+            out.append(taskName).append(" does not exist.");
+        }
+        out.append(NEWLINE);
+    }
+
+    private static void appendNames(StringBuilder out, String[] names) {
+        if(names == null) {
+            out.append("null");
+            return;
+        }
+        for(String name : names) {
+            out.append(name).append(' ');
+        }
+    }
+
+    // hands a large block over to the output sink and starts a new one; a listing whose thread was interrupted stops there
+    private void writeIfFull(StringBuilder out) {
+        if(out.length() >= OUTPUT_BLOCK_SIZE) {
+            output.write(out);
+            out.setLength(0);
+            if(Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("the listing was cancelled");
+            }
         }
     }
 
@@ -625,14 +1258,31 @@ public class TMS {
      * The tasks are grouped by their type (simple or composite) and each group is preceded by a header.
      */
     public void printAllTasks() {
-        System.out.println("Here is the list of Simple Task(s)");
-        for(String i : getPrimitiveTask().keySet()) {
-            printTask(i);
-        }
-        System.out.println("\nHere is the list of Composite Task(s)");
-        for(String i : getCompositeTask().keySet()) {
-            printTask(i);
-        }
+        StringBuilder out = new StringBuilder();
+        out.append("Here is the list of Simple Task(s)").append(NEWLINE);
+        for(Map.Entry<String, PrimitiveTask> entry : getPrimitiveTask().entrySet()) {
+            appendTask(out, entry.getKey(), entry.getValue());
+            writeIfFull(out);
+        }
+        out.append("\nHere is the list of Composite Task(s)").append(NEWLINE);
+        for(Map.Entry<String, CompositeTask> entry : getCompositeTask().entrySet()) {
+            appendTask(out, entry.getKey(), entry.getValue());
+            writeIfFull(out);
+        }
+        output.write(out);
+    }
+
+    /**
+     * Returns every task of the task management system without printing anything:
+     * the primitive tasks first and then the composite tasks, in the order printAllTasks prints them.
+     *
+     * @return A new list of the tasks.
+     */
+    public List<Task> getAllTasks() {
+        ArrayList<Task> tasks = new ArrayList<>(getPrimitiveTask().size() + getCompositeTask().size());
+        tasks.addAll(getPrimitiveTask().values());
+        tasks.addAll(getCompositeTask().values());
+        return tasks;
     }
 
     /**
@@ -645,79 +1295,306 @@ public class TMS {
      * @param taskName The name of the task whose duration is to be reported
      */
     public void reportDuration(String taskName){
-        System.out.println(getDuration(taskName));
+        CriticalPath criticalPath = getCriticalPath(taskName);
+        StringBuilder out = new StringBuilder();
+        if(criticalPath == null) {
+            out.append("task not found : ").append(taskName).append(NEWLINE);
+        }
+        out.append(criticalPath == null ? 0d : criticalPath.getLength()).append(NEWLINE);
+        output.write(out);
+    }
+
+    /**
+     * Returns the duration of a task without printing anything.
+     * This is the duration of a primitive task, or the least time required to complete a composite task.
+     *
+     * @param taskName The name of the task.
+     * @return The duration, or 0 if the task does not exist.
+     */
+    public double getDuration(String taskName){
+        CriticalPath criticalPath = getCriticalPath(taskName);
+        return criticalPath == null ? 0d : criticalPath.getLength();
     }
-    private double getDuration(String taskName){
-        if(primitiveTask.containsKey(taskName)){
-            return primitiveTask.get(taskName).getDuration();
+
+    /**
+     * Computes the critical path of a task given its name.
+     * For a primitive task, the path is the task itself.
+     * For a composite task, the path is the longest chain of its primitive tasks linked by prerequisites,
+     * where a composite prerequisite stands for all of its primitive tasks.
+     * If the task does not exist, null is returned.
+     *
+     * @param taskName The name of the task whose critical path is to be computed
+     * @return The critical path of the task, or null if the task does not exist
+     */
+    public CriticalPath getCriticalPath(String taskName){
+        PrimitiveTask primitive = findPrimitiveTask(taskName);
+        if(primitive != null){
+            return new CriticalPath(primitive.getDuration(), new String[]{taskName});
         }
-        else if(compositeTask.containsKey(taskName)) {
-            return getCompositeTaskDuration(taskName);
+        else if(findCompositeTask(taskName) != null) {
+            return getCompositeCriticalPath(taskName);
         }
         else {
-            System.out.println("task not found : " + taskName);
-            return 0d;
+            return null;
         }
     }
-    private double getCompositeTaskDuration(String taskName){
-        List<String> breakedTasks = breakTasksIntoPrimitiveTasks(taskName);
-        if(breakedTasks.size() == 1){
-            return primitiveTask.get(breakedTasks.get(0)).getDuration();
-        }
-        AtomicReference<Double> maxDuration = new AtomicReference<>(0d);
-        Set<String> compositeTasks = new HashSet<>(breakedTasks);
-        breakedTasks.stream().forEach(str -> {
-            if(primitiveTask.get(str).getPrerequisite() == null || primitiveTask.get(str).getPrerequisite().length == 0) {
-                maxDuration.set(Math.max(maxDuration.get(), primitiveTask.get(str).getDuration()));
+    // a single topological pass over the primitive tasks of the composite, O(V+E) with primitive arrays
+    private CriticalPath getCompositeCriticalPath(String taskName){
+        if(snapshot == null){
+            taskGraph.refresh();
+            return getCompositeCriticalPath(searchIndexes.getIds().idOf(taskName));
+        }
+        // number the primitive tasks of the composite 0..n-1
+        HashMap<String, Integer> localId = new HashMap<>();
+        ArrayList<String> leaves = new ArrayList<>();
+        collectPrimitiveTasks(taskName, localId, leaves);
+        int n = leaves.size();
+        double[] duration = new double[n];
+        for(int i = 0; i < n; i++){
+            duration[i] = findPrimitiveTask(leaves.get(i)).getDuration();
+        }
+        // prerequisite edges inside the composite, as parallel from/to arrays
+        int[] edgeFrom = new int[Math.max(16, n)];
+        int[] edgeTo = new int[edgeFrom.length];
+        int edgeCount = 0;
+        HashMap<String, int[]> expandedComposite = new HashMap<>();
+        for(int to = 0; to < n; to++){
+            String[] prerequisite = findPrimitiveTask(leaves.get(to)).getPrerequisite();
+            if(prerequisite == null){
+                continue;
             }
-            else{
-                if(primitiveTask.get(str).getPrerequisite() != null && primitiveTask.get(str).getPrerequisite().length != 0){
-                    maxDuration.set(Math.max(maxDuration.get(),primitiveTask.get(str).getDuration()));
-                    for(String sub : primitiveTask.get(str).getPrerequisite()){
-                        if(compositeTasks.contains(sub)){
-                            double taskDuration = calculateDuration(sub , compositeTasks) + primitiveTask.get(str).getDuration();
-                            maxDuration.set(Math.max(taskDuration, maxDuration.get()));
-                        }
+            for(String str : prerequisite){
+                Integer from = localId.get(str);
+                int[] sources;
+                if(from != null){
+                    sources = new int[]{from};
+                }
+                else if(findCompositeTask(str) != null){
+                    sources = expandedComposite.computeIfAbsent(str, k -> expandWithin(k, localId));
+                }
+                else{
+                    continue;
+                }
+                for(int source : sources){
+                    if(edgeCount == edgeFrom.length){
+                        edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+                        edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
                     }
+                    edgeFrom[edgeCount] = source;
+                    edgeTo[edgeCount] = to;
+                    edgeCount++;
+                }
+            }
+        }
+        return longestPath(n, duration, edgeFrom, edgeTo, edgeCount, leaves::get);
+    }
+    // the same pass on the graph by task id, numbering the primitive tasks in the same order as the walk by name
+    private CriticalPath getCompositeCriticalPath(int id){
+        int[] leaves = collectPrimitiveTasks(id);
+        int n = leaves.length;
+        // the global ids in ascending order and their local ids, to find a local id by binary search
+        long[] byId = new long[n];
+        double[] duration = new double[n];
+        for(int i = 0; i < n; i++){
+            byId[i] = (long) leaves[i] << 32 | i;
+            duration[i] = taskGraph.durationOf(leaves[i]);
+        }
+        Arrays.sort(byId);
+        int[] edgeFrom = new int[Math.max(16, n)];
+        int[] edgeTo = new int[edgeFrom.length];
+        int edgeCount = 0;
+        HashMap<Integer, int[]> expandedComposite = new HashMap<>();
+        for(int to = 0; to < n; to++){
+            for(int p = 0; p < taskGraph.dependencyCount(leaves[to]); p++){
+                int prerequisite = taskGraph.dependency(leaves[to], p);
+                int[] sources;
+                int from = prerequisite < 0 ? -1 : localIdOf(byId, prerequisite);
+                if(from >= 0){
+                    sources = new int[]{from};
+                }
+                else if(prerequisite >= 0 && taskGraph.isComposite(prerequisite)){
+                    sources = expandedComposite.computeIfAbsent(prerequisite, k -> expandWithin(k, byId));
+                }
+                else{
+                    continue;
+                }
+                for(int source : sources){
+                    if(edgeCount == edgeFrom.length){
+                        edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+                        edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+                    }
+                    edgeFrom[edgeCount] = source;
+                    edgeTo[edgeCount] = to;
+                    edgeCount++;
                 }
-
             }
-        });
-        return maxDuration.get();
+        }
+        return longestPath(n, duration, edgeFrom, edgeTo, edgeCount, i -> searchIndexes.getIds().nameOf(leaves[i]));
     }
-    private List<String> breakTasksIntoPrimitiveTasks(String taskName){
-        List<String> res = new ArrayList<>();
-        breakTask(taskName , res);
-        return res;
+    // the ids of every primitive task reachable through the subtasks of a task, each one once, in the order of the walk by name
+    private int[] collectPrimitiveTasks(int id){
+        BitSet visited = new BitSet();
+        BitSet collected = new BitSet();
+        int[] leaves = new int[16];
+        int count = 0;
+        int[] pending = new int[16];
+        int top = 0;
+        pending[top++] = id;
+        while(top > 0){
+            int current = pending[--top];
+            if(current < 0){
+                continue;
+            }
+            if(!taskGraph.isComposite(current)){
+                if(!collected.get(current)){
+                    collected.set(current);
+                    if(count == leaves.length){
+                        leaves = Arrays.copyOf(leaves, count * 2);
+                    }
+                    leaves[count++] = current;
+                }
+            }
+            else if(!visited.get(current)){
+                visited.set(current);
+                int subtasks = taskGraph.dependencyCount(current);
+                if(top + subtasks > pending.length){
+                    pending = Arrays.copyOf(pending, Math.max(pending.length * 2, top + subtasks));
+                }
+                for(int i = subtasks - 1; i >= 0; i--){
+                    pending[top++] = taskGraph.dependency(current, i);
+                }
+            }
+        }
+        return Arrays.copyOf(leaves, count);
     }
-    private void breakTask(String taskName , List<String> res){
-        if(primitiveTask.containsKey(taskName)){
-            res.add(taskName);
+    // the local ids of the primitive tasks of a composite prerequisite that belong to the composite being measured
+    private int[] expandWithin(int id, long[] byId){
+        int[] leaves = collectPrimitiveTasks(id);
+        int[] sources = new int[leaves.length];
+        int count = 0;
+        for(int leaf : leaves){
+            int local = localIdOf(byId, leaf);
+            if(local >= 0){
+                sources[count++] = local;
+            }
         }
-        else if(compositeTask.containsKey(taskName)){
-            for(String str : compositeTask.get(taskName).getSubtask()){
-                breakTask(str , res);
+        return Arrays.copyOf(sources, count);
+    }
+    private static int localIdOf(long[] byId, int id){
+        int low = 0;
+        int high = byId.length - 1;
+        while(low <= high){
+            int middle = (low + high) >>> 1;
+            int found = (int) (byId[middle] >>> 32);
+            if(found < id){
+                low = middle + 1;
+            }
+            else if(found > id){
+                high = middle - 1;
+            }
+            else{
+                return (int) byId[middle];
             }
         }
+        return -1;
     }
-    //using recursion to calculate the valid duration;
-    private double calculateDuration(String task , Set<String> compositeTasks){
-        double taskDuration = primitiveTask.get(task).getDuration();
-        double res = taskDuration;
-        List<String> taskList = new ArrayList<>();
-        if(primitiveTask.get(task).getPrerequisite() == null || primitiveTask.get(task).getPrerequisite().length == 0){
-            return primitiveTask.get(task).getDuration();
+    // the longest chain through n tasks given their durations and prerequisite edges, named by local id
+    private static CriticalPath longestPath(int n, double[] duration, int[] edgeFrom, int[] edgeTo, int edgeCount, IntFunction<String> nameOf){
+        // compressed adjacency: successors of i are successor[offset[i]..offset[i+1])
+        int[] offset = new int[n + 1];
+        int[] inDegree = new int[n];
+        for(int e = 0; e < edgeCount; e++){
+            offset[edgeFrom[e] + 1]++;
+            inDegree[edgeTo[e]]++;
+        }
+        for(int i = 0; i < n; i++){
+            offset[i + 1] += offset[i];
+        }
+        int[] successor = new int[edgeCount];
+        int[] fill = Arrays.copyOf(offset, n);
+        for(int e = 0; e < edgeCount; e++){
+            successor[fill[edgeFrom[e]]++] = edgeTo[e];
+        }
+        // Kahn's algorithm; tasks caught in a prerequisite cycle are never released and keep their own duration
+        double[] finish = Arrays.copyOf(duration, n);
+        int[] previous = new int[n];
+        Arrays.fill(previous, -1);
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        for(int i = 0; i < n; i++){
+            if(inDegree[i] == 0){
+                queue[tail++] = i;
+            }
+        }
+        while(head < tail){
+            int from = queue[head++];
+            for(int e = offset[from]; e < offset[from + 1]; e++){
+                int to = successor[e];
+                if(finish[from] + duration[to] > finish[to]){
+                    finish[to] = finish[from] + duration[to];
+                    previous[to] = from;
+                }
+                if(--inDegree[to] == 0){
+                    queue[tail++] = to;
+                }
+            }
+        }
+        int last = -1;
+        for(int i = 0; i < n; i++){
+            if(last == -1 || finish[i] > finish[last]){
+                last = i;
+            }
+        }
+        if(last == -1){
+            return new CriticalPath(0d, new String[0]);
         }
-        for(String str : primitiveTask.get(task).getPrerequisite()){
-            List<String> strings = breakTasksIntoPrimitiveTasks(str);
-            taskList.addAll(strings);
+        int length = 0;
+        for(int i = last; i != -1; i = previous[i]){
+            length++;
         }
-        for (String s : taskList) {
-            if(compositeTasks.contains(s)){
-                res = Math.max(res , taskDuration + calculateDuration(s , compositeTasks));
+        String[] path = new String[length];
+        for(int i = last; i != -1; i = previous[i]){
+            path[--length] = nameOf.apply(i);
+        }
+        return new CriticalPath(finish[last], path);
+    }
+    // numbers every primitive task reachable through the subtasks of a task, each one once
+    private void collectPrimitiveTasks(String taskName, HashMap<String, Integer> localId, ArrayList<String> leaves){
+        HashSet<String> visited = new HashSet<>();
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        pending.push(taskName);
+        while(!pending.isEmpty()){
+            String str = pending.pop();
+            CompositeTask composite;
+            if(findPrimitiveTask(str) != null){
+                if(!localId.containsKey(str)){
+                    localId.put(str, leaves.size());
+                    leaves.add(str);
+                }
+            }
+            else if((composite = findCompositeTask(str)) != null && visited.add(str) && composite.getSubtask() != null){
+                String[] subtask = composite.getSubtask();
+                for(int i = subtask.length - 1; i >= 0; i--){
+                    pending.push(subtask[i]);
+                }
             }
         }
-        return res;
+    }
+    // the local ids of the primitive tasks of a composite prerequisite that belong to the composite being measured
+    private int[] expandWithin(String taskName, HashMap<String, Integer> localId){
+        HashMap<String, Integer> reachable = new HashMap<>();
+        ArrayList<String> leaves = new ArrayList<>();
+        collectPrimitiveTasks(taskName, reachable, leaves);
+        int[] sources = new int[leaves.size()];
+        int count = 0;
+        for(String str : leaves){
+            Integer id = localId.get(str);
+            if(id != null){
+                sources[count++] = id;
+            }
+        }
+        return Arrays.copyOf(sources, count);
     }
 
     /**
@@ -728,33 +1605,99 @@ public class TMS {
      * @param taskName The name of the task whose earliest finish time is to be reported
      */
     public void reportEarliestFinishTime(String taskName){
-        System.out.println(getEarliestFinishTime(taskName));
+        ArrayList<String> missingTasks = new ArrayList<>();
+        double finishTime = getEarliestFinishTime(taskName, missingTasks);
+        StringBuilder out = new StringBuilder();
+        for(String missing : missingTasks) {
+            out.append("Task Does Not Exist: ").append(missing).append(NEWLINE);
+        }
+        out.append(finishTime).append(NEWLINE);
+        output.write(out);
+    }
+
+    /**
+     * Returns the earliest finish time of a task without printing anything.
+     *
+     * @param taskName The name of the task.
+     * @return The earliest finish time, or -1 if the task does not exist.
+     */
+    public double getEarliestFinishTime(String taskName){
+        return getEarliestFinishTime(taskName, null);
     }
-    private double getEarliestFinishTime(String taskName){
-        if(primitiveTask.containsKey(taskName)){
-            if(primitiveTask.get(taskName).getPrerequisite() == null || primitiveTask.get(taskName).getPrerequisite().length == 0){
-                return handleSingleTaskForInput(taskName);
+
+    /**
+     * Returns the earliest finish time of a task without printing anything,
+     * and collects the tasks it depends on that do not exist. A missing task counts as finishing at -1.
+     *
+     * @param taskName     The name of the task.
+     * @param missingTasks The list the names of missing tasks are added to, or null.
+     * @return The earliest finish time, or -1 if the task does not exist.
+     */
+    public double getEarliestFinishTime(String taskName, List<String> missingTasks){
+        if(snapshot != null){
+            return getEarliestFinishTime(taskName, new boolean[1], missingTasks, finishTimeCache);
+        }
+        taskGraph.refresh();
+        int id = searchIndexes.getIds().idOf(taskName);
+        if(id >= 0){
+            double finishTime = taskGraph.getEarliestFinishTime(id, metrics);
+            if(!Double.isNaN(finishTime)){
+                return finishTime;
             }
-            else{
-                AtomicReference<Double> maxTime = new AtomicReference<>(0d);
-                Arrays.stream(primitiveTask.get(taskName).getPrerequisite()).forEach(str -> {
-                    maxTime.set(Math.max(maxTime.get(), getEarliestFinishTime(str)));
-                });
-                return primitiveTask.get(taskName).getDuration() + maxTime.get();
+        }
+        // the task or something it depends on does not exist, which only the walk by name reports
+        return getEarliestFinishTime(taskName, new boolean[1], missingTasks, new HashMap<>());
+    }
+    // memoized by task name; a result that depends on a missing task is not cached, so the task is reported again next time
+    private double getEarliestFinishTime(String taskName, boolean[] missing, List<String> missingTasks, Map<String, Double> finishTimeCache){
+        Double cached = finishTimeCache.get(taskName);
+        if(cached != null){
+            count("finishTime.cache.hit");
+            return cached;
+        }
+        count("finishTime.cache.miss");
+        boolean missingBefore = missing[0];
+        missing[0] = false;
+        double finishTime;
+        PrimitiveTask task = findPrimitiveTask(taskName);
+        CompositeTask composite = task == null ? findCompositeTask(taskName) : null;
+        if(task != null){
+            double maxTime = 0d;
+            if(task.getPrerequisite() != null){
+                for(String str : task.getPrerequisite()){
+                    maxTime = Math.max(maxTime, getEarliestFinishTime(str, missing, missingTasks, finishTimeCache));
+                }
+            }
+            finishTime = task.getDuration() + maxTime;
+        }
+        else if(composite != null){
+            double maxTime = 0d;
+            if(composite.getSubtask() != null){
+                for(String str : composite.getSubtask()){
+                    maxTime = Math.max(maxTime, getEarliestFinishTime(str, missing, missingTasks, finishTimeCache));
+                }
+            }
+            finishTime = maxTime;
+        }
+        else{
+            if(missingTasks != null){
+                missingTasks.add(taskName);
             }
+            missing[0] = true;
+            finishTime = -1d;
         }
-        if(compositeTask.containsKey(taskName)){
-            AtomicReference<Double> maxTime = new AtomicReference<>(0d);
-            Arrays.stream(compositeTask.get(taskName).getSubtask()).forEach(str -> {
-                maxTime.set(Math.max(maxTime.get(), getEarliestFinishTime(str)));
-            });
-            return maxTime.get();
+        if(!missing[0]){
+            finishTimeCache.put(taskName, finishTime);
         }
-        System.out.println("Task Does Not Exist: " + taskName);
-        return -1d;
+        missing[0] |= missingBefore;
+        return finishTime;
     }
-    private double handleSingleTaskForInput(String taskName){
-        return primitiveTask.get(taskName).getDuration();
+    // drops the cached finish time of a task and of every cached task downstream of it
+    private void invalidateFinishTime(String taskName){
+        if(!finishTimeCache.isEmpty()){
+            finishTimeCache.clear();
+        }
+        taskGraph.forgetFinishTimes(taskName);
     }
 
     /**
@@ -781,6 +1724,11 @@ public class TMS {
      * @param undo Whether undo should be performed
      */
     public void defineBasicCriterion(String name1, String property, String op, String value, boolean undoRedo, boolean undo) {
+        if(isJournaling()) {
+            journaled(() -> defineBasicCriterion(name1, property, op, value, undoRedo, undo),
+                    Journal.DEFINE_BASIC_CRITERION, undoRedo, undo, name1, property, op, value);
+            return;
+        }
         if(getPrimitiveTask().containsKey(name1) || getCompositeTask().containsKey(name1) || getCriterion().containsKey(name1)) {
             System.out.println(name1 + " already existed.");
             return;
@@ -826,37 +1774,43 @@ public class TMS {
         newCriterion.setIsNegated(false);
         newCriterion.setSubCriterion(null);
         getCriterion().put(name1, newCriterion);
+        criteriaChanged();
         System.out.println(name1 + " has been successfully defined.");
         if(undoRedo && undo) {
-            redoStack.push("DeleteCriterion " + name1);
+            redoHistory.push(HistoryEntry.deleteCriterion(name1));
         } else {
-            undoStack.push("DeleteCriterion " + name1);
+            undoHistory.push(HistoryEntry.deleteCriterion(name1));
         }
     }
-    private void deleteCriterion(String name, boolean undo) {
+    void deleteCriterion(String name, boolean undo) {
+        if(isJournaling()) {
+            journaled(() -> deleteCriterion(name, undo), Journal.DELETE_CRITERION, false, undo, name);
+            return;
+        }
         Criterion temp = getCriterion().get(name);
         if(temp.getIsBasic()) {
             if(temp.getIsNegated()) {
                 if(undo) {
-                    redoStack.push("DefineNegatedCriterion " + temp.getName() + " " + temp.getSubCriterion()[0]);
+                    redoHistory.push(HistoryEntry.defineNegatedCriterion(temp.getName(), temp.getSubCriterion()[0]));
                 } else {
-                    undoStack.push("DefineNegatedCriterion " + temp.getName() + " " + temp.getSubCriterion()[0]);
+                    undoHistory.push(HistoryEntry.defineNegatedCriterion(temp.getName(), temp.getSubCriterion()[0]));
                 }
             } else {
                 if(undo) {
-                    redoStack.push("DefineBasicCriterion " + temp.getName() + " " + temp.getProperty() + " " + temp.getOp() + " " + temp.getValue());
+                    redoHistory.push(HistoryEntry.defineBasicCriterion(temp.getName(), temp.getProperty(), temp.getOp(), temp.getValue()));
                 } else {
-                    undoStack.push("DefineBasicCriterion " + temp.getName() + " " + temp.getProperty() + " " + temp.getOp() + " " + temp.getValue());
+                    undoHistory.push(HistoryEntry.defineBasicCriterion(temp.getName(), temp.getProperty(), temp.getOp(), temp.getValue()));
                 }
             }
         } else {
             if(undo) {
-                redoStack.push("DefineBinaryCriterion " + temp.getName() + " " + temp.getSubCriterion()[0] + " " + temp.getSubCriterion()[2] + " " + temp.getSubCriterion()[1]);
+                redoHistory.push(HistoryEntry.defineBinaryCriterion(temp.getName(), temp.getSubCriterion()[0], temp.getSubCriterion()[2], temp.getSubCriterion()[1]));
             } else {
-                undoStack.push("DefineBinaryCriterion " + temp.getName() + " " + temp.getSubCriterion()[0] + " " + temp.getSubCriterion()[2] + " " + temp.getSubCriterion()[1]);
+                undoHistory.push(HistoryEntry.defineBinaryCriterion(temp.getName(), temp.getSubCriterion()[0], temp.getSubCriterion()[2], temp.getSubCriterion()[1]));
             }
         }
         getCriterion().remove(name);
+        criteriaChanged();
     }
 
     /**
@@ -878,6 +1832,11 @@ public class TMS {
      * @param undo Whether undo should be performed
      */
     public void defineNegatedCriterion(String name1, String name2, boolean undoRedo, boolean undo) {
+        if(isJournaling()) {
+            journaled(() -> defineNegatedCriterion(name1, name2, undoRedo, undo),
+                    Journal.DEFINE_NEGATED_CRITERION, undoRedo, undo, name1, name2);
+            return;
+        }
         if(getCriterion().containsKey(name1)) {
             System.out.println(name1 + " already existed.");
             return;
@@ -902,43 +1861,14 @@ public class TMS {
         if(name2.equals("IsPrimitive") && (!name1.equals("IsCompos"))) {
             System.out.println("We prefer 'IsCompos' rather than " + name1 + ". IsCompos has been created for you.");
         }
-        String tempProperty = getCriterion().get(name2).getProperty();
-        String[] tempOp = getCriterion().get(name2).getOp().split(" ");
-        String tempValue = getCriterion().get(name2).getValue();
-        StringBuilder updatedOp = new StringBuilder();
-        for (int i = 0; i < tempOp.length; i++) {
-            switch (tempOp[i]) {
-                case ">" -> tempOp[i] = "<=";
-                case "<" -> tempOp[i] = ">=";
-                case ">=" -> tempOp[i] = "<";
-                case "<=" -> tempOp[i] = ">";
-                case "==" -> tempOp[i] = "!=";
-                case "||" -> tempOp[i] = "&&";
-                case "&&" -> tempOp[i] = "||";
-                case "contains" -> tempOp[i] = "not-contains";
-                case "not-contains" -> tempOp[i] = "contains";
-                case "IsPrimitive" -> tempOp[i] = "IsComposite";
-                case "IsComposite" -> tempOp[i] = "IsPrimitive";
-            }
-            updatedOp.append(tempOp[i]).append(" ");
-        }
-
-        if(name2.equals("IsPrimitive")) {
-            Criterion newNegatedCriterion = new Criterion("IsCompos");
-            getCriterion().put("IsCompos", newNegatedCriterion);
-        } else {
-            Criterion newNegatedCriterion = new Criterion(name1, tempProperty, updatedOp.toString(), tempValue);
-            newNegatedCriterion.setIsNegated(true);
-            newNegatedCriterion.setIsBasic(true);
-            String[] subCriterion = {name2, null, null};
-            newNegatedCriterion.setSubCriterion(subCriterion);
-            getCriterion().put(name1, newNegatedCriterion);
-        }
+        Criterion newNegatedCriterion = negatedCriterion(name1, name2, getCriterion().get(name2));
+        getCriterion().put(newNegatedCriterion.getName(), newNegatedCriterion);
+        criteriaChanged();
         System.out.println(name1 + " has been successfully defined.");
         if(undoRedo && undo) {
-            redoStack.push("DeleteCriterion " + name1);
+            redoHistory.push(HistoryEntry.deleteCriterion(name1));
         } else {
-            undoStack.push("DeleteCriterion " + name1);
+            undoHistory.push(HistoryEntry.deleteCriterion(name1));
         }
     }
 
@@ -964,6 +1894,11 @@ public class TMS {
      * @param undo Whether undo should be performed
      */
     public void defineBinaryCriterion(String name1, String name2, String op, String name3, boolean undoRedo, boolean undo) {
+        if(isJournaling()) {
+            journaled(() -> defineBinaryCriterion(name1, name2, op, name3, undoRedo, undo),
+                    Journal.DEFINE_BINARY_CRITERION, undoRedo, undo, name1, name2, op, name3);
+            return;
+        }
         // name1 check
         if(getCriterion().containsKey(name1)) {
             System.out.println(name1 + " already existed.");
@@ -998,8 +1933,50 @@ public class TMS {
             System.out.println(name2 + " and " + name3 + " cannot be the same.");
             return;
         }
-        Criterion criterion1 = getCriterion().get(name2);
-        Criterion criterion2 = getCriterion().get(name3);
+        Criterion newBinaryCriterion = binaryCriterion(name1, name2, op, name3, getCriterion().get(name2), getCriterion().get(name3));
+        System.out.println(name1 + " has been successfully defined.");
+        getCriterion().put(name1, newBinaryCriterion);
+        criteriaChanged();
+        if(undoRedo && undo) {
+            redoHistory.push(HistoryEntry.deleteCriterion(name1));
+        } else {
+            undoHistory.push(HistoryEntry.deleteCriterion(name1));
+        }
+    }
+
+    // builds the negation of a criterion under a new name; the negation of IsPrimitive is always IsCompos
+    private static Criterion negatedCriterion(String name1, String name2, Criterion original) {
+        if(name2.equals("IsPrimitive")) {
+            return new Criterion("IsCompos");
+        }
+        String[] tempOp = original.getOp().split(" ");
+        StringBuilder updatedOp = new StringBuilder();
+        for (int i = 0; i < tempOp.length; i++) {
+            switch (tempOp[i]) {
+                case ">" -> tempOp[i] = "<=";
+                case "<" -> tempOp[i] = ">=";
+                case ">=" -> tempOp[i] = "<";
+                case "<=" -> tempOp[i] = ">";
+                case "==" -> tempOp[i] = "!=";
+                case "||" -> tempOp[i] = "&&";
+                case "&&" -> tempOp[i] = "||";
+                case "contains" -> tempOp[i] = "not-contains";
+                case "not-contains" -> tempOp[i] = "contains";
+                case "IsPrimitive" -> tempOp[i] = "IsComposite";
+                case "IsComposite" -> tempOp[i] = "IsPrimitive";
+            }
+            updatedOp.append(tempOp[i]).append(" ");
+        }
+        Criterion newNegatedCriterion = new Criterion(name1, original.getProperty(), updatedOp.toString(), original.getValue());
+        newNegatedCriterion.setIsNegated(true);
+        newNegatedCriterion.setIsBasic(true);
+        String[] subCriterion = {name2, null, null};
+        newNegatedCriterion.setSubCriterion(subCriterion);
+        return newNegatedCriterion;
+    }
+
+    // builds the combination of two criteria under a new name
+    private static Criterion binaryCriterion(String name1, String name2, String op, String name3, Criterion criterion1, Criterion criterion2) {
         String tempProperty = criterion1.getProperty() + " " + op + " " + criterion2.getProperty();
         String tempOp = criterion1.getOp() + " " + op + " " + criterion2.getOp();
         String tempValue = criterion1.getValue() + " " + op + " " + criterion2.getValue();
@@ -1008,258 +1985,471 @@ public class TMS {
         newBinaryCriterion.setIsNegated(false);
         String[] subCriterion = {name2, name3, op};
         newBinaryCriterion.setSubCriterion(subCriterion);
-        System.out.println(name1 + " has been successfully defined.");
-        getCriterion().put(name1, newBinaryCriterion);
-        if(undoRedo && undo) {
-            redoStack.push("DeleteCriterion " + name1);
-        } else {
-            undoStack.push("DeleteCriterion " + name1);
-        }
+        return newBinaryCriterion;
     }
 
     /**
-     * REQ12
-     * This method retrieves all criteria from the criterion list and prints them.
-     * For each criterion, the name, property, value, and operation are printed.
+     * Imports a batch of task and criterion definitions as one change.
      * <p>
-     * If the name of a criterion is "IsPrimitive" or "IsCompos", only the name is printed.
-     * Otherwise, the name is printed followed by the property, value, and operation of the criterion.
+     * The batch is checked as a whole before anything is changed: every name must be valid and new, every description valid,
+     * every duration a non-negative number, every property and op valid, and every referenced task or criterion must exist
+     * either in the system or in the batch, so definitions may refer to ones that come later in the batch.
+     * The tasks of the batch must not depend on each other in a cycle, and neither may its criteria.
+     * <p>
+     * If any check fails, one message naming the first problem is printed and nothing is imported. Otherwise every definition
+     * is applied, one summary line is printed and a single entry is recorded, so one undo removes the whole batch.
+     *
+     * @param batch The definitions to be imported.
+     * @param undoRedo Whether undoRedo is enabled
+     * @param undo Whether undo should be performed
+     * @return true if the batch was imported, false otherwise.
      */
-    public void printAllCriteria() {
-        System.out.println("Here is the list of Criteria(s)");
-        for(String i : getCriterion().keySet()) {
-            if(getCriterion().get(i).getName().equals("IsPrimitive")) {
-                System.out.println(i);
-            } else if(getCriterion().get(i).getName().equals("IsCompos")) {
-                System.out.println(i);
+    public boolean importBatch(TaskBatch batch, boolean undoRedo, boolean undo) {
+        if(isJournaling()) {
+            boolean[] imported = new boolean[1];
+            journaled(() -> imported[0] = importBatch(batch, undoRedo, undo), Journal.IMPORT_BATCH, undoRedo, undo, batch.toArgs());
+            return imported[0];
+        }
+        materializeAll();
+        TaskBatch imported = batch.copy();
+        String problem = checkBatch(imported);
+        if(problem != null) {
+            System.out.println("Nothing was imported: " + problem);
+            return false;
+        }
+        for(TaskBatch.TaskDefinition task : imported.getTasks()) {
+            if(task.primitive) {
+                PrimitiveTask newPrimitiveTask = new PrimitiveTask(task.name, shared(task.description), task.duration, task.references);
+                primitiveTask.put(task.name, newPrimitiveTask);
+                taskChanged(task.name);
+                searchIndexes.register(newPrimitiveTask);
+                dependencyIndex.addPrerequisites(task.name, task.references);
             } else {
-                System.out.print(i + " -> ");
-                System.out.print("property: " + getCriterion().get(i).getProperty() + ", ");
-                System.out.print("value: " + getCriterion().get(i).getValue() + ", ");
-                System.out.print("op: " + getCriterion().get(i).getOp());
-                System.out.println();
+                CompositeTask newCompositeTask = new CompositeTask(task.name, shared(task.description), task.references);
+                compositeTask.put(task.name, newCompositeTask);
+                taskChanged(task.name);
+                searchIndexes.register(newCompositeTask);
+                dependencyIndex.addSubtasks(task.name, task.references);
             }
         }
+        for(TaskBatch.TaskDefinition task : imported.getTasks()) {
+            invalidateFinishTime(task.name);
+        }
+        HashMap<String, TaskBatch.CriterionDefinition> pending = new HashMap<>();
+        for(TaskBatch.CriterionDefinition definition : imported.getCriteria()) {
+            pending.put(definition.name, definition);
+        }
+        for(TaskBatch.CriterionDefinition definition : imported.getCriteria()) {
+            defineBatchCriterion(definition, pending);
+        }
+        criteriaChanged();
+        if(undoRedo && undo) {
+            redoHistory.push(HistoryEntry.removeBatch(imported));
+        } else {
+            undoHistory.push(HistoryEntry.removeBatch(imported));
+        }
+        System.out.println(imported.getTasks().size() + " task(s) and " + imported.getCriteria().size() + " criteria have been successfully imported.");
+        return true;
     }
 
-    /**
-     * REQ13
-     * This method searches for tasks in the task management system that meet the criterion specified by the given name.
-     * <p>
-     * If the criterion does not exist, an error message is printed.
-     * If the criterion is a basic criterion, tasks that meet this criterion are searched for and printed.
-     * If the criterion is a binary criterion, tasks that meet both of the sub-criteria are searched for and printed.
-     * <p>
-     * If no tasks meet the criterion, a message is printed to indicate this.
-     *
-     * @param name The name of the criterion to search for tasks.
-     */
-    public void search(String name){
-        if(!getCriterion().containsKey(name)) {
-            System.out.println(name + " does not exist.");
+    // defines a criterion of an imported batch after the criteria of the batch it is built from
+    private void defineBatchCriterion(TaskBatch.CriterionDefinition definition, HashMap<String, TaskBatch.CriterionDefinition> pending) {
+        if(pending.remove(definition.name) == null) {
             return;
         }
-        if(getCriterion().get(name).getIsBasic()) {
-            if(basicCriteriaSearch(name).isEmpty()) {
-                System.out.println(name + " does not contain any task(s).");
-                return;
+        Criterion newCriterion;
+        switch (definition.kind) {
+            case TaskBatch.BASIC_CRITERION -> {
+                newCriterion = new Criterion(definition.name, definition.property, definition.op, definition.value);
+                newCriterion.setIsBasic(true);
+                newCriterion.setIsNegated(false);
+                newCriterion.setSubCriterion(null);
             }
-            System.out.println("Here is the list of task(s) of " + name);
-            for(String element : basicCriteriaSearch(name)) {
-                System.out.print(element + " ");
-            }
-        }
-        else {
-            Criterion criterion1 = getCriterion().get(name);
-            ArrayList<String> result = binaryCriteriaSearch(criterion1.getSubCriterion()[0], criterion1.getSubCriterion()[1], criterion1.getSubCriterion()[2]);
-            assert result != null;
-            if(result.isEmpty()) {
-                System.out.println(name + " does not contain any task(s).");
-                return;
+            case TaskBatch.NEGATED_CRITERION -> {
+                if(pending.containsKey(definition.first)) {
+                    defineBatchCriterion(pending.get(definition.first), pending);
+                }
+                newCriterion = negatedCriterion(definition.name, definition.first, criterion.get(definition.first));
             }
-            System.out.println("Here is the list of task(s) of " + name);
-            for (String element : result) {
-                System.out.print(element + " ");
+            default -> {
+                for(String name : new String[]{definition.first, definition.second}) {
+                    if(pending.containsKey(name)) {
+                        defineBatchCriterion(pending.get(name), pending);
+                    }
+                }
+                newCriterion = binaryCriterion(definition.name, definition.first, definition.op, definition.second,
+                        criterion.get(definition.first), criterion.get(definition.second));
             }
         }
-        System.out.println();
+        criterion.put(definition.name, newCriterion);
     }
-    private ArrayList<String> binaryCriteriaSearch(String name1, String name2, String op){
-        Criterion criterion1 = getCriterion().get(name1);
-        Criterion criterion2 = getCriterion().get(name2);
-        ArrayList<String> result = new ArrayList<String>();
-        ArrayList<String> result1;
-        ArrayList<String> result2;
 
-        if(!criterion1.getIsBasic()){
-            result1 = binaryCriteriaSearch(criterion1.getSubCriterion()[0], criterion1.getSubCriterion()[1], criterion1.getSubCriterion()[2]);
+    // the first problem that keeps a batch from being imported, or null if it can be imported
+    private String checkBatch(TaskBatch batch) {
+        List<TaskBatch.TaskDefinition> definitions = batch.getTasks();
+        HashMap<String, Integer> tasks = new HashMap<>(Math.max(16, definitions.size() * 4 / 3 + 1));
+        for(int i = 0; i < definitions.size(); i++) {
+            TaskBatch.TaskDefinition task = definitions.get(i);
+            String problem = checkName(task.name);
+            if(problem != null) {
+                return problem;
+            }
+            if(primitiveTask.containsKey(task.name) || compositeTask.containsKey(task.name) || tasks.put(task.name, i) != null) {
+                return task.name + " already existed.";
+            }
+            for(int j = 0; j < task.description.length(); j++) {
+                char c = task.description.charAt(j);
+                if(!(Character.isLetter(c) || Character.isDigit(c) || c == '-')) {
+                    return "description of " + task.name + " may only contain English letters, digits, and the hyphen letter (-).";
+                }
+            }
+            if(!(task.duration >= 0.0)) {
+                return "duration of " + task.name + " must be a positive real number.";
+            }
         }
-        else result1 = basicCriteriaSearch(name1);
-
-        if(!criterion2.getIsBasic()){
-            result2 = binaryCriteriaSearch(criterion2.getSubCriterion()[0], criterion2.getSubCriterion()[1], criterion1.getSubCriterion()[2]);
+        // every reference must resolve, and the tasks of the batch must be ordered by their references (Kahn's algorithm)
+        int[] unresolved = new int[definitions.size()];
+        int[][] targets = new int[definitions.size()][];
+        int[] referrerCount = new int[definitions.size() + 1];
+        for(int i = 0; i < definitions.size(); i++) {
+            TaskBatch.TaskDefinition task = definitions.get(i);
+            if(task.references == null) {
+                continue;
+            }
+            targets[i] = new int[task.references.length];
+            for(int j = 0; j < task.references.length; j++) {
+                Integer target = tasks.get(task.references[j]);
+                if(target != null) {
+                    targets[i][j] = target;
+                    referrerCount[target + 1]++;
+                    unresolved[i]++;
+                } else if(primitiveTask.containsKey(task.references[j]) || compositeTask.containsKey(task.references[j])) {
+                    targets[i][j] = -1;
+                } else {
+                    return "task(s) in " + (task.primitive ? "prerequisite" : "subtask") + " of " + task.name + " have not been defined yet.";
+                }
+            }
         }
-        else result2 = basicCriteriaSearch(name2);
-
-        if(op.equals("&&")){
-            assert result1 != null;
-            for(String task1 : result1){
-                assert result2 != null;
-                for(String task2 : result2){
-                    if(task1.equals(task2)){
-                        result.add(task1);
-                        break;
+        // the referrers of task t are referrers[referrerCount[t] .. referrerCount[t + 1])
+        for(int i = 0; i < definitions.size(); i++) {
+            referrerCount[i + 1] += referrerCount[i];
+        }
+        int[] referrers = new int[referrerCount[definitions.size()]];
+        int[] filled = Arrays.copyOf(referrerCount, definitions.size());
+        for(int i = 0; i < definitions.size(); i++) {
+            if(targets[i] != null) {
+                for(int target : targets[i]) {
+                    if(target >= 0) {
+                        referrers[filled[target]++] = i;
                     }
                 }
             }
-        } else if (op.equals("||")) {
-            HashSet<String> unionSet = new HashSet<>();
-            unionSet.addAll(basicCriteriaSearch(name1));
-            unionSet.addAll(basicCriteriaSearch(name2));
-            result = new ArrayList<>(unionSet);
-        } else {
-            System.out.println(op + " is not a valid op.");
-            return null;
         }
-        return result;
-    }
-    private ArrayList<String> basicCriteriaSearch(String name1){
-        ArrayList<String> result = new ArrayList<>();
-        if(getCriterion().get(name1).getName().equals("IsPrimitive")){
-            for (String task : getPrimitiveTask().keySet()){
-                if(getPrimitiveTask().containsKey(task)){
-                    result.add(task);
+        int[] ready = new int[definitions.size()];
+        int readyCount = 0;
+        for(int i = 0; i < definitions.size(); i++) {
+            if(unresolved[i] == 0) {
+                ready[readyCount++] = i;
+            }
+        }
+        for(int next = 0; next < readyCount; next++) {
+            int task = ready[next];
+            for(int k = referrerCount[task]; k < referrerCount[task + 1]; k++) {
+                if(--unresolved[referrers[k]] == 0) {
+                    ready[readyCount++] = referrers[k];
                 }
             }
-        } else if(getCriterion().get(name1).getName().equals("IsCompos")){
-            for (String task : getCompositeTask().keySet()){
-                if(getCompositeTask().containsKey(task)){
-                    result.add(task);
+        }
+        if(readyCount < definitions.size()) {
+            for(int i = 0; i < definitions.size(); i++) {
+                if(unresolved[i] > 0) {
+                    return definitions.get(i).name + " is part of a dependency cycle.";
                 }
             }
-        } else if(!getCriterion().get(name1).getIsNegated()){
-            switch (getCriterion().get(name1).getProperty()) {
-                case "name" -> {
-                    for (String task : getPrimitiveTask().keySet()) {
-                        if (task.contains(getCriterion().get(name1).getValue())) {
-                            result.add(task);
+        }
+        HashMap<String, TaskBatch.CriterionDefinition> criteria = new HashMap<>();
+        for(TaskBatch.CriterionDefinition definition : batch.getCriteria()) {
+            String problem = checkName(definition.name);
+            if(problem != null) {
+                return problem;
+            }
+            if(criterion.containsKey(definition.name) || criteria.put(definition.name, definition) != null
+                    || (definition.kind.equals(TaskBatch.BASIC_CRITERION) && (primitiveTask.containsKey(definition.name) || compositeTask.containsKey(definition.name)))) {
+                return definition.name + " already existed.";
+            }
+        }
+        for(TaskBatch.CriterionDefinition definition : batch.getCriteria()) {
+            switch (definition.kind) {
+                case TaskBatch.BASIC_CRITERION -> {
+                    if(definition.property.equals("name") || definition.property.equals("description") || definition.property.equals("prerequisites") || definition.property.equals("subtasks")) {
+                        if(!definition.op.equals("contains")) {
+                            return definition.op + " is not a valid op. op must be \"contains\".";
                         }
-                    }
-                    for (String task : getCompositeTask().keySet()) {
-                        if (task.contains(getCriterion().get(name1).getValue())) {
-                            result.add(task);
+                    } else if(definition.property.equals("duration")) {
+                        if(!(definition.op.equals("<") || definition.op.equals(">") || definition.op.equals("<=") || definition.op.equals(">=") || definition.op.equals("==") || definition.op.equals("!="))) {
+                            return definition.op + " is not a valid op. op must be either \"<\", \">\", \"<=\", \">=\", \"==\", \"!=\".";
                         }
+                        try {
+                            Double.parseDouble(definition.value);
+                        } catch (NumberFormatException e) {
+                            return "duration must be in a 'double' format.";
+                        }
+                    } else {
+                        return definition.property + " is not a property.";
                     }
                 }
-                case "description" -> {
-                    for (String task : getPrimitiveTask().keySet()) {
-                        if (getPrimitiveTask().get(task).getDescription().contains(getCriterion().get(name1).getValue())) {
-                            result.add(task);
-                        }
+                case TaskBatch.NEGATED_CRITERION -> {
+                    if(!(criterion.containsKey(definition.first) || criteria.containsKey(definition.first))) {
+                        return definition.first + " does not exist.";
                     }
-                    for (String task : getCompositeTask().keySet()) {
-                        if (getCompositeTask().get(task).getDescription().contains(getCriterion().get(name1).getValue())) {
-                            result.add(task);
-                        }
+                    if(definition.first.equals("IsPrimitive") && !definition.name.equals("IsCompos")) {
+                        return "the negation of IsPrimitive must be named IsCompos.";
                     }
                 }
-                case "prerequisites" -> {
-                    for (String task : getPrimitiveTask().keySet()) {
-                        boolean matchCheck = false;
-                        for (String prerequisiteTask : getCriterion().get(name1).getValue().split(",")) {
-                            if (getPrimitiveTask().get(task).getPrerequisite() == null) {
-                                break;
-                            }
-                            for (String taskPrerequisite : getPrimitiveTask().get(task).getPrerequisite()) {
-                                if (prerequisiteTask.equals(taskPrerequisite)) {
-                                    matchCheck = true;
-                                    break;
-                                }
-                            }
-                            if (matchCheck) {
-                                result.add(task);
-                                break;
-                            }
+                default -> {
+                    for(String name : new String[]{definition.first, definition.second}) {
+                        if(!(criterion.containsKey(name) || criteria.containsKey(name))) {
+                            return name + " does not exist.";
                         }
                     }
-                }
-                case "duration" -> {
-                    Criterion cur = getCriterion().get(name1);
-                    for (String task : getPrimitiveTask().keySet()) {
-                        switch (cur.getOp()) {
-                            case ">" -> {
-                                if(Double. parseDouble(cur.getValue()) < getPrimitiveTask().get(task).getDuration()) result.add(task);
-                            }
-                            case "<" -> {
-                                if(Double. parseDouble(cur.getValue()) > getPrimitiveTask().get(task).getDuration()) result.add(task);
-                            }
-                            case ">=" -> {
-                                if(Double. parseDouble(cur.getValue()) <= getPrimitiveTask().get(task).getDuration()) result.add(task);
-                            }
-                            case "<=" -> {
-                                if(Double. parseDouble(cur.getValue()) >= getPrimitiveTask().get(task).getDuration()) result.add(task);
-                            }
-                            case "!=" -> {
-                                if(Double. parseDouble(cur.getValue()) != getPrimitiveTask().get(task).getDuration()) result.add(task);
-                            }
-                            case "==" -> {
-                                if(Double. parseDouble(cur.getValue()) == getPrimitiveTask().get(task).getDuration()) result.add(task);
-                            }
-                        }
+                    if(definition.first.equals(definition.second)) {
+                        return definition.first + " and " + definition.second + " cannot be the same.";
                     }
                 }
-                case "subtasks" -> {
-                    for (String task : getCompositeTask().keySet()) {
-                        boolean matchCheck = false;
-                        for (String subtaskCriterion : getCriterion().get(name1).getValue().split(",")) {
-                            for (String subtask : getCompositeTask().get(task).getSubtask()) {
-                                if (subtaskCriterion.equals(subtask)) {
-                                    matchCheck = true;
-                                    break;
-                                }
-                            }
-                            if (!matchCheck) {
-                                break;
-                            }
-                        }
-                        if (matchCheck) {
-                            result.add(task);
-                        }
-                    }
+            }
+        }
+        // a criterion of the batch must not be built from itself
+        HashMap<String, Boolean> visited = new HashMap<>();
+        for(TaskBatch.CriterionDefinition definition : batch.getCriteria()) {
+            if(inCriterionCycle(definition.name, criteria, visited)) {
+                return definition.name + " is part of a criterion cycle.";
+            }
+        }
+        return null;
+    }
+
+    // true if a criterion of a batch is reached again while following the criteria it is built from
+    private static boolean inCriterionCycle(String name, HashMap<String, TaskBatch.CriterionDefinition> criteria, HashMap<String, Boolean> visited) {
+        TaskBatch.CriterionDefinition definition = criteria.get(name);
+        if(definition == null || Boolean.TRUE.equals(visited.get(name))) {
+            return false;
+        }
+        if(visited.put(name, false) != null) {
+            return true;
+        }
+        for(String sub : new String[]{definition.first, definition.second}) {
+            if(sub != null && inCriterionCycle(sub, criteria, visited)) {
+                return true;
+            }
+        }
+        visited.put(name, true);
+        return false;
+    }
+
+    // the problem with a new task or criterion name, or null if the name is valid
+    private static String checkName(String name) {
+        if(name.isEmpty()) {
+            return "a name cannot be empty.";
+        } else if(name.length() > 8) {
+            return name + " is too long, only 8 characters at most.";
+        } else if(Character.isDigit(name.charAt(0))) {
+            return name + " cannot start with digits.";
+        }
+        for(int i = 0; i < name.length(); i++) {
+            if(!(Character.isLetter(name.charAt(i)) || Character.isDigit(name.charAt(i)))) {
+                return name + " may contain only English letters and digits.";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the tasks and criteria of an imported batch as one change, to undo the import.
+     * If a task or criterion of the batch no longer exists, or is still used by one from outside the batch,
+     * a message is printed and nothing is removed.
+     *
+     * @param batch The imported batch.
+     * @param undoRedo Whether undoRedo is enabled
+     * @param undo Whether undo should be performed
+     */
+    void removeBatch(TaskBatch batch, boolean undoRedo, boolean undo) {
+        if(isJournaling()) {
+            journaled(() -> removeBatch(batch, undoRedo, undo), Journal.REMOVE_BATCH, undoRedo, undo, batch.toArgs());
+            return;
+        }
+        materializeAll();
+        HashSet<String> tasks = new HashSet<>();
+        for(TaskBatch.TaskDefinition task : batch.getTasks()) {
+            if(!(task.primitive ? primitiveTask.containsKey(task.name) : compositeTask.containsKey(task.name))) {
+                System.out.println("The import cannot be removed: " + task.name + " does not exist.");
+                return;
+            }
+            tasks.add(task.name);
+        }
+        for(String name : tasks) {
+            for(String referrer : dependencyIndex.getDependents(name)) {
+                if(!tasks.contains(referrer)) {
+                    System.out.println("The import cannot be removed: " + name + " is a prerequisite of " + referrer + ".");
+                    return;
                 }
             }
-        } else {
-            Criterion cur = getCriterion().get(getCriterion().get(name1).getSubCriterion()[0]);
-            if(!cur.getIsBasic()){//if the subtask of the negated one is binary criterion
-                for(String task : getPrimitiveTask().keySet()) {
-                    boolean matchCheck = true;
-                    for(String matchedTask : binaryCriteriaSearch(cur.getSubCriterion()[0], cur.getSubCriterion()[1], cur.getSubCriterion()[2])) {
-                        if (task.equals(matchedTask)) {
-                            matchCheck = false;
-                            break;
-                        }
-                    }
-                    if(matchCheck) {
-                        result.add(task);
-                    }
+            for(String referrer : dependencyIndex.getParents(name)) {
+                if(!tasks.contains(referrer)) {
+                    System.out.println("The import cannot be removed: " + name + " is a subtask of " + referrer + ".");
+                    return;
                 }
             }
-            else {//if the subtask of the negated one is basic criterion
-                for(String task : getPrimitiveTask().keySet()) {
-                    boolean matchCheck = true;
-                    for(String matchedTask : basicCriteriaSearch(getCriterion().get(name1).getSubCriterion()[0])) {
-                        if (task.equals(matchedTask)) {
-                            matchCheck = false;
-                            break;
-                        }
-                    }
-                    if(matchCheck) {
-                        result.add(task);
-                    }
+        }
+        HashSet<String> criteria = new HashSet<>();
+        for(TaskBatch.CriterionDefinition definition : batch.getCriteria()) {
+            if(!criterion.containsKey(definition.name)) {
+                System.out.println("The import cannot be removed: " + definition.name + " does not exist.");
+                return;
+            }
+            criteria.add(definition.name);
+        }
+        for(Criterion other : criterion.values()) {
+            if(criteria.contains(other.getName()) || other.getSubCriterion() == null) {
+                continue;
+            }
+            for(String sub : other.getSubCriterion()) {
+                if(sub != null && criteria.contains(sub)) {
+                    System.out.println("The import cannot be removed: " + sub + " is used by " + other.getName() + ".");
+                    return;
                 }
             }
         }
-        return result;
+        for(TaskBatch.TaskDefinition task : batch.getTasks()) {
+            invalidateFinishTime(task.name);
+        }
+        for(TaskBatch.TaskDefinition task : batch.getTasks()) {
+            if(task.primitive) {
+                dependencyIndex.removePrerequisites(task.name, primitiveTask.remove(task.name).getPrerequisite());
+            } else {
+                dependencyIndex.removeSubtasks(task.name, compositeTask.remove(task.name).getSubtask());
+            }
+            searchIndexes.unregister(task.name);
+            taskChanged(task.name);
+        }
+        for(String name : criteria) {
+            criterion.remove(name);
+        }
+        criteriaChanged();
+        if(undoRedo && undo) {
+            redoHistory.push(HistoryEntry.importBatch(batch));
+        } else {
+            undoHistory.push(HistoryEntry.importBatch(batch));
+        }
+        System.out.println(tasks.size() + " task(s) and " + criteria.size() + " criteria have been successfully removed.");
+    }
+
+    /**
+     * REQ12
+     * This method retrieves all criteria from the criterion list and prints them.
+     * For each criterion, the name, property, value, and operation are printed.
+     * <p>
+     * If the name of a criterion is "IsPrimitive" or "IsCompos", only the name is printed.
+     * Otherwise, the name is printed followed by the property, value, and operation of the criterion.
+     */
+    public void printAllCriteria() {
+        StringBuilder out = new StringBuilder();
+        out.append("Here is the list of Criteria(s)").append(NEWLINE);
+        for(Map.Entry<String, Criterion> entry : getCriterion().entrySet()) {
+            Criterion criterion = entry.getValue();
+            out.append(entry.getKey());
+            if(!(criterion.getName().equals("IsPrimitive") || criterion.getName().equals("IsCompos"))) {
+                out.append(" -> property: ").append(criterion.getProperty())
+                        .append(", value: ").append(criterion.getValue())
+                        .append(", op: ").append(criterion.getOp());
+            }
+            out.append(NEWLINE);
+        }
+        output.write(out);
+    }
+
+    /**
+     * Returns every criterion of the task management system without printing anything,
+     * in the order printAllCriteria prints them.
+     *
+     * @return A new list of the criteria.
+     */
+    public List<Criterion> getAllCriteria() {
+        return new ArrayList<>(getCriterion().values());
+    }
+
+    /**
+     * REQ13
+     * This method searches for tasks in the task management system that meet the criterion specified by the given name.
+     * <p>
+     * If the criterion does not exist, an error message is printed.
+     * If the criterion is a basic criterion, tasks that meet this criterion are searched for and printed.
+     * If the criterion is a binary criterion, tasks that meet both of the sub-criteria are searched for and printed.
+     * The criterion is compiled into a CriterionPlan once and evaluated into a bitset of task ids;
+     * matching tasks are printed in the order of their ids.
+     * <p>
+     * If no tasks meet the criterion, a message is printed to indicate this.
+     *
+     * @param name The name of the criterion to search for tasks.
+     */
+    public void search(String name){
+        ArrayList<String> problems = new ArrayList<>();
+        BitSet result = match(name, problems);
+        StringBuilder out = new StringBuilder();
+        for(String problem : problems) {
+            out.append(problem).append(NEWLINE);
+        }
+        if(result != null && result.isEmpty()) {
+            out.append(name).append(" does not contain any task(s).").append(NEWLINE);
+        } else if(result != null) {
+            out.append("Here is the list of task(s) of ").append(name).append(NEWLINE);
+            for(int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+                out.append(searchIndexes.getIds().nameOf(id)).append(' ');
+                writeIfFull(out);
+            }
+            out.append(NEWLINE);
+        }
+        output.write(out);
+    }
+
+    /**
+     * Returns the names of the tasks that meet a criterion without printing anything, in the order search prints them.
+     *
+     * @param name The name of the criterion.
+     * @return A new list of task names, or null if the criterion does not exist or cannot be evaluated.
+     */
+    public List<String> searchTasks(String name){
+        BitSet result = match(name, new ArrayList<>());
+        if(result == null) {
+            return null;
+        }
+        ArrayList<String> names = new ArrayList<>(result.cardinality());
+        for(int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+            names.add(searchIndexes.getIds().nameOf(id));
+        }
+        return names;
+    }
+
+    // the ids of the tasks that meet a criterion, or null with the reason added to the problems
+    private BitSet match(String name, List<String> problems){
+        materializeAll();
+        if(!getCriterion().containsKey(name)) {
+            problems.add(name + " does not exist.");
+            return null;
+        }
+        CriterionPlan plan = getCriterionPlan(name, problems);
+        return plan == null ? null : plan.evaluate(searchIndexes);
+    }
+    // criteria are compiled once and the plans are dropped whenever a criterion is defined or removed
+    private CriterionPlan getCriterionPlan(String name, List<String> problems){
+        CriterionPlan plan = criterionPlans.get(name);
+        count(plan != null ? "criterionPlan.cache.hit" : "criterionPlan.cache.miss");
+        if(plan == null) {
+            plan = CriterionPlan.compile(name, getCriterion(), problems);
+            if(plan != null) {
+                criterionPlans.put(name, plan);
+            }
+        }
+        return plan;
     }
 
     /**
@@ -1275,6 +2465,8 @@ public class TMS {
      * <p>
      * Each detail of the tasks and criteria is written on a new line, and multiple values are comma-separated.
      * <p>
+     * If the path ends with ".tmsb", the compact binary snapshot format of TaskSnapshot is written instead.
+     * <p>
      * If the method succeeds, a success message is printed to the console. If an exception occurs during the write operation, the stack trace is printed to the console.
      *
      * @param path The file path where the tasks and criteria are to be stored.
@@ -1286,6 +2478,16 @@ public class TMS {
             return;
         }
         if (file.getParentFile().exists() || file.getParentFile().mkdirs()) {
+            if(path.endsWith(TaskSnapshot.EXTENSION)) {
+                try {
+                    TaskSnapshot.write(file.toPath(), getPrimitiveTask(), getCompositeTask(), getCriterion());
+                    System.out.println("Tasks and criteria stored successfully.");
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    System.out.println("Failed to store tasks and criteria.");
+                }
+                return;
+            }
             try (PrintWriter writer = new PrintWriter(file)) {
                 for(String classes : getPrimitiveTask().keySet()){
                     writer.println("$");
@@ -1351,15 +2553,37 @@ public class TMS {
      * <p>
      * Each detail of the tasks and criteria is read from a new line, and multiple values are comma-separated.
      * <p>
+     * A file that starts with the magic bytes of the binary snapshot format is read with TaskSnapshot instead,
+     * whatever its name, or mapped lazily with MappedSnapshot if lazy loading is enabled.
+     * <p>
+     * If a journal is open, the loaded tasks and criteria are folded into a new journal snapshot.
+     * <p>
      * If the method succeeds, a success message is printed to the console. If a `FileNotFoundException` occurs, an error message and the stack trace are printed to the console. If another `IOException` occurs, a different error message and the stack trace are printed to the console.
      *
      * @param path The file path from where the tasks and criteria are to be loaded.
      */
     public void load(String path) {
+        snapshot = null;
         setPrimitiveTask(new HashMap<String, PrimitiveTask>());
         setCompositeTask(new HashMap<String, CompositeTask>());
         setCriterion(new HashMap<String, Criterion>());
 
+        if(TaskSnapshot.isSnapshot(new File(path).toPath())) {
+            try {
+                if(lazyLoadEnabled) {
+                    snapshot = MappedSnapshot.open(new File(path).toPath(), getCriterion());
+                } else {
+                    TaskSnapshot.read(new File(path).toPath(), getPrimitiveTask(), getCompositeTask(), getCriterion());
+                }
+                System.out.println("Tasks and criteria read successfully.");
+            } catch (IOException e) {
+                System.err.println("An IOException occurred.");
+                e.printStackTrace();
+            }
+            rebuildIndexes();
+            compactJournal();
+            return;
+        }
         try (BufferedReader bufferedReader = new BufferedReader(new FileReader(path))) {
             String line;
             while ((line = bufferedReader.readLine()) != null) {
@@ -1410,6 +2634,8 @@ public class TMS {
             System.err.println("An IOException occurred.");
             e.printStackTrace();
         }
+        rebuildIndexes();
+        compactJournal();
     }
 
     /**
@@ -1424,5 +2650,6 @@ public class TMS {
         IsPri.setIsBasic(true);
         IsPri.setIsNegated(false);
         getCriterion().put("IsPrimitive", IsPri);
+        setSubstringIndexEnabled(true);
     }
 }
\ No newline at end of file
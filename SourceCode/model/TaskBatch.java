@@ -0,0 +1,244 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The TaskBatch class collects task and criterion definitions to be imported into the Task Management System (TMS)
+ * at once with TMS.importBatch.
+ * <p>
+ * A definition may refer to tasks and criteria defined anywhere in the same batch, before or after it.
+ * The batch is checked as a whole and imported either completely or not at all.
+ * Each method adds one definition and returns the batch, so definitions can be chained.
+ */
+public final class TaskBatch {
+    static final String PRIMITIVE_TASK = "P";
+    static final String COMPOSITE_TASK = "C";
+    static final String BASIC_CRITERION = "B";
+    static final String NEGATED_CRITERION = "N";
+    static final String BINARY_CRITERION = "X";
+
+    private final ArrayList<TaskDefinition> tasks = new ArrayList<>();
+    private final ArrayList<CriterionDefinition> criteria = new ArrayList<>();
+
+    /**
+     * The definition of a primitive or composite task.
+     */
+    static final class TaskDefinition {
+        final boolean primitive;
+        final String name;
+        final String description;
+        final double duration;
+        // the prerequisites of a primitive task or the subtasks of a composite task, or null if there are none
+        final String[] references;
+
+        TaskDefinition(boolean primitive, String name, String description, double duration, String[] references) {
+            this.primitive = primitive;
+            this.name = Objects.requireNonNull(name, "name");
+            this.description = Objects.requireNonNull(description, "description");
+            this.duration = duration;
+            this.references = references == null || references.length == 0 ? null : references.clone();
+        }
+    }
+
+    /**
+     * The definition of a basic, negated or binary criterion.
+     * A basic criterion uses property, op and value, a negated criterion uses first,
+     * and a binary criterion uses first, op and second.
+     */
+    static final class CriterionDefinition {
+        final String kind;
+        final String name;
+        final String property;
+        final String op;
+        final String value;
+        final String first;
+        final String second;
+
+        CriterionDefinition(String kind, String name, String property, String op, String value, String first, String second) {
+            this.kind = kind;
+            this.name = Objects.requireNonNull(name, "name");
+            this.property = property;
+            this.op = op;
+            this.value = value;
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+    /**
+     * Adds a primitive task.
+     *
+     * @param name          The name of the task.
+     * @param description   The description of the task.
+     * @param duration      The duration of the task.
+     * @param prerequisites The prerequisites of the task, none if it has no prerequisite.
+     * @return This batch.
+     */
+    public TaskBatch primitiveTask(String name, String description, double duration, String... prerequisites) {
+        tasks.add(new TaskDefinition(true, name, description, duration, prerequisites));
+        return this;
+    }
+
+    /**
+     * Adds a composite task.
+     *
+     * @param name        The name of the task.
+     * @param description The description of the task.
+     * @param subtasks    The subtasks of the task.
+     * @return This batch.
+     */
+    public TaskBatch compositeTask(String name, String description, String... subtasks) {
+        tasks.add(new TaskDefinition(false, name, description, 0, subtasks));
+        return this;
+    }
+
+    /**
+     * Adds a basic criterion.
+     *
+     * @param name     The name of the criterion.
+     * @param property The property the criterion applies to.
+     * @param op       The operation of the criterion.
+     * @param value    The value used in the criterion.
+     * @return This batch.
+     */
+    public TaskBatch basicCriterion(String name, String property, String op, String value) {
+        criteria.add(new CriterionDefinition(BASIC_CRITERION, name, Objects.requireNonNull(property, "property"),
+                Objects.requireNonNull(op, "op"), Objects.requireNonNull(value, "value"), null, null));
+        return this;
+    }
+
+    /**
+     * Adds a negated criterion.
+     * The negation of IsPrimitive must be named IsCompos.
+     *
+     * @param name1 The name of the negated criterion.
+     * @param name2 The name of the criterion it negates.
+     * @return This batch.
+     */
+    public TaskBatch negatedCriterion(String name1, String name2) {
+        criteria.add(new CriterionDefinition(NEGATED_CRITERION, name1, null, null, null, Objects.requireNonNull(name2, "name2"), null));
+        return this;
+    }
+
+    /**
+     * Adds a binary criterion.
+     *
+     * @param name1 The name of the binary criterion.
+     * @param name2 The name of the first criterion.
+     * @param op    The logic operation, "&&" or "||".
+     * @param name3 The name of the second criterion.
+     * @return This batch.
+     */
+    public TaskBatch binaryCriterion(String name1, String name2, String op, String name3) {
+        criteria.add(new CriterionDefinition(BINARY_CRITERION, name1, null, Objects.requireNonNull(op, "op"), null,
+                Objects.requireNonNull(name2, "name2"), Objects.requireNonNull(name3, "name3")));
+        return this;
+    }
+
+    /**
+     * Returns the number of definitions in the batch.
+     *
+     * @return The number of tasks and criteria defined.
+     */
+    public int size() {
+        return tasks.size() + criteria.size();
+    }
+
+    List<TaskDefinition> getTasks() {
+        return tasks;
+    }
+
+    List<CriterionDefinition> getCriteria() {
+        return criteria;
+    }
+
+    /**
+     * Returns a copy of the batch that does not change when definitions are added to this batch.
+     *
+     * @return The copy.
+     */
+    TaskBatch copy() {
+        TaskBatch copy = new TaskBatch();
+        copy.tasks.addAll(tasks);
+        copy.criteria.addAll(criteria);
+        return copy;
+    }
+
+    /**
+     * Encodes the batch as a list of strings, as stored in the journal.
+     *
+     * @return The encoded batch.
+     */
+    String[] toArgs() {
+        ArrayList<String> args = new ArrayList<>();
+        for(TaskDefinition task : tasks) {
+            args.add(task.primitive ? PRIMITIVE_TASK : COMPOSITE_TASK);
+            args.add(task.name);
+            args.add(task.description);
+            if(task.primitive) {
+                args.add(Double.toString(task.duration));
+            }
+            args.add(Integer.toString(task.references == null ? 0 : task.references.length));
+            if(task.references != null) {
+                Collections.addAll(args, task.references);
+            }
+        }
+        for(CriterionDefinition criterion : criteria) {
+            args.add(criterion.kind);
+            args.add(criterion.name);
+            switch (criterion.kind) {
+                case BASIC_CRITERION -> {
+                    args.add(criterion.property);
+                    args.add(criterion.op);
+                    args.add(criterion.value);
+                }
+                case NEGATED_CRITERION -> args.add(criterion.first);
+                default -> {
+                    args.add(criterion.first);
+                    args.add(criterion.op);
+                    args.add(criterion.second);
+                }
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /**
+     * Decodes a batch encoded by toArgs.
+     *
+     * @param args The encoded batch.
+     * @return The decoded batch.
+     */
+    static TaskBatch fromArgs(String[] args) {
+        TaskBatch batch = new TaskBatch();
+        int i = 0;
+        while(i < args.length) {
+            String kind = args[i++];
+            String name = args[i++];
+            switch (kind) {
+                case PRIMITIVE_TASK, COMPOSITE_TASK -> {
+                    String description = args[i++];
+                    double duration = kind.equals(PRIMITIVE_TASK) ? Double.parseDouble(args[i++]) : 0;
+                    String[] references = new String[Integer.parseInt(args[i++])];
+                    for(int j = 0; j < references.length; j++) {
+                        references[j] = args[i++];
+                    }
+                    batch.tasks.add(new TaskDefinition(kind.equals(PRIMITIVE_TASK), name, description, duration, references));
+                }
+                case BASIC_CRITERION -> {
+                    batch.basicCriterion(name, args[i], args[i + 1], args[i + 2]);
+                    i += 3;
+                }
+                case NEGATED_CRITERION -> batch.negatedCriterion(name, args[i++]);
+                default -> {
+                    batch.binaryCriterion(name, args[i], args[i + 1], args[i + 2]);
+                    i += 3;
+                }
+            }
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,335 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+
+/**
+ * The TaskGraph class keeps the task graph of the Task Management System (TMS) by the dense ids of TaskIds,
+ * so that traversals follow int arrays instead of looking names up in hash maps.
+ * <p>
+ * For every id it keeps the ids of the prerequisites of a primitive task or of the subtasks of a composite task,
+ * the duration of the task, and its earliest finish time once computed (NaN until then), in a TaskGraphStore
+ * on the heap or, if chosen, outside it. A prerequisite or subtask that does not exist is kept as -1
+ * and marks the task as incomplete.
+ * <p>
+ * The graph is refreshed lazily: mutations only record which tasks changed, and the rows of those tasks are
+ * resolved again by the next refresh. A refresh may be called by any number of readers at once; the rows and
+ * durations are only changed by a refresh, under the lock of the graph. Earliest finish times are filled in by
+ * readers without a lock, which is harmless since every reader computes the same value.
+ */
+class TaskGraph {
+    private static final int[] NO_DEPENDENCIES = new int[0];
+    // past this many changed names, resolving every task again is cheaper than resolving the changed ones
+    private static final int CHANGED_LIMIT = 1 << 14;
+
+    private final TaskIds ids;
+    private final DependencyIndex dependencyIndex;
+    private TaskGraphStore store = new HeapTaskGraphStore();
+    private final BitSet composites = new BitSet();
+    private final BitSet incomplete = new BitSet();
+    private final HashSet<String> changed = new HashSet<>();
+    private boolean changedAll = true;
+    private volatile boolean stale = true;
+    // set when a finish time is cached, so that mutations can skip the invalidation walk while nothing is cached
+    private volatile boolean anyFinishTime = false;
+
+    /**
+     * Constructs a new TaskGraph over the ids and the reverse edges of a TMS.
+     *
+     * @param ids             The ids of the tasks, which also hold the task objects.
+     * @param dependencyIndex The reverse edges, used to find the tasks referring to a created or deleted task.
+     */
+    TaskGraph(TaskIds ids, DependencyIndex dependencyIndex) {
+        this.ids = ids;
+        this.dependencyIndex = dependencyIndex;
+    }
+
+    /**
+     * Records that a task was created, changed or removed, so that its row is resolved again by the next refresh.
+     *
+     * @param name The name of the task.
+     */
+    void taskChanged(String name) {
+        stale = true;
+        if(changedAll) {
+            return;
+        }
+        changed.add(name);
+        if(changed.size() > CHANGED_LIMIT) {
+            changed.clear();
+            changedAll = true;
+        }
+    }
+
+    /**
+     * Records that every task may have changed and drops every earliest finish time.
+     * Used whenever the task maps are replaced as a whole.
+     */
+    void clear() {
+        changed.clear();
+        changedAll = true;
+        stale = true;
+        store.clearFinishTimes();
+        anyFinishTime = false;
+    }
+
+    /**
+     * Returns whether the records are kept outside the Java heap.
+     *
+     * @return true if the store is an OffHeapTaskGraphStore.
+     */
+    boolean isOffHeap() {
+        return store instanceof OffHeapTaskGraphStore;
+    }
+
+    /**
+     * Moves the records to a new store on or off the Java heap. Every row is resolved again by the next refresh.
+     *
+     * @param offHeap Whether the records should be kept outside the Java heap.
+     */
+    void setOffHeap(boolean offHeap) {
+        if(offHeap == isOffHeap()) {
+            return;
+        }
+        store = offHeap ? new OffHeapTaskGraphStore() : new HeapTaskGraphStore();
+        clear();
+    }
+
+    /**
+     * Resolves the rows of the tasks that changed since the last refresh.
+     * Does nothing if nothing changed, so it is cheap enough to be called before every query.
+     */
+    void refresh() {
+        if(!stale) {
+            return;
+        }
+        synchronized (this) {
+            if(!stale) {
+                return;
+            }
+            store.ensureCapacity(ids.limit());
+            if(changedAll) {
+                for(int id = 0; id < ids.limit(); id++) {
+                    resolve(id);
+                }
+                changedAll = false;
+            }
+            else {
+                for(String name : changed) {
+                    int id = ids.idOf(name);
+                    // the name appeared, disappeared or now stands for another task: the tasks listing it must follow
+                    if(id < 0 || store.stamp(id) != ids.stampOf(id)) {
+                        resolveReferrers(name);
+                    }
+                    if(id >= 0) {
+                        resolve(id);
+                    }
+                }
+            }
+            changed.clear();
+            stale = false;
+        }
+    }
+
+    /**
+     * Returns the earliest finish time of a task, computing and caching those of the tasks it depends on.
+     * The walk keeps its own stack, so it goes as deep as the graph does; a task caught in a cycle
+     * is measured without the dependency that closes the cycle.
+     * Must be called after a refresh.
+     *
+     * @param id      The id of the task.
+     * @param metrics The metrics the cache hits and misses are counted in, or null.
+     * @return The earliest finish time, or NaN if it depends on a task that does not exist or has not been resolved.
+     */
+    double getEarliestFinishTime(int id, Metrics metrics) {
+        TaskGraphStore store = this.store;
+        double cached = store.finishTime(id);
+        if(!Double.isNaN(cached)) {
+            if(metrics != null) {
+                metrics.increment("finishTime.cache.hit");
+            }
+            return cached;
+        }
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = id;
+        BitSet expanded = new BitSet();
+        while(top > 0) {
+            int current = stack[top - 1];
+            if(!Double.isNaN(store.finishTime(current))) {
+                top--;
+                continue;
+            }
+            int count = store.dependencyCount(current);
+            if(count < 0 || incomplete.get(current)) {
+                return Double.NaN;
+            }
+            double maxTime = 0d;
+            boolean ready = true;
+            for(int i = 0; i < count; i++) {
+                double finishTime = store.finishTime(store.dependency(current, i));
+                if(Double.isNaN(finishTime)) {
+                    ready = false;
+                }
+                else {
+                    maxTime = Math.max(maxTime, finishTime);
+                }
+            }
+            if(!ready && !expanded.get(current)) {
+                expanded.set(current);
+                for(int i = 0; i < count; i++) {
+                    int dependency = store.dependency(current, i);
+                    if(Double.isNaN(store.finishTime(dependency))) {
+                        if(top == stack.length) {
+                            stack = Arrays.copyOf(stack, top * 2);
+                        }
+                        stack[top++] = dependency;
+                    }
+                }
+                continue;
+            }
+            if(metrics != null) {
+                metrics.increment("finishTime.cache.miss");
+            }
+            store.setFinishTime(current, store.duration(current) + maxTime);
+            if(!anyFinishTime) {
+                anyFinishTime = true;
+            }
+            top--;
+        }
+        return store.finishTime(id);
+    }
+
+    /**
+     * Drops the earliest finish time of a task and of every cached task downstream of it, following the reverse
+     * edges. A task is only cached once everything it depends on is cached, so the walk stops at uncached tasks.
+     * The named task is walked from even if nothing is cached for it, but only once, so that a cycle back to it
+     * ends the walk.
+     *
+     * @param name The name of the task, which may no longer exist.
+     */
+    void forgetFinishTimes(String name) {
+        if(!anyFinishTime) {
+            return;
+        }
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        pending.push(name);
+        boolean started = false;
+        while(!pending.isEmpty()) {
+            String current = pending.pop();
+            if(!forgetFinishTime(ids.idOf(current)) && (started || !current.equals(name))) {
+                continue;
+            }
+            started = true;
+            for(String dependent : dependencyIndex.getDependents(current)) {
+                pending.push(dependent);
+            }
+            for(String parent : dependencyIndex.getParents(current)) {
+                pending.push(parent);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of prerequisites of a primitive task or of subtasks of a composite task.
+     * Must be called after a refresh.
+     *
+     * @param id The id of the task.
+     * @return The number of dependencies.
+     */
+    int dependencyCount(int id) {
+        return Math.max(0, store.dependencyCount(id));
+    }
+
+    /**
+     * Returns one prerequisite of a primitive task or subtask of a composite task.
+     *
+     * @param id    The id of the task.
+     * @param index The index of the dependency, below dependencyCount(id).
+     * @return The id of the dependency, or -1 for a task that does not exist.
+     */
+    int dependency(int id, int index) {
+        return store.dependency(id, index);
+    }
+
+    /**
+     * Returns whether the task with the given id is a composite task.
+     *
+     * @param id The id of the task.
+     * @return True for a composite task, false for a primitive task.
+     */
+    boolean isComposite(int id) {
+        return composites.get(id);
+    }
+
+    /**
+     * Returns the duration of a task, which is 0 for a composite task.
+     *
+     * @param id The id of the task.
+     * @return The duration.
+     */
+    double durationOf(int id) {
+        return store.duration(id);
+    }
+
+    private void resolveReferrers(String name) {
+        for(String dependent : dependencyIndex.getDependents(name)) {
+            int id = ids.idOf(dependent);
+            if(id >= 0) {
+                resolve(id);
+            }
+        }
+        for(String parent : dependencyIndex.getParents(name)) {
+            int id = ids.idOf(parent);
+            if(id >= 0) {
+                resolve(id);
+            }
+        }
+    }
+
+    private void resolve(int id) {
+        Task task = ids.taskOf(id);
+        if(store.stamp(id) != ids.stampOf(id)) {
+            store.setFinishTime(id, Double.NaN);
+            store.setStamp(id, ids.stampOf(id));
+        }
+        String[] dependencyNames;
+        if(task instanceof PrimitiveTask) {
+            PrimitiveTask primitive = (PrimitiveTask) task;
+            dependencyNames = primitive.getPrerequisite();
+            store.setDuration(id, primitive.getDuration());
+            composites.clear(id);
+        }
+        else if(task instanceof CompositeTask) {
+            dependencyNames = ((CompositeTask) task).getSubtask();
+            store.setDuration(id, 0d);
+            composites.set(id);
+        }
+        else {
+            dependencyNames = null;
+            store.setDuration(id, 0d);
+            composites.clear(id);
+        }
+        boolean missing = false;
+        int[] row = NO_DEPENDENCIES;
+        if(dependencyNames != null && dependencyNames.length > 0) {
+            row = new int[dependencyNames.length];
+            for(int i = 0; i < row.length; i++) {
+                row[i] = ids.idOf(dependencyNames[i]);
+                missing |= row[i] < 0;
+            }
+        }
+        store.setDependencies(id, row);
+        incomplete.set(id, missing);
+    }
+
+    private boolean forgetFinishTime(int id) {
+        if(id < 0 || id >= store.capacity() || Double.isNaN(store.finishTime(id))) {
+            return false;
+        }
+        store.setFinishTime(id, Double.NaN);
+        return true;
+    }
+}
@@ -0,0 +1,103 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+/**
+ * The TaskGraphStore interface holds the record of every task id of a TaskGraph: the ids of its prerequisites
+ * or subtasks, its duration, its earliest finish time, and the stamp of the registration it was resolved from.
+ * <p>
+ * Rows, durations and stamps are only written by a refresh of the graph, which never runs while the graph is read.
+ * Finish times are written by readers as they compute them, so an implementation must allow a finish time
+ * to be written while other finish times and rows are read, as a plain array does.
+ */
+interface TaskGraphStore {
+    /**
+     * Makes room for the given number of ids. New ids have no row, no stamp and no finish time.
+     *
+     * @param capacity The number of ids.
+     */
+    void ensureCapacity(int capacity);
+
+    /**
+     * Returns the number of ids there is room for.
+     *
+     * @return The capacity.
+     */
+    int capacity();
+
+    /**
+     * Returns the number of prerequisites or subtasks of a task.
+     *
+     * @param id The id of the task.
+     * @return The number, or -1 if no row has been stored for the id.
+     */
+    int dependencyCount(int id);
+
+    /**
+     * Returns one prerequisite or subtask of a task.
+     *
+     * @param id    The id of the task.
+     * @param index The index of the dependency, below dependencyCount(id).
+     * @return The id of the dependency, or -1 for a task that does not exist.
+     */
+    int dependency(int id, int index);
+
+    /**
+     * Replaces the row of a task.
+     *
+     * @param id  The id of the task.
+     * @param row The ids of its prerequisites or subtasks, which must not be changed afterwards.
+     */
+    void setDependencies(int id, int[] row);
+
+    /**
+     * Returns the duration of a task, 0 for a composite task.
+     *
+     * @param id The id of the task.
+     * @return The duration.
+     */
+    double duration(int id);
+
+    /**
+     * Sets the duration of a task.
+     *
+     * @param id       The id of the task.
+     * @param duration The duration.
+     */
+    void setDuration(int id, double duration);
+
+    /**
+     * Returns the earliest finish time of a task.
+     *
+     * @param id The id of the task.
+     * @return The finish time, or NaN if it is not known.
+     */
+    double finishTime(int id);
+
+    /**
+     * Sets the earliest finish time of a task.
+     *
+     * @param id         The id of the task.
+     * @param finishTime The finish time, or NaN to forget it.
+     */
+    void setFinishTime(int id, double finishTime);
+
+    /**
+     * Forgets the finish time of every task.
+     */
+    void clearFinishTimes();
+
+    /**
+     * Returns the stamp of the registration the row of a task was resolved from, as given by TaskIds.stampOf.
+     *
+     * @param id The id of the task.
+     * @return The stamp, or 0 if no row has been stored for the id.
+     */
+    int stamp(int id);
+
+    /**
+     * Sets the stamp of the registration the row of a task was resolved from.
+     *
+     * @param id    The id of the task.
+     * @param stamp The stamp.
+     */
+    void setStamp(int id, int stamp);
+}
@@ -0,0 +1,237 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The TaskIds class assigns a dense integer id to every task in the Task Management System (TMS).
+ * Ids of deleted tasks are handed out again, so the ids stay close to the number of tasks
+ * and sets of tasks can be kept as bitsets.
+ * For every id it keeps the name and the task object, and it keeps one bitset of the ids of
+ * primitive tasks and one of the ids of composite tasks.
+ * <p>
+ * Ids are found by name in an open-addressing table of ids, compared through the names array,
+ * which costs a few bytes per task instead of a map entry and a boxed Integer.
+ */
+class TaskIds {
+    // id + 1 of the task hashed to each slot, or 0 for an empty slot; at most half full
+    private int[] table = new int[32];
+    private int size = 0;
+    private String[] names = new String[16];
+    private Task[] tasks = new Task[16];
+    // a number given to every registration, so that a task registered again under the same id can be told apart
+    private int[] stamps = new int[16];
+    private int nextStamp = 1;
+    private final BitSet primitiveIds = new BitSet();
+    private final BitSet compositeIds = new BitSet();
+    private int[] freeIds = new int[16];
+    private int freeCount = 0;
+    private int limit = 0;
+
+    /**
+     * Assigns an id to a primitive task.
+     *
+     * @param task The primitive task to be registered.
+     * @return The id of the task.
+     */
+    int register(PrimitiveTask task) {
+        unregister(task.getName());
+        int id = assign(task);
+        primitiveIds.set(id);
+        return id;
+    }
+
+    /**
+     * Assigns an id to a composite task.
+     *
+     * @param task The composite task to be registered.
+     * @return The id of the task.
+     */
+    int register(CompositeTask task) {
+        unregister(task.getName());
+        int id = assign(task);
+        compositeIds.set(id);
+        return id;
+    }
+
+    /**
+     * Releases the id of a task so that it can be assigned again.
+     * Nothing is done if the name has no id.
+     *
+     * @param name The name of the task to be released.
+     */
+    void unregister(String name) {
+        int slot = slotOf(name);
+        if(table[slot] == 0) {
+            return;
+        }
+        int id = table[slot] - 1;
+        removeSlot(slot);
+        names[id] = null;
+        tasks[id] = null;
+        stamps[id] = 0;
+        primitiveIds.clear(id);
+        compositeIds.clear(id);
+        if(freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+
+    /**
+     * Returns the id of a task.
+     *
+     * @param name The name of the task.
+     * @return The id of the task, or -1 if the name has no id.
+     */
+    int idOf(String name) {
+        return table[slotOf(name)] - 1;
+    }
+
+    /**
+     * Returns the name of the task with the given id.
+     *
+     * @param id The id of the task.
+     * @return The name of the task, or null if the id is not in use.
+     */
+    String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the task with the given id.
+     *
+     * @param id The id of the task.
+     * @return The task, or null if the id is not in use.
+     */
+    Task taskOf(int id) {
+        return tasks[id];
+    }
+
+    /**
+     * Returns the stamp of the registration that gave out an id. Registering a task again,
+     * even under the same id, gives it a new stamp.
+     *
+     * @param id The id of the task.
+     * @return The stamp, or 0 if the id is not in use.
+     */
+    int stampOf(int id) {
+        return stamps[id];
+    }
+
+    /**
+     * Returns the ids of all primitive tasks.
+     * The returned bitset is live and must not be modified.
+     *
+     * @return A bitset of the ids of all primitive tasks.
+     */
+    BitSet primitiveIds() {
+        return primitiveIds;
+    }
+
+    /**
+     * Returns the ids of all composite tasks.
+     * The returned bitset is live and must not be modified.
+     *
+     * @return A bitset of the ids of all composite tasks.
+     */
+    BitSet compositeIds() {
+        return compositeIds;
+    }
+
+    /**
+     * Returns one more than the highest id ever assigned.
+     *
+     * @return The upper bound of the ids in use.
+     */
+    int limit() {
+        return limit;
+    }
+
+    /**
+     * Releases every id.
+     */
+    void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+        Arrays.fill(names, 0, limit, null);
+        Arrays.fill(tasks, 0, limit, null);
+        Arrays.fill(stamps, 0, limit, 0);
+        primitiveIds.clear();
+        compositeIds.clear();
+        freeCount = 0;
+        limit = 0;
+    }
+
+    private int assign(Task task) {
+        int id;
+        if(freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            id = limit++;
+            if(id == names.length) {
+                names = Arrays.copyOf(names, id * 2);
+                tasks = Arrays.copyOf(tasks, id * 2);
+                stamps = Arrays.copyOf(stamps, id * 2);
+            }
+        }
+        names[id] = task.getName();
+        tasks[id] = task;
+        stamps[id] = nextStamp++;
+        if(nextStamp == 0) {
+            nextStamp = 1;
+        }
+        if(2 * (size + 1) > table.length) {
+            rehash(table.length * 2);
+        }
+        table[slotOf(task.getName())] = id + 1;
+        size++;
+        return id;
+    }
+
+    // the slot holding the name, or the empty slot where it would go
+    private int slotOf(String name) {
+        int mask = table.length - 1;
+        int slot = hash(name) & mask;
+        while(table[slot] != 0 && !names[table[slot] - 1].equals(name)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // empties a slot and moves back the entries after it that could no longer be found, as linear probing needs
+    private void removeSlot(int slot) {
+        int mask = table.length - 1;
+        table[slot] = 0;
+        size--;
+        for(int next = (slot + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int home = hash(names[table[next] - 1]) & mask;
+            // the entry stays if its home lies cyclically after the hole and up to its own slot
+            if(((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = table[next];
+                table[next] = 0;
+                slot = next;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] old = table;
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for(int entry : old) {
+            if(entry != 0) {
+                int slot = hash(names[entry - 1]) & mask;
+                while(table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = entry;
+            }
+        }
+    }
+
+    private static int hash(String name) {
+        int h = name.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,420 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The TaskSnapshot class reads and writes the binary snapshot format of the Task Management System (TMS).
+ * <p>
+ * A snapshot is laid out as follows, where every count and task reference is an unsigned varint
+ * and a string is its UTF-8 length plus one (0 for null) followed by its bytes:
+ * - the magic bytes "TMSB" followed by a one-byte format version
+ * - the name table: the number of names, then the names of the primitive tasks, the names of the composite tasks
+ * and any other name that appears as a prerequisite or subtask
+ * - the primitive tasks, in name table order: the count, then for each task its description, its duration
+ * as an 8-byte double, and its prerequisites as one more than their number (0 for null) followed by
+ * their indexes in the name table
+ * - the composite tasks, in name table order: the count, then for each task its description and its subtasks,
+ * encoded like prerequisites
+ * - the criteria: the count, then for each criterion its name, property, op and value, a flag byte
+ * and its subcriteria as one more than their number (0 for null) followed by the strings
+ * <p>
+ * Files are read and written through a FileChannel with a single reusable buffer.
+ */
+final class TaskSnapshot {
+    /**
+     * The file extension that selects the binary format when storing.
+     */
+    static final String EXTENSION = ".tmsb";
+    static final byte[] MAGIC = {'T', 'M', 'S', 'B'};
+    static final int VERSION = 1;
+    static final int FLAG_PRIMITIVE = 1;
+    static final int FLAG_BASIC = 2;
+    static final int FLAG_NEGATED = 4;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private TaskSnapshot() {
+    }
+
+    /**
+     * Returns whether a file starts with the snapshot magic bytes.
+     *
+     * @param path The file to be checked.
+     * @return true if the file is a binary snapshot, false if it is not or cannot be read.
+     */
+    static boolean isSnapshot(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(MAGIC.length);
+            channel.read(head);
+            return !head.hasRemaining() && head.flip().equals(ByteBuffer.wrap(MAGIC));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the tasks and criteria to a snapshot file, replacing its contents.
+     *
+     * @param path       The file to be written.
+     * @param primitives The primitive tasks, by name.
+     * @param composites The composite tasks, by name.
+     * @param criteria   The criteria, by name.
+     * @throws IOException If the file cannot be written.
+     */
+    static void write(Path path, Map<String, PrimitiveTask> primitives, Map<String, CompositeTask> composites,
+                      Map<String, Criterion> criteria) throws IOException {
+        NameTable names = new NameTable(primitives.size() + composites.size());
+        for(String name : primitives.keySet()) {
+            names.add(name);
+        }
+        for(String name : composites.keySet()) {
+            names.add(name);
+        }
+        if(names.names.size() != primitives.size() + composites.size()) {
+            throw new IOException("a name is used by both a primitive and a composite task");
+        }
+        for(PrimitiveTask task : primitives.values()) {
+            names.addAll(task.getPrerequisite());
+        }
+        for(CompositeTask task : composites.values()) {
+            names.addAll(task.getSubtask());
+        }
+        try (Output out = new Output(FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING))) {
+            out.bytes(MAGIC);
+            out.ensure(1).put((byte) VERSION);
+            out.varint(names.names.size());
+            for(String name : names.names) {
+                out.string(name);
+            }
+            out.varint(primitives.size());
+            for(PrimitiveTask task : primitives.values()) {
+                out.string(task.getDescription());
+                out.ensure(Double.BYTES).putDouble(task.getDuration());
+                out.references(names, task.getPrerequisite());
+            }
+            out.varint(composites.size());
+            for(CompositeTask task : composites.values()) {
+                out.string(task.getDescription());
+                out.references(names, task.getSubtask());
+            }
+            out.varint(criteria.size());
+            for(Criterion criterion : criteria.values()) {
+                out.string(criterion.getName());
+                out.string(criterion.getProperty());
+                out.string(criterion.getOp());
+                out.string(criterion.getValue());
+                out.ensure(1).put((byte) flags(criterion));
+                out.strings(criterion.getSubCriterion());
+            }
+        }
+    }
+
+    /**
+     * Reads the tasks and criteria of a snapshot file into the given maps.
+     *
+     * @param path       The file to be read.
+     * @param primitives The map the primitive tasks are put into.
+     * @param composites The map the composite tasks are put into.
+     * @param criteria   The map the criteria are put into.
+     * @throws IOException If the file cannot be read or is not a valid snapshot.
+     */
+    static void read(Path path, Map<String, PrimitiveTask> primitives, Map<String, CompositeTask> composites,
+                     Map<String, Criterion> criteria) throws IOException {
+        try (Input in = new Input(FileChannel.open(path, StandardOpenOption.READ))) {
+            for(byte b : MAGIC) {
+                if(in.ensure(1).get() != b) {
+                    throw new IOException("not a task snapshot: " + path);
+                }
+            }
+            int version = in.ensure(1).get();
+            if(version != VERSION) {
+                throw new IOException("unsupported task snapshot version: " + version);
+            }
+            String[] names = new String[in.varint()];
+            for(int i = 0; i < names.length; i++) {
+                names[i] = in.string();
+            }
+            int primitiveCount = in.varint();
+            for(int i = 0; i < primitiveCount; i++) {
+                String name = in.name(names, i);
+                String description = in.string();
+                double duration = in.ensure(Double.BYTES).getDouble();
+                String[] prerequisite = in.references(names);
+                primitives.put(name, new PrimitiveTask(name, description, duration, prerequisite));
+            }
+            int compositeCount = in.varint();
+            for(int i = 0; i < compositeCount; i++) {
+                String name = in.name(names, primitiveCount + i);
+                String description = in.string();
+                String[] subtask = in.references(names);
+                composites.put(name, new CompositeTask(name, description, subtask));
+            }
+            int criterionCount = in.varint();
+            for(int i = 0; i < criterionCount; i++) {
+                String name = in.string();
+                Criterion criterion = new Criterion(name, in.string(), in.string(), in.string());
+                int flags = in.ensure(1).get();
+                criterion.setIsPrimitive((flags & FLAG_PRIMITIVE) != 0);
+                criterion.setIsBasic((flags & FLAG_BASIC) != 0);
+                criterion.setIsNegated((flags & FLAG_NEGATED) != 0);
+                criterion.setSubCriterion(in.strings());
+                criteria.put(name, criterion);
+            }
+        }
+    }
+
+    static int flags(Criterion criterion) {
+        return (criterion.getIsPrimitive() ? FLAG_PRIMITIVE : 0)
+                | (criterion.getIsBasic() ? FLAG_BASIC : 0)
+                | (criterion.getIsNegated() ? FLAG_NEGATED : 0);
+    }
+
+    /**
+     * The distinct task names of a snapshot, in the order they were first added.
+     */
+    private static final class NameTable {
+        private final HashMap<String, Integer> indexes;
+        private final ArrayList<String> names;
+
+        NameTable(int expected) {
+            indexes = new HashMap<>(expected * 4 / 3 + 16);
+            names = new ArrayList<>(expected);
+        }
+
+        void add(String name) {
+            if(name != null && indexes.putIfAbsent(name, names.size()) == null) {
+                names.add(name);
+            }
+        }
+
+        void addAll(String[] array) {
+            if(array != null) {
+                for(String name : array) {
+                    add(name);
+                }
+            }
+        }
+
+        int reference(String name) {
+            return name == null ? 0 : indexes.get(name) + 1;
+        }
+    }
+
+    /**
+     * A buffered writer of varints, doubles and strings over a FileChannel.
+     */
+    private static final class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        // returns the buffer with room for at least n more bytes
+        ByteBuffer ensure(int n) throws IOException {
+            if(buffer.remaining() < n) {
+                flush();
+            }
+            return buffer;
+        }
+
+        void varint(int value) throws IOException {
+            ensure(5);
+            while((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void bytes(byte[] bytes) throws IOException {
+            if(bytes.length > buffer.capacity()) {
+                flush();
+                ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+                while(wrapped.hasRemaining()) {
+                    channel.write(wrapped);
+                }
+                return;
+            }
+            ensure(bytes.length).put(bytes);
+        }
+
+        void string(String string) throws IOException {
+            if(string == null) {
+                varint(0);
+                return;
+            }
+            if(string.length() + 5 <= buffer.capacity() && ascii(string)) {
+                return;
+            }
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length + 1);
+            bytes(bytes);
+        }
+
+        // writes an ASCII string straight into the buffer, or writes nothing and returns false
+        private boolean ascii(String string) throws IOException {
+            int length = string.length();
+            ensure(length + 5);
+            int start = buffer.position();
+            varint(length + 1);
+            for(int i = 0; i < length; i++) {
+                char c = string.charAt(i);
+                if(c >= 0x80) {
+                    buffer.position(start);
+                    return false;
+                }
+                buffer.put((byte) c);
+            }
+            return true;
+        }
+
+        void strings(String[] array) throws IOException {
+            if(array == null) {
+                varint(0);
+                return;
+            }
+            varint(array.length + 1);
+            for(String string : array) {
+                string(string);
+            }
+        }
+
+        void references(NameTable names, String[] array) throws IOException {
+            if(array == null) {
+                varint(0);
+                return;
+            }
+            varint(array.length + 1);
+            for(String name : array) {
+                varint(names.reference(name));
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * A buffered reader of varints, doubles and strings over a FileChannel.
+     */
+    private static final class Input implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+
+        Input(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        // returns the buffer with at least n bytes left to read
+        ByteBuffer ensure(int n) throws IOException {
+            if(buffer.remaining() < n) {
+                buffer.compact();
+                while(buffer.position() < n) {
+                    if(channel.read(buffer) < 0) {
+                        throw new EOFException("truncated task snapshot");
+                    }
+                }
+                buffer.flip();
+            }
+            return buffer;
+        }
+
+        int varint() throws IOException {
+            int value = 0;
+            for(int shift = 0; shift < 35; shift += 7) {
+                byte b = ensure(1).get();
+                value |= (b & 0x7F) << shift;
+                if(b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("malformed varint in task snapshot");
+        }
+
+        String string() throws IOException {
+            int length = varint() - 1;
+            if(length < 0) {
+                return null;
+            }
+            if(length <= buffer.capacity()) {
+                ensure(length);
+                String string = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+                return string;
+            }
+            byte[] bytes = new byte[length];
+            int filled = 0;
+            while(filled < length) {
+                int chunk = Math.min(length - filled, buffer.capacity());
+                ensure(chunk).get(bytes, filled, chunk);
+                filled += chunk;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        String[] strings() throws IOException {
+            int count = varint();
+            if(count == 0) {
+                return null;
+            }
+            String[] array = new String[count - 1];
+            for(int i = 0; i < array.length; i++) {
+                array[i] = string();
+            }
+            return array;
+        }
+
+        String name(String[] names, int index) throws IOException {
+            if(index >= names.length) {
+                throw new IOException("task record without a name in task snapshot");
+            }
+            return names[index];
+        }
+
+        String[] references(String[] names) throws IOException {
+            int count = varint();
+            if(count == 0) {
+                return null;
+            }
+            String[] array = new String[count - 1];
+            for(int i = 0; i < array.length; i++) {
+                int reference = varint();
+                if(reference > names.length) {
+                    throw new IOException("name reference out of range in task snapshot");
+                }
+                array[i] = reference == 0 ? null : names[reference - 1];
+            }
+            return array;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package hk.edu.polyu.comp.comp2021.tms.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The TaskVersion class is an immutable version of the tasks and criteria of the Task Management System (TMS).
+ * <p>
+ * A version is held in persistent maps, so publishing the next version after a change copies only the changed
+ * tasks and a few trie nodes, and older versions share everything else. A version never changes once it is
+ * published: it can be read from any thread without a lock, and kept to answer queries about the past
+ * while the TMS goes on changing. The tasks of a version are copies of the tasks of the TMS and must not be changed.
+ */
+public final class TaskVersion {
+    static final TaskVersion EMPTY = new TaskVersion(0, PersistentMap.empty(), PersistentMap.empty(), PersistentMap.empty());
+
+    private final long number;
+    private final PersistentMap<PrimitiveTask> primitiveTasks;
+    private final PersistentMap<CompositeTask> compositeTasks;
+    private final PersistentMap<Criterion> criteria;
+
+    TaskVersion(long number, PersistentMap<PrimitiveTask> primitiveTasks,
+                PersistentMap<CompositeTask> compositeTasks, PersistentMap<Criterion> criteria) {
+        this.number = number;
+        this.primitiveTasks = primitiveTasks;
+        this.compositeTasks = compositeTasks;
+        this.criteria = criteria;
+    }
+
+    /**
+     * Returns the number of this version. Every published version has a higher number than the one before it.
+     *
+     * @return The version number.
+     */
+    public long getNumber() {
+        return number;
+    }
+
+    /**
+     * Returns the primitive tasks of this version.
+     *
+     * @return A read-only map of the primitive tasks by name.
+     */
+    public Map<String, PrimitiveTask> getPrimitiveTasks() {
+        return primitiveTasks;
+    }
+
+    /**
+     * Returns the composite tasks of this version.
+     *
+     * @return A read-only map of the composite tasks by name.
+     */
+    public Map<String, CompositeTask> getCompositeTasks() {
+        return compositeTasks;
+    }
+
+    /**
+     * Returns the criteria of this version.
+     *
+     * @return A read-only map of the criteria by name.
+     */
+    public Map<String, Criterion> getCriteria() {
+        return criteria;
+    }
+
+    PersistentMap<PrimitiveTask> primitiveTaskMap() {
+        return primitiveTasks;
+    }
+
+    PersistentMap<CompositeTask> compositeTaskMap() {
+        return compositeTasks;
+    }
+
+    PersistentMap<Criterion> criterionMap() {
+        return criteria;
+    }
+
+    /**
+     * Returns a task of this version.
+     *
+     * @param name The name of the task.
+     * @return The PrimitiveTask or CompositeTask of that name, or null if the task does not exist.
+     */
+    public Task getTask(String name) {
+        PrimitiveTask task = primitiveTasks.get(name);
+        return task != null ? task : compositeTasks.get(name);
+    }
+
+    /**
+     * Returns the names of the tasks of this version that meet a criterion, as TMS.searchTasks does.
+     * The tasks are tested one by one against the compiled criterion, in no particular order.
+     *
+     * @param criterionName The name of the criterion.
+     * @return A new list of task names, or null if the criterion does not exist or cannot be evaluated.
+     */
+    public List<String> searchTasks(String criterionName) {
+        if(!criteria.containsKey(criterionName)) {
+            return null;
+        }
+        CriterionPlan plan = CriterionPlan.compile(criterionName, criteria, new ArrayList<>());
+        if(plan == null) {
+            return null;
+        }
+        ArrayList<String> names = new ArrayList<>();
+        primitiveTasks.forEach((name, task) -> {
+            if(plan.matches(name, task)) {
+                names.add(name);
+            }
+        });
+        compositeTasks.forEach((name, task) -> {
+            if(plan.matches(name, task)) {
+                names.add(name);
+            }
+        });
+        return names;
+    }
+
+    /**
+     * Returns the earliest finish time of a task of this version, as TMS.getEarliestFinishTime does.
+     * The graph is walked with an explicit stack, so long chains of prerequisites are no problem,
+     * and each task is expanded once, so a cycle cannot make the walk loop.
+     *
+     * @param name The name of the task.
+     * @return The earliest finish time, or -1 if the task does not exist.
+     */
+    public double getEarliestFinishTime(String name) {
+        if(getTask(name) == null) {
+            return -1;
+        }
+        HashMap<String, Double> finishTime = new HashMap<>();
+        HashSet<String> expanded = new HashSet<>();
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        pending.push(name);
+        while(!pending.isEmpty()) {
+            String current = pending.peek();
+            if(finishTime.containsKey(current)) {
+                pending.pop();
+                continue;
+            }
+            PrimitiveTask primitive = primitiveTasks.get(current);
+            CompositeTask composite = primitive == null ? compositeTasks.get(current) : null;
+            if(primitive == null && composite == null) {
+                finishTime.put(current, -1d);
+                pending.pop();
+                continue;
+            }
+            String[] dependencies = primitive != null ? primitive.getPrerequisite() : composite.getSubtask();
+            boolean ready = true;
+            double maxTime = 0d;
+            if(dependencies != null) {
+                for(String dependency : dependencies) {
+                    Double time = finishTime.get(dependency);
+                    if(time == null) {
+                        ready = false;
+                    }
+                    else {
+                        maxTime = Math.max(maxTime, time);
+                    }
+                }
+            }
+            if(!ready && expanded.add(current)) {
+                for(String dependency : dependencies) {
+                    if(!finishTime.containsKey(dependency)) {
+                        pending.push(dependency);
+                    }
+                }
+                continue;
+            }
+            // every dependency is done, except ones on a cycle back to this task, which are left out
+            finishTime.put(current, (primitive != null ? primitive.getDuration() : 0d) + maxTime);
+            pending.pop();
+        }
+        return finishTime.get(name);
+    }
+}